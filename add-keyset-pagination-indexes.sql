@@ -0,0 +1,27 @@
+-- Migration: Index cho keyset (cursor) pagination
+-- Description: Các endpoint /scroll dùng WHERE (sort_key, id) < (?, ?) ORDER BY sort_key, id
+--              nên cần index composite theo đúng thứ tự (filter, sort_key, id)
+
+-- ============================================
+-- Nếu dùng spring.jpa.hibernate.ddl-auto=update
+-- thì không cần chạy file này, Hibernate sẽ tự tạo index từ @Table(indexes = ...)
+-- ============================================
+
+-- GET /api/products/scroll (sortBy = createdAt | price | soldCount)
+-- Cột sort không được NULL (cursor chứa giá trị sort của phần tử cuối trang)
+-- ddl-auto=update không đổi cột đã có => database cũ cần chạy 2 lệnh này
+UPDATE products SET sold_count = 0 WHERE sold_count IS NULL;
+ALTER TABLE products MODIFY sold_count INT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_products_active_created ON products(is_active, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_products_active_price ON products(is_active, price, id);
+CREATE INDEX IF NOT EXISTS idx_products_active_sold ON products(is_active, sold_count, id);
+
+-- Đồng bộ search index theo updated_at
+CREATE INDEX IF NOT EXISTS idx_products_updated_at ON products(updated_at);
+
+-- GET /api/orders/seller/my-orders/scroll
+CREATE INDEX IF NOT EXISTS idx_orders_seller_created ON orders(seller_id, created_at, id);
+
+-- GET /api/reviews/product/{productId}/scroll
+CREATE INDEX IF NOT EXISTS idx_reviews_product_created ON reviews(product_id, created_at, id);
@@ -0,0 +1,65 @@
+package havudong.baocao.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Chuyển các bảng ghi nhiều (orders, order_items, user_behaviors, messages, outbox_events) từ AUTO_INCREMENT
+ * sang id cấp theo khối từ bảng id_sequences (pooled-lo) để Hibernate batch được INSERT
+ *
+ * Mỗi lần khởi động: đảm bảo next_val của từng bảng >= MAX(id) hiện có
+ * (Hibernate cấp khối id next_val + 1 .. next_val + 50 rồi tăng next_val thêm 50)
+ * - Database cũ: dữ liệu AUTO_INCREMENT giữ nguyên, id mới bắt đầu từ MAX(id) + 1
+ * Cột id cũ vẫn AUTO_INCREMENT, MySQL chấp nhận INSERT id tường minh nên không cần ALTER TABLE
+ *
+ * Lần deploy chuyển sang id_sequences phải dừng toàn bộ node cũ (IDENTITY) trước khi chạy node mới:
+ * node mới giữ khối id từ MAX(id) + 1 và INSERT 1 id trong khối => MySQL đẩy AUTO_INCREMENT ngay sau id đó,
+ * INSERT tiếp theo của node cũ rơi vào giữa khối đã giữ => node mới dùng tới id đó bị trùng khóa chính.
+ * Từ các lần deploy sau (mọi node đều dùng id_sequences) rolling deploy bình thường.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class IdSequenceInitializer {
+
+    // Tên segment trong id_sequences = tên bảng (pkColumnValue của @TableGenerator)
+    private static final List<String> TABLES = List.of("orders", "order_items", "user_behaviors", "messages", "outbox_events");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void initialize() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS id_sequences ("
+                + "sequence_name VARCHAR(255) NOT NULL PRIMARY KEY, next_val BIGINT)");
+        for (String table : TABLES) {
+            long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            int updated = jdbcTemplate.update(
+                    "UPDATE id_sequences SET next_val = ? WHERE sequence_name = ? AND (next_val IS NULL OR next_val < ?)",
+                    maxId, table, maxId);
+            if (updated == 0 && !exists(table)) {
+                try {
+                    jdbcTemplate.update("INSERT INTO id_sequences (sequence_name, next_val) VALUES (?, ?)", table, maxId);
+                } catch (DuplicateKeyException e) {
+                    // Node khác vừa tạo cùng lúc => chỉ cần nâng next_val
+                    jdbcTemplate.update("UPDATE id_sequences SET next_val = ? WHERE sequence_name = ? AND next_val < ?",
+                            maxId, table, maxId);
+                }
+            }
+            log.info("Id sequence {} continues after id {}", table, maxId);
+        }
+    }
+
+    private boolean exists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM id_sequences WHERE sequence_name = ?", Integer.class, table);
+        return count != null && count > 0;
+    }
+}
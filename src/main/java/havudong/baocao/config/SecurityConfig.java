@@ -47,6 +47,9 @@ public class SecurityConfig {
                 // Reviews: GET là public (xem review sản phẩm)
                 .requestMatchers(HttpMethod.GET, "/api/reviews/**").permitAll()
                 
+                // Vouchers: danh sách voucher đang mở là public
+                .requestMatchers(HttpMethod.GET, "/api/vouchers").permitAll()
+                
                 // Static resources (uploads)
                 .requestMatchers("/uploads/**").permitAll()
                 
@@ -71,10 +74,16 @@ public class SecurityConfig {
                 .requestMatchers("/api/orders/seller/my-revenue").authenticated()
                 .requestMatchers(HttpMethod.PUT, "/api/orders/*/payment-status").authenticated()
                 .requestMatchers(HttpMethod.PUT, "/api/orders/*/shipping-status").authenticated()
+                .requestMatchers(HttpMethod.PUT, "/api/orders/seller/shipping-status").authenticated()
+                
+                // Products - Flash sale (admin)
+                .requestMatchers(HttpMethod.POST, "/api/products/*/flash-sale").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.DELETE, "/api/products/*/flash-sale").hasRole("ADMIN")
                 
                 // Products - Seller actions (create, update, delete)
                 .requestMatchers("/api/products/my-products").authenticated()
                 .requestMatchers(HttpMethod.POST, "/api/products").authenticated()
+                .requestMatchers(HttpMethod.POST, "/api/products/import").authenticated()
                 .requestMatchers(HttpMethod.PUT, "/api/products/**").authenticated()
                 .requestMatchers(HttpMethod.DELETE, "/api/products/**").authenticated()
                 
@@ -95,8 +104,11 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.POST, "/api/categories/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.PUT, "/api/categories/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.DELETE, "/api/categories/**").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.POST, "/api/vouchers").hasRole("ADMIN")
+                .requestMatchers(HttpMethod.DELETE, "/api/vouchers/*").hasRole("ADMIN")
                 .requestMatchers("/api/orders/revenue").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.GET, "/api/orders").hasRole("ADMIN")
+                .requestMatchers("/api/orders/export", "/api/orders/items/export").hasRole("ADMIN")
                 .requestMatchers("/api/users").hasRole("ADMIN")
                 
                 // Any other request requires authentication
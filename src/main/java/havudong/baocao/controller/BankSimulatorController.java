@@ -0,0 +1,94 @@
+package havudong.baocao.controller;
+
+import havudong.baocao.dto.ApiResponse;
+import havudong.baocao.dto.BankWebhookRequest;
+import havudong.baocao.entity.Order;
+import havudong.baocao.exception.BadRequestException;
+import havudong.baocao.exception.ResourceNotFoundException;
+import havudong.baocao.service.BankWebhookService;
+import havudong.baocao.service.OrderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.RestClient;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Giả lập ngân hàng gửi webhook (chạy local / test), tắt mặc định: app.payment.simulator.enabled
+ * 
+ * POST /api/payments/simulator/transfer?orderIds=1,2&copies=3
+ * - Tạo giao dịch chuyển đúng số tiền cho từng đơn (nội dung CK bỏ dấu "_" như ngân hàng thật)
+ * - Ký HMAC và gửi qua HTTP tới webhook, copies > 1 => gửi lại cùng mã giao dịch (replay)
+ */
+@RestController
+@RequestMapping("/api/payments/simulator")
+@RequiredArgsConstructor
+@Slf4j
+public class BankSimulatorController {
+    
+    private final OrderService orderService;
+    private final BankWebhookService bankWebhookService;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${app.payment.simulator.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.payment.simulator.webhook-url:http://localhost:${server.port:8080}/api/payments/webhook/bank}")
+    private String webhookUrl;
+    
+    private final RestClient restClient = RestClient.create();
+    
+    @PostMapping("/transfer")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> transfer(
+            @RequestParam List<Long> orderIds,
+            @RequestParam(defaultValue = "1") int copies
+    ) {
+        if (!enabled) {
+            throw new ResourceNotFoundException("Bank simulator chưa được bật");
+        }
+        
+        List<BankWebhookRequest.Transaction> transactions = new ArrayList<>();
+        for (Long orderId : orderIds) {
+            Order order = orderService.getOrderById(orderId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Order", "id", orderId));
+            if (order.getPaymentTransactionId() == null) {
+                throw new BadRequestException("Đơn hàng " + orderId + " chưa tạo mã QR");
+            }
+            transactions.add(BankWebhookRequest.Transaction.builder()
+                    .reference("SIM" + UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase())
+                    .amount(order.getFinalAmount())
+                    .description("CK " + order.getPaymentTransactionId().replace("_", ""))
+                    .transactionTime(LocalDateTime.now())
+                    .build());
+        }
+        
+        String body = objectMapper.writeValueAsString(new BankWebhookRequest(transactions));
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < Math.max(copies, 1); i++) {
+            String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+            statuses.add(restClient.post()
+                    .uri(webhookUrl)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("X-Bank-Timestamp", timestamp)
+                    .header("X-Bank-Signature", bankWebhookService.sign(timestamp, body))
+                    .body(body)
+                    .exchange((request, response) -> response.getStatusCode().value()));
+        }
+        log.info("Bank simulator sent {} transfers x{} to {}: {}", transactions.size(), copies, webhookUrl, statuses);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("transactions", transactions);
+        result.put("webhookStatuses", statuses);
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+}
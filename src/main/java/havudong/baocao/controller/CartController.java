@@ -1,6 +1,7 @@
 package havudong.baocao.controller;
 
 import havudong.baocao.dto.ApiResponse;
+import havudong.baocao.dto.CartBatchUpdateRequest;
 import havudong.baocao.dto.CartGroupedResponse;
 import havudong.baocao.dto.CheckoutRequest;
 import havudong.baocao.dto.OrderResponse;
@@ -104,6 +105,18 @@ public class CartController {
         return ResponseEntity.ok(ApiResponse.success("Đã cập nhật số lượng", updated));
     }
     
+    /**
+     * Cập nhật nhiều item (số lượng / chọn) trong 1 request, trả về giỏ hàng đã group theo seller
+     */
+    @PutMapping("/batch")
+    public ResponseEntity<ApiResponse<CartGroupedResponse>> updateCartItems(
+            @Valid @RequestBody CartBatchUpdateRequest request
+    ) {
+        User user = securityUtil.getCurrentUser();
+        CartGroupedResponse response = cartService.updateCartItems(user, request.getItems());
+        return ResponseEntity.ok(ApiResponse.success("Đã cập nhật giỏ hàng", response));
+    }
+    
     /**
      * Toggle chọn/bỏ chọn item
      */
@@ -4,14 +4,14 @@ import havudong.baocao.dto.CategoryResponse;
 import havudong.baocao.entity.Category;
 import havudong.baocao.mapper.CategoryMapper;
 import havudong.baocao.service.CategoryService;
+import havudong.baocao.util.HttpCacheUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 @RestController
 @RequestMapping("/api/categories")
 @RequiredArgsConstructor
@@ -20,6 +20,10 @@ public class CategoryController {
     private final CategoryService categoryService;
     private final CategoryMapper categoryMapper;
     
+    // Danh mục ít thay đổi => cho client cache lâu hơn sản phẩm
+    @Value("${app.http-cache.category-max-age-seconds:300}")
+    private int categoryMaxAgeSeconds;
+    
     @PostMapping
     public ResponseEntity<Category> createCategory(@RequestBody Category category) {
         Category created = categoryService.createCategory(category);
@@ -30,17 +34,17 @@ public class CategoryController {
     public ResponseEntity<CategoryResponse> getCategoryById(@PathVariable Long id) {
         return categoryService.getCategoryById(id)
             .map(categoryMapper::toResponse)
-            .map(ResponseEntity::ok)
+            .map(category -> HttpCacheUtil.conditional(category,
+                    HttpCacheUtil.entityEtag(category.getId(), category.getUpdatedAt()),
+                    category.getUpdatedAt(), categoryMaxAgeSeconds))
             .orElse(ResponseEntity.notFound().build());
     }
     
-    @GetMapping
-    public ResponseEntity<List<CategoryResponse>> getAllCategories() {
-        List<Category> categories = categoryService.getAllCategories();
-        List<CategoryResponse> responses = categories.stream()
-            .map(categoryMapper::toResponse)
-            .collect(Collectors.toList());
-        return ResponseEntity.ok(responses);
+    // Trả JSON đã serialize sẵn trong snapshot danh mục
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getAllCategories() {
+        return HttpCacheUtil.conditional(categoryService.getAllCategoriesJson(),
+                categoryService.getAllCategoriesEtag(), null, categoryMaxAgeSeconds);
     }
     
     @GetMapping("/name/{name}")
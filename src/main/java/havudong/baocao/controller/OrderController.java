@@ -1,6 +1,9 @@
 package havudong.baocao.controller;
 
 import havudong.baocao.dto.ApiResponse;
+import havudong.baocao.dto.CursorPageResponse;
+import havudong.baocao.dto.OrderBulkStatusRequest;
+import havudong.baocao.dto.OrderBulkStatusResponse;
 import havudong.baocao.dto.OrderResponse;
 import havudong.baocao.entity.Order;
 import havudong.baocao.entity.User;
@@ -9,18 +12,25 @@ import havudong.baocao.entity.enums.ShippingStatus;
 import havudong.baocao.exception.ResourceNotFoundException;
 import havudong.baocao.exception.UnauthorizedException;
 import havudong.baocao.mapper.OrderMapper;
+import havudong.baocao.service.DataExportService;
 import havudong.baocao.service.OrderService;
 import havudong.baocao.service.UserService;
+import havudong.baocao.util.DataFormat;
 import havudong.baocao.util.SecurityUtil;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -33,6 +43,7 @@ import java.util.Map;
 public class OrderController {
     
     private final OrderService orderService;
+    private final DataExportService dataExportService;
     private final UserService userService;
     private final OrderMapper orderMapper;
     private final SecurityUtil securityUtil;
@@ -67,6 +78,25 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success(responses));
     }
     
+    /**
+     * Export toàn bộ đơn hàng (admin)
+     * GET /api/orders/export?format=csv|ndjson
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAllOrders(@RequestParam(defaultValue = "csv") String format) {
+        DataFormat dataFormat = DataFormat.resolve(format, null);
+        return exportResponse("orders", dataFormat, dataExportService.exportOrders(null, dataFormat));
+    }
+    
+    /**
+     * Export toàn bộ chi tiết đơn hàng (admin)
+     */
+    @GetMapping("/items/export")
+    public ResponseEntity<StreamingResponseBody> exportAllOrderItems(@RequestParam(defaultValue = "csv") String format) {
+        DataFormat dataFormat = DataFormat.resolve(format, null);
+        return exportResponse("order-items", dataFormat, dataExportService.exportOrderItems(null, dataFormat));
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<OrderResponse>> getOrderById(@PathVariable Long id) {
         return orderService.getOrderById(id)
@@ -114,6 +144,41 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success(responses));
     }
     
+    /**
+     * Đơn hàng của seller hiện tại theo cursor (keyset pagination, không COUNT)
+     * Trang tiếp theo: truyền nextCursor của response trước
+     */
+    @GetMapping("/seller/my-orders/scroll")
+    public ResponseEntity<ApiResponse<CursorPageResponse<OrderResponse>>> scrollMySellerOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        User seller = securityUtil.getCurrentUser();
+        Window<Order> orders = orderService.scrollSellerOrders(seller, cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(CursorPageResponse.of(orders.map(orderMapper::toResponse))));
+    }
+    
+    /**
+     * Export đơn hàng của seller hiện tại (đọc theo luồng, không giới hạn số dòng)
+     * GET /api/orders/seller/my-orders/export?format=csv|ndjson
+     */
+    @GetMapping("/seller/my-orders/export")
+    public ResponseEntity<StreamingResponseBody> exportMySellerOrders(@RequestParam(defaultValue = "csv") String format) {
+        User seller = securityUtil.getCurrentUser();
+        DataFormat dataFormat = DataFormat.resolve(format, null);
+        return exportResponse("orders", dataFormat, dataExportService.exportOrders(seller.getId(), dataFormat));
+    }
+    
+    /**
+     * Export chi tiết đơn hàng (từng sản phẩm) của seller hiện tại
+     */
+    @GetMapping("/seller/my-orders/items/export")
+    public ResponseEntity<StreamingResponseBody> exportMySellerOrderItems(@RequestParam(defaultValue = "csv") String format) {
+        User seller = securityUtil.getCurrentUser();
+        DataFormat dataFormat = DataFormat.resolve(format, null);
+        return exportResponse("order-items", dataFormat, dataExportService.exportOrderItems(seller.getId(), dataFormat));
+    }
+    
     /**
      * Tính doanh thu của seller hiện tại
      */
@@ -235,11 +300,13 @@ public class OrderController {
     
     /**
      * Seller cập nhật trạng thái thanh toán (kiểm tra quyền)
+     * version: version đơn hàng client đang xem, khác với hiện tại => 409
      */
     @PutMapping("/{id}/payment-status")
     public ResponseEntity<ApiResponse<OrderResponse>> updatePaymentStatus(
             @PathVariable Long id,
-            @RequestParam PaymentStatus paymentStatus
+            @RequestParam PaymentStatus paymentStatus,
+            @RequestParam(required = false) Long version
     ) {
         User currentUser = securityUtil.getCurrentUser();
         Order order = orderService.getOrderById(id)
@@ -251,17 +318,19 @@ public class OrderController {
             throw new UnauthorizedException("Bạn không có quyền cập nhật đơn hàng này");
         }
         
-        Order updated = orderService.updatePaymentStatus(id, paymentStatus);
+        Order updated = orderService.updatePaymentStatus(id, paymentStatus, version);
         return ResponseEntity.ok(ApiResponse.success("Cập nhật trạng thái thanh toán thành công", orderMapper.toResponse(updated)));
     }
     
     /**
      * Seller cập nhật trạng thái vận chuyển (kiểm tra quyền)
+     * version: version đơn hàng client đang xem, khác với hiện tại => 409
      */
     @PutMapping("/{id}/shipping-status")
     public ResponseEntity<ApiResponse<OrderResponse>> updateShippingStatus(
             @PathVariable Long id,
-            @RequestParam ShippingStatus shippingStatus
+            @RequestParam ShippingStatus shippingStatus,
+            @RequestParam(required = false) Long version
     ) {
         User currentUser = securityUtil.getCurrentUser();
         Order order = orderService.getOrderById(id)
@@ -272,10 +341,25 @@ public class OrderController {
             throw new UnauthorizedException("Bạn không có quyền cập nhật đơn hàng này");
         }
         
-        Order updated = orderService.updateShippingStatus(id, shippingStatus);
+        Order updated = orderService.updateShippingStatus(id, shippingStatus, version);
         return ResponseEntity.ok(ApiResponse.success("Cập nhật trạng thái vận chuyển thành công", orderMapper.toResponse(updated)));
     }
     
+    /**
+     * Seller chuyển trạng thái vận chuyển cho nhiều đơn của shop (vd: PROCESSING -> SHIPPED)
+     * Đơn không chuyển được không làm hỏng cả lô, trả về trong danh sách skipped
+     */
+    @PutMapping("/seller/shipping-status")
+    public ResponseEntity<ApiResponse<OrderBulkStatusResponse>> bulkUpdateShippingStatus(
+            @Valid @RequestBody OrderBulkStatusRequest request
+    ) {
+        User seller = securityUtil.getCurrentUser();
+        OrderBulkStatusResponse result = orderService.bulkUpdateShippingStatus(
+                seller, request.getOrderIds(), request.getShippingStatus());
+        return ResponseEntity.ok(ApiResponse.success(String.format("Đã cập nhật %d/%d đơn hàng",
+                result.getUpdated().size(), result.getUpdated().size() + result.getSkipped().size()), result));
+    }
+    
     /**
      * Customer hủy đơn hàng (kiểm tra quyền)
      */
@@ -299,5 +383,14 @@ public class OrderController {
         log.info("Order {} cancelled by user {}", id, currentUser.getId());
         return ResponseEntity.ok(ApiResponse.success("Đã hủy đơn hàng", null));
     }
+    
+    private ResponseEntity<StreamingResponseBody> exportResponse(String prefix, DataFormat format, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(DataExportService.fileName(prefix, format))
+                        .build()
+                        .toString())
+                .body(body);
+    }
 }
-
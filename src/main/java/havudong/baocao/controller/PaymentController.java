@@ -1,11 +1,21 @@
 package havudong.baocao.controller;
 
+import havudong.baocao.entity.enums.PaymentStatus;
+import havudong.baocao.service.BankWebhookService;
 import havudong.baocao.service.PaymentService;
+import havudong.baocao.service.PaymentStatusNotifier;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -22,7 +32,7 @@ import java.util.Map;
  * 
  * 2. GET /api/payments/qr/{orderId}/status
  *    - Kiểm tra trạng thái thanh toán
- *    - Frontend gọi polling mỗi 5-10 giây
+ *    - Frontend gọi polling mỗi 5-10 giây (nên dùng /events hoặc /status/wait bên dưới)
  *    - Output: paymentStatus, isExpired, paidAt
  * 
  * 3. POST /api/payments/qr/{orderId}/cancel
@@ -32,6 +42,16 @@ import java.util.Map;
  * 4. POST /api/payments/qr/{orderId}/confirm (Internal/Admin)
  *    - Xác nhận thanh toán thủ công
  *    - Trong thực tế sử dụng webhook từ ngân hàng
+ * 
+ * 1b. GET /api/payments/qr/{orderId}/image?tx=...&amount=...
+ *    - Ảnh PNG mã QR (qrCodeUrl trả về ở bước 1), render trong ứng dụng + cache, header cache dài hạn
+ * 
+ * 2b. GET /api/payments/qr/{orderId}/events (SSE) hoặc /status/wait?known=PENDING (long-poll)
+ *    - Server đẩy trạng thái khi thanh toán xong / QR hết hạn, thay cho polling
+ * 
+ * 5. POST /api/payments/webhook/bank
+ *    - Ngân hàng báo biến động số dư (có chữ ký HMAC)
+ *    - Nhận vào buffer, xác nhận thanh toán theo lô (BankWebhookService)
  */
 @RestController
 @RequestMapping("/api/payments")
@@ -40,6 +60,8 @@ import java.util.Map;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final BankWebhookService bankWebhookService;
+    private final PaymentStatusNotifier paymentStatusNotifier;
 
     /**
      * Tạo mã QR thanh toán cho đơn hàng
@@ -64,6 +86,26 @@ public class PaymentController {
         }
     }
 
+    /**
+     * Ảnh PNG mã QR
+     * 
+     * URL chứa mã giao dịch + số tiền nên nội dung không bao giờ đổi => cache 1 năm, immutable
+     * (tạo QR mới sinh URL mới). ETag để client chưa hỗ trợ immutable nhận 304
+     */
+    @GetMapping(value = "/qr/{orderId}/image", produces = MediaType.IMAGE_PNG_VALUE)
+    public ResponseEntity<byte[]> getQrImage(
+            @PathVariable Long orderId,
+            @RequestParam("tx") String transactionId,
+            @RequestParam long amount
+    ) {
+        byte[] png = paymentService.getQrImage(orderId, transactionId, amount);
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .eTag("\"" + transactionId + "-" + amount + "\"")
+                .body(png);
+    }
+
     /**
      * Kiểm tra trạng thái thanh toán
      * 
@@ -85,6 +127,28 @@ public class PaymentController {
         }
     }
 
+    /**
+     * Server-Sent Events: nhận trạng thái hiện tại ngay, sau đó 1 event khi thanh toán xong / QR hết hạn
+     * 
+     * Frontend: new EventSource('/api/payments/qr/{orderId}/events'), lắng nghe event "payment-status"
+     */
+    @GetMapping(value = "/qr/{orderId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPaymentStatus(@PathVariable Long orderId) {
+        return paymentStatusNotifier.subscribe(orderId);
+    }
+
+    /**
+     * Long-poll (client không dùng được SSE): trả về khi trạng thái khác known hoặc sau ~25 giây
+     * (changed = false => gọi lại ngay)
+     */
+    @GetMapping("/qr/{orderId}/status/wait")
+    public DeferredResult<Map<String, Object>> waitPaymentStatus(
+            @PathVariable Long orderId,
+            @RequestParam(required = false) PaymentStatus known
+    ) {
+        return paymentStatusNotifier.await(orderId, known);
+    }
+
     /**
      * Hủy thanh toán QR
      * 
@@ -135,6 +199,28 @@ public class PaymentController {
         }
     }
 
+    /**
+     * Webhook ngân hàng: header X-Bank-Timestamp (epoch giây), X-Bank-Signature (HMAC-SHA256 hex)
+     * 
+     * - 202: đã nhận (xử lý bất đồng bộ theo lô)
+     * - 401: sai chữ ký / timestamp quá cũ
+     * - 503: buffer đầy / node đang tắt, ngân hàng gửi lại sau
+     */
+    @PostMapping("/webhook/bank")
+    public ResponseEntity<?> receiveBankWebhook(
+            @RequestHeader(value = "X-Bank-Timestamp", required = false) String timestamp,
+            @RequestHeader(value = "X-Bank-Signature", required = false) String signature,
+            @RequestBody String body
+    ) {
+        int accepted = bankWebhookService.receive(timestamp, signature, body);
+        if (accepted < 0) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("error", "Hệ thống đang bận, vui lòng gửi lại sau"));
+        }
+        return ResponseEntity.accepted().body(Map.of("accepted", accepted));
+    }
+
     /**
      * Lấy thông tin ngân hàng để hiển thị (backup nếu QR không load)
      */
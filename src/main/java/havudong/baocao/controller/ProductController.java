@@ -1,8 +1,13 @@
 package havudong.baocao.controller;
 
 import havudong.baocao.dto.ApiResponse;
+import havudong.baocao.dto.CursorPageResponse;
+import havudong.baocao.dto.FlashSaleResponse;
+import havudong.baocao.dto.ProductImportResponse;
 import havudong.baocao.dto.ProductRequest;
 import havudong.baocao.dto.ProductResponse;
+import havudong.baocao.dto.ProductSearchResponse;
+import havudong.baocao.dto.SuggestionResponse;
 import havudong.baocao.entity.Category;
 import havudong.baocao.entity.Product;
 import havudong.baocao.entity.User;
@@ -10,19 +15,31 @@ import havudong.baocao.exception.ResourceNotFoundException;
 import havudong.baocao.exception.UnauthorizedException;
 import havudong.baocao.mapper.ProductMapper;
 import havudong.baocao.service.CategoryService;
+import havudong.baocao.service.DataExportService;
+import havudong.baocao.service.FlashSaleService;
+import havudong.baocao.service.ProductImportService;
 import havudong.baocao.service.ProductService;
 import havudong.baocao.service.UserService;
+import havudong.baocao.util.DataFormat;
+import havudong.baocao.util.HttpCacheUtil;
 import havudong.baocao.util.SecurityUtil;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -32,11 +49,18 @@ import java.util.List;
 public class ProductController {
     
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final DataExportService dataExportService;
+    private final FlashSaleService flashSaleService;
     private final UserService userService;
     private final CategoryService categoryService;
     private final ProductMapper productMapper;
     private final SecurityUtil securityUtil;
     
+    // Cache-Control max-age cho các GET catalog (client vẫn revalidate bằng ETag sau khi hết hạn)
+    @Value("${app.http-cache.catalog-max-age-seconds:30}")
+    private int catalogMaxAgeSeconds;
+    
     /**
      * Tạo sản phẩm mới - seller lấy từ JWT token
      */
@@ -61,9 +85,11 @@ public class ProductController {
     
     @GetMapping("/{id}")
     public ResponseEntity<ProductResponse> getProductById(@PathVariable Long id) {
-        return productService.getProductById(id)
-            .map(productMapper::toResponse)
-            .map(ResponseEntity::ok)
+        return productService.getProductResponseById(id)
+            // Không gửi Last-Modified: body có seller/category, updatedAt của product không đổi khi chúng đổi
+            .map(product -> HttpCacheUtil.conditional(product,
+                    HttpCacheUtil.entityEtag(product.getId(), product.getUpdatedAt(), embeddedHash(product)),
+                    null, catalogMaxAgeSeconds))
             .orElse(ResponseEntity.notFound().build());
     }
     
@@ -76,8 +102,24 @@ public class ProductController {
     ) {
         Sort sort = direction.equalsIgnoreCase("ASC") ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
-        Page<Product> products = productService.getAllActiveProducts(pageable);
-        return ResponseEntity.ok(products.map(productMapper::toResponse));
+        return ResponseEntity.ok(productService.getAllActiveProducts(pageable));
+    }
+    
+    /**
+     * Danh sách sản phẩm theo cursor (keyset pagination, không COUNT)
+     * GET /api/products/scroll?sortBy=createdAt|price|soldCount&direction=DESC&size=20&cursor=...
+     * Trang tiếp theo: truyền nextCursor của response trước
+     */
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPageResponse<ProductResponse>> scrollProducts(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "createdAt") String sortBy,
+            @RequestParam(defaultValue = "DESC") String direction
+    ) {
+        Sort.Direction sortDirection = direction.equalsIgnoreCase("ASC") ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Window<Product> products = productService.scrollActiveProducts(sortBy, sortDirection, cursor, size);
+        return ResponseEntity.ok(CursorPageResponse.of(products.map(productMapper::toResponse)));
     }
     
     @GetMapping("/category/{categoryId}")
@@ -89,8 +131,10 @@ public class ProductController {
         return categoryService.getCategoryById(categoryId)
             .map(category -> {
                 Pageable pageable = PageRequest.of(page, size);
-                Page<Product> products = productService.getProductsByCategory(category, pageable);
-                return ResponseEntity.ok(products.map(productMapper::toResponse));
+                Page<ProductResponse> products = productService.getProductsByCategory(category, pageable);
+                String etag = HttpCacheUtil.collectionEtag(products.getContent(), ProductResponse::getId,
+                        ProductResponse::getUpdatedAt, ProductController::embeddedHash, products.getTotalElements());
+                return HttpCacheUtil.conditional(products, etag, null, catalogMaxAgeSeconds);
             })
             .orElse(ResponseEntity.notFound().build());
     }
@@ -105,8 +149,60 @@ public class ProductController {
     ) {
         User seller = securityUtil.getCurrentUser();
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-        Page<Product> products = productService.getProductsBySeller(seller, pageable);
-        return ResponseEntity.ok(ApiResponse.success(products.map(productMapper::toResponse)));
+        Page<ProductResponse> products = productService.getProductsBySeller(seller, pageable);
+        return ResponseEntity.ok(ApiResponse.success(products));
+    }
+    
+    /**
+     * Import sản phẩm hàng loạt - seller lấy từ JWT
+     * POST /api/products/import, body là nội dung file:
+     * - CSV (Content-Type: text/csv): dòng đầu là header, cột name, price, stock, categoryId hoặc category, ...
+     * - NDJSON (Content-Type: application/x-ndjson): mỗi dòng 1 object giống ProductRequest
+     * Dòng lỗi không chặn các dòng khác, kết quả trả về danh sách lỗi theo số dòng
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ApiResponse<ProductImportResponse>> importProducts(
+            @RequestParam(required = false) String format,
+            HttpServletRequest request
+    ) throws IOException {
+        User seller = securityUtil.getCurrentUser();
+        DataFormat importFormat = DataFormat.resolve(format, request.getContentType());
+        ProductImportResponse result = productImportService.importProducts(seller, request.getInputStream(), importFormat);
+        return ResponseEntity.ok(ApiResponse.success("Import sản phẩm hoàn tất", result));
+    }
+    
+    /**
+     * Tiến độ lượt import đang chạy (hoặc kết quả lượt gần nhất) của seller hiện tại
+     */
+    @GetMapping("/import/progress")
+    public ResponseEntity<ApiResponse<ProductImportResponse>> getImportProgress() {
+        User seller = securityUtil.getCurrentUser();
+        return productImportService.getProgress(seller.getId())
+            .map(progress -> ResponseEntity.ok(ApiResponse.success(progress)))
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Export sản phẩm của seller hiện tại, admin truyền all=true để export toàn bộ
+     * GET /api/products/export?format=csv|ndjson - file CSV dùng lại được cho /import
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean all
+    ) {
+        User user = securityUtil.getCurrentUser();
+        if (all && !securityUtil.isAdmin()) {
+            throw new UnauthorizedException("Chỉ admin được export toàn bộ sản phẩm");
+        }
+        DataFormat dataFormat = DataFormat.resolve(format, null);
+        return ResponseEntity.ok()
+                .contentType(dataFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(DataExportService.fileName("products", dataFormat))
+                        .build()
+                        .toString())
+                .body(dataExportService.exportProducts(all ? null : user.getId(), dataFormat));
     }
     
     @GetMapping("/seller/{sellerId}")
@@ -118,8 +214,7 @@ public class ProductController {
         return userService.getUserById(sellerId)
             .map(seller -> {
                 Pageable pageable = PageRequest.of(page, size);
-                Page<Product> products = productService.getProductsBySeller(seller, pageable);
-                return ResponseEntity.ok(products.map(productMapper::toResponse));
+                return ResponseEntity.ok(productService.getProductsBySeller(seller, pageable));
             })
             .orElse(ResponseEntity.notFound().build());
     }
@@ -131,16 +226,16 @@ public class ProductController {
             @RequestParam(defaultValue = "20") int size
     ) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<Product> products = productService.searchProducts(keyword, pageable);
-        return ResponseEntity.ok(products.map(productMapper::toResponse));
+        return ResponseEntity.ok(productService.searchProducts(keyword, pageable));
     }
     
     /**
      * Tìm kiếm với filters nâng cao
      * GET /api/products/search/advanced?keyword=...&categoryId=...&minPrice=...&maxPrice=...&minRating=...
+     * includeFacets=true: data = { products, facets } (đếm theo category, khoảng giá, rating)
      */
     @GetMapping("/search/advanced")
-    public ResponseEntity<ApiResponse<Page<ProductResponse>>> searchProductsAdvanced(
+    public ResponseEntity<ApiResponse<?>> searchProductsAdvanced(
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) Long categoryId,
             @RequestParam(required = false) BigDecimal minPrice,
@@ -149,15 +244,36 @@ public class ProductController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
-            @RequestParam(defaultValue = "DESC") String direction
+            @RequestParam(defaultValue = "DESC") String direction,
+            @RequestParam(defaultValue = "false") boolean includeFacets
     ) {
         Sort sort = direction.equalsIgnoreCase("ASC") ? Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
         
-        Page<Product> products = productService.searchProductsWithFilters(
+        Page<ProductResponse> responses = productService.searchProductsWithFilters(
                 keyword, categoryId, minPrice, maxPrice, minRating, pageable);
         
-        return ResponseEntity.ok(ApiResponse.success(products.map(productMapper::toResponse)));
+        if (!includeFacets) {
+            return ResponseEntity.ok(ApiResponse.success(responses));
+        }
+        
+        ProductSearchResponse response = ProductSearchResponse.builder()
+                .products(responses)
+                .facets(productService.getSearchFacets(keyword, categoryId, minPrice, maxPrice, minRating))
+                .build();
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
+    
+    /**
+     * Gợi ý khi đang gõ (typeahead): tên sản phẩm, category, từ khóa phổ biến
+     * GET /api/products/suggest?q=ao kh&limit=10
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestionResponse>> suggest(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(productService.suggest(q, limit));
     }
     
     @GetMapping("/price-range")
@@ -168,26 +284,31 @@ public class ProductController {
             @RequestParam(defaultValue = "20") int size
     ) {
         Pageable pageable = PageRequest.of(page, size);
-        Page<Product> products = productService.getProductsByPriceRange(minPrice, maxPrice, pageable);
-        return ResponseEntity.ok(products.map(productMapper::toResponse));
+        return ResponseEntity.ok(productService.getProductsByPriceRange(minPrice, maxPrice, pageable));
     }
     
+    /**
+     * Top bán chạy - đọc từ snapshot trong bộ nhớ
+     * limit tối đa = app.home.top-k
+     */
     @GetMapping("/top-selling")
-    public ResponseEntity<List<ProductResponse>> getTopSellingProducts() {
-        List<Product> products = productService.getTopSellingProducts();
-        List<ProductResponse> responses = products.stream()
-            .map(productMapper::toResponse)
-            .toList();
-        return ResponseEntity.ok(responses);
+    public ResponseEntity<List<ProductResponse>> getTopSellingProducts(
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(productService.getTopSellingProducts(categoryId, limit));
     }
     
+    /**
+     * Sản phẩm mới nhất - đọc từ snapshot trong bộ nhớ
+     * limit tối đa = app.home.top-k
+     */
     @GetMapping("/newest")
-    public ResponseEntity<List<ProductResponse>> getNewestProducts() {
-        List<Product> products = productService.getNewestProducts();
-        List<ProductResponse> responses = products.stream()
-            .map(productMapper::toResponse)
-            .toList();
-        return ResponseEntity.ok(responses);
+    public ResponseEntity<List<ProductResponse>> getNewestProducts(
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(productService.getNewestProducts(categoryId, limit));
     }
     
     /**
@@ -254,6 +375,38 @@ public class ProductController {
         return ResponseEntity.ok(ApiResponse.success("Đã xóa sản phẩm", null));
     }
     
+    // ========== Flash sale (admin) ==========
+    
+    /**
+     * Bật flash sale cho sản phẩm: checkout giữ suất bằng bộ đếm trong bộ nhớ
+     */
+    @PostMapping("/{id}/flash-sale")
+    public ResponseEntity<ApiResponse<FlashSaleResponse>> startFlashSale(@PathVariable Long id) {
+        FlashSaleResponse sale = flashSaleService.start(id);
+        return ResponseEntity.ok(ApiResponse.success("Đã bật flash sale", sale));
+    }
+    
+    @DeleteMapping("/{id}/flash-sale")
+    public ResponseEntity<ApiResponse<FlashSaleResponse>> stopFlashSale(@PathVariable Long id) {
+        FlashSaleResponse sale = flashSaleService.stop(id);
+        return ResponseEntity.ok(ApiResponse.success("Đã tắt flash sale", sale));
+    }
+    
+    /**
+     * Các flash sale đang chạy (số suất còn lại, đã bán)
+     */
+    @GetMapping("/flash-sales")
+    public ResponseEntity<ApiResponse<List<FlashSaleResponse>>> getActiveFlashSales() {
+        return ResponseEntity.ok(ApiResponse.success(flashSaleService.getActiveSales()));
+    }
+
+    /**
+     * Hash thông tin seller/category nhúng trong response (đổi tên shop, tên danh mục... => đổi ETag)
+     */
+    private static long embeddedHash(ProductResponse product) {
+        return HttpCacheUtil.contentHash(product.getSeller(), product.getCategory());
+    }
+
     // ========== Legacy endpoints for backward compatibility ==========
     
     @PostMapping("/legacy")
@@ -1,6 +1,7 @@
 package havudong.baocao.controller;
 
 import havudong.baocao.dto.ApiResponse;
+import havudong.baocao.dto.CursorPageResponse;
 import havudong.baocao.dto.ReviewRequest;
 import havudong.baocao.dto.ReviewResponse;
 import havudong.baocao.entity.User;
@@ -53,6 +54,19 @@ public class ReviewController {
         return ResponseEntity.ok(ApiResponse.success(reviews));
     }
     
+    /**
+     * Lấy reviews của sản phẩm theo cursor (keyset pagination, không COUNT)
+     */
+    @GetMapping("/product/{productId}/scroll")
+    public ResponseEntity<ApiResponse<CursorPageResponse<ReviewResponse>>> scrollProductReviews(
+            @PathVariable Long productId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        CursorPageResponse<ReviewResponse> reviews = reviewService.scrollProductReviews(productId, cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(reviews));
+    }
+    
     /**
      * Lấy thống kê rating của sản phẩm
      */
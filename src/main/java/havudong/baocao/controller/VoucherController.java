@@ -0,0 +1,54 @@
+package havudong.baocao.controller;
+
+import havudong.baocao.dto.ApiResponse;
+import havudong.baocao.dto.VoucherRequest;
+import havudong.baocao.dto.VoucherResponse;
+import havudong.baocao.service.VoucherService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller cho Voucher API
+ */
+@RestController
+@RequestMapping("/api/vouchers")
+@RequiredArgsConstructor
+public class VoucherController {
+    
+    private final VoucherService voucherService;
+    
+    /**
+     * Voucher đang mở (đọc từ bộ nhớ)
+     * GET /api/vouchers
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<VoucherResponse>>> getAvailableVouchers() {
+        return ResponseEntity.ok(ApiResponse.success(voucherService.getAvailableVouchers()));
+    }
+    
+    /**
+     * Tạo voucher (Admin)
+     * POST /api/vouchers
+     */
+    @PostMapping
+    public ResponseEntity<ApiResponse<VoucherResponse>> createVoucher(@Valid @RequestBody VoucherRequest request) {
+        VoucherResponse response = voucherService.createVoucher(request);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(ApiResponse.success("Đã tạo voucher", response));
+    }
+    
+    /**
+     * Tắt voucher (Admin)
+     * DELETE /api/vouchers/{id}
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<ApiResponse<Void>> disableVoucher(@PathVariable Long id) {
+        voucherService.disableVoucher(id);
+        return ResponseEntity.ok(ApiResponse.success("Đã tắt voucher", null));
+    }
+}
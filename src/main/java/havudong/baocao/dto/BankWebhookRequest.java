@@ -0,0 +1,41 @@
+package havudong.baocao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Thông báo biến động số dư từ ngân hàng (1 hoặc nhiều giao dịch mỗi lần gọi webhook)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BankWebhookRequest {
+    
+    private List<Transaction> transactions;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Transaction {
+        
+        // Mã giao dịch phía ngân hàng (duy nhất, ngân hàng gửi lại cùng mã khi retry/replay)
+        private String reference;
+        
+        private String accountNumber;
+        
+        private BigDecimal amount;
+        
+        // Nội dung chuyển khoản, chứa mã DH{orderId}_{timestamp}
+        private String description;
+        
+        private LocalDateTime transactionTime;
+    }
+}
@@ -0,0 +1,46 @@
+package havudong.baocao.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Nhiều thay đổi giỏ hàng (số lượng / chọn) áp dụng trong 1 transaction
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchUpdateRequest {
+    
+    @NotEmpty(message = "Danh sách thay đổi không được để trống")
+    @Size(max = 200, message = "Tối đa 200 thay đổi mỗi lần")
+    @Valid
+    private List<ItemChange> items;
+    
+    /**
+     * quantity / selected = null => giữ nguyên
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemChange {
+        
+        @NotNull(message = "Cart item ID không được để trống")
+        private Long cartItemId;
+        
+        @Min(value = 1, message = "Số lượng phải lớn hơn 0")
+        private Integer quantity;
+        
+        private Boolean selected;
+    }
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -49,5 +50,6 @@ public class CartGroupedResponse {
         private Integer stock;
         private Boolean selected;
         private BigDecimal subtotal;
+        private LocalDateTime reservedUntil;
     }
 }
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Data
 @Builder
@@ -18,6 +19,9 @@ public class CartItemResponse {
     private BigDecimal price;
     private Boolean selected;
     
+    // Hạn giữ chỗ stock (null = không giữ chỗ)
+    private LocalDateTime reservedUntil;
+    
     // Product info (simplified)
     private ProductInfo product;
     
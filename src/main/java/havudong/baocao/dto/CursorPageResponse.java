@@ -0,0 +1,38 @@
+package havudong.baocao.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import havudong.baocao.util.CursorCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Window;
+
+import java.util.List;
+
+/**
+ * Trang kết quả theo cursor (keyset pagination) - không có totalElements/totalPages
+ * Trang tiếp theo: gửi lại nextCursor trong tham số cursor
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CursorPageResponse<T> {
+    
+    private List<T> content;
+    private Integer size;
+    private Boolean hasNext;
+    private String nextCursor;
+    
+    public static <T> CursorPageResponse<T> of(Window<T> window) {
+        boolean hasNext = window.hasNext() && !window.isEmpty();
+        return CursorPageResponse.<T>builder()
+                .content(window.getContent())
+                .size(window.size())
+                .hasNext(hasNext)
+                .nextCursor(hasNext ? CursorCodec.encode(window.positionAt(window.size() - 1)) : null)
+                .build();
+    }
+}
@@ -0,0 +1,29 @@
+package havudong.baocao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Trạng thái flash sale của 1 sản phẩm
+ * available: suất còn lại trong bộ nhớ; pendingWrite: đã nhận, writer chưa ghi xuống database
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlashSaleResponse {
+    
+    private Long productId;
+    private String productName;
+    private Integer initialStock;
+    private Integer available;
+    private Long sold;
+    private Integer pendingWrite;
+    private Long rejected;
+    private Boolean active;
+    private LocalDateTime startedAt;
+}
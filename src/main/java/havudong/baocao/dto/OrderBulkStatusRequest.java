@@ -0,0 +1,29 @@
+package havudong.baocao.dto;
+
+import havudong.baocao.entity.enums.ShippingStatus;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Seller chuyển trạng thái vận chuyển cho nhiều đơn hàng cùng lúc
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderBulkStatusRequest {
+    
+    @NotEmpty(message = "Danh sách đơn hàng không được để trống")
+    @Size(max = 500, message = "Tối đa 500 đơn hàng mỗi lần")
+    private List<@NotNull Long> orderIds;
+    
+    @NotNull(message = "Trạng thái vận chuyển không được để trống")
+    private ShippingStatus shippingStatus;
+}
@@ -0,0 +1,31 @@
+package havudong.baocao.dto;
+
+import havudong.baocao.entity.enums.ShippingStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Kết quả chuyển trạng thái hàng loạt: đơn đã cập nhật và đơn bị bỏ qua kèm lý do
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderBulkStatusResponse {
+    
+    private ShippingStatus shippingStatus;
+    private List<Long> updated;
+    private List<Skipped> skipped;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Skipped {
+        private Long orderId;
+        private String reason;
+    }
+}
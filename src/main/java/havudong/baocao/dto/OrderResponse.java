@@ -21,6 +21,7 @@ public class OrderResponse {
     private BigDecimal totalAmount;
     private BigDecimal shippingFee;
     private BigDecimal discountAmount;
+    private String voucherCode;
     private BigDecimal platformFee;
     private BigDecimal sellerAmount;
     private BigDecimal finalAmount;
@@ -31,6 +32,7 @@ public class OrderResponse {
     private String shippingName;
     private String paymentMethod;
     private String note;
+    private Long version;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
@@ -0,0 +1,36 @@
+package havudong.baocao.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Kết quả / tiến độ import sản phẩm hàng loạt
+ * errors chỉ giữ tối đa app.product-import.max-errors dòng lỗi đầu tiên
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportResponse {
+    
+    private String status; // RUNNING, COMPLETED, FAILED
+    private Integer processedRows;
+    private Integer importedRows;
+    private Integer failedRows;
+    private Long elapsedMs;
+    private List<RowError> errors;
+    private Boolean errorsTruncated;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private Integer line;
+        private String message;
+    }
+}
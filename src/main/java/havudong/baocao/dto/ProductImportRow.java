@@ -0,0 +1,46 @@
+package havudong.baocao.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import jakarta.validation.constraints.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * 1 dòng trong file import sản phẩm (CSV hoặc NDJSON)
+ * Seller lấy từ JWT, category chỉ định bằng categoryId hoặc tên (category)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ProductImportRow {
+    
+    private Long categoryId;
+    
+    private String category;
+    
+    @NotBlank(message = "Tên sản phẩm không được để trống")
+    @Size(min = 3, max = 255, message = "Tên sản phẩm phải từ 3-255 ký tự")
+    private String name;
+    
+    @Size(max = 5000, message = "Mô tả không được quá 5000 ký tự")
+    private String description;
+    
+    @NotNull(message = "Giá sản phẩm không được để trống")
+    @DecimalMin(value = "0.0", inclusive = false, message = "Giá phải lớn hơn 0")
+    private BigDecimal price;
+    
+    @DecimalMin(value = "0.0", inclusive = false, message = "Giá gốc phải lớn hơn 0")
+    private BigDecimal originalPrice;
+    
+    @NotNull(message = "Số lượng tồn kho không được để trống")
+    @Min(value = 0, message = "Số lượng tồn kho không được âm")
+    private Integer stock;
+    
+    private String mainImage;
+    
+    private Boolean isActive = true;
+}
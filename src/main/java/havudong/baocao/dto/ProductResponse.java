@@ -25,6 +25,7 @@ public class ProductResponse {
     private Integer soldCount;
     private Boolean isActive;
     private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
     
     // Seller info (không expose toàn bộ User entity)
     private SellerInfo seller;
@@ -32,6 +33,20 @@ public class ProductResponse {
     // Category info
     private CategoryInfo category;
     
+    /**
+     * Constructor phẳng cho JPQL constructor expression (ProductRepository)
+     * Load product + seller + category trong 1 query, không lazy load
+     */
+    public ProductResponse(Long id, String name, String description, BigDecimal price, BigDecimal originalPrice,
+                           Integer stock, String mainImage, BigDecimal rating, Integer soldCount,
+                           Boolean isActive, LocalDateTime createdAt, LocalDateTime updatedAt,
+                           Long sellerId, String sellerFullName, String sellerEmail, String sellerAvatarUrl,
+                           Long categoryId, String categoryName, String categoryIcon) {
+        this(id, name, description, price, originalPrice, stock, mainImage, rating, soldCount, isActive, createdAt, updatedAt,
+                new SellerInfo(sellerId, sellerFullName, sellerEmail, sellerAvatarUrl),
+                new CategoryInfo(categoryId, categoryName, categoryIcon));
+    }
+    
     @Data
     @Builder
     @NoArgsConstructor
@@ -0,0 +1,68 @@
+package havudong.baocao.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Page;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Kết quả tìm kiếm nâng cao kèm facet counts để client dựng bộ lọc
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductSearchResponse {
+    
+    private Page<ProductResponse> products;
+    
+    // null khi search index chưa sẵn sàng
+    private SearchFacets facets;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SearchFacets {
+        private Long total;
+        private List<CategoryFacet> categories;
+        private List<PriceFacet> priceRanges;
+        private List<RatingFacet> ratings;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CategoryFacet {
+        private Long categoryId;
+        private String categoryName;
+        private Integer count;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class PriceFacet {
+        private BigDecimal minPrice;     // inclusive
+        private BigDecimal maxPrice;     // exclusive, null = không giới hạn
+        private Integer count;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RatingFacet {
+        private Double minRating;        // "từ minRating sao trở lên"
+        private Integer count;
+    }
+}
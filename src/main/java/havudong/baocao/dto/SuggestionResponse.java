@@ -0,0 +1,23 @@
+package havudong.baocao.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Một gợi ý typeahead cho ô tìm kiếm
+ * type: PRODUCT (id = productId), CATEGORY (id = categoryId), QUERY (từ khóa phổ biến, không có id)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SuggestionResponse {
+    
+    private String text;
+    private String type;
+    private Long id;
+}
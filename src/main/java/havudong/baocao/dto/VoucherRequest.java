@@ -0,0 +1,50 @@
+package havudong.baocao.dto;
+
+import havudong.baocao.entity.enums.DiscountType;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VoucherRequest {
+    
+    @NotBlank(message = "Mã voucher không được để trống")
+    @Size(max = 50, message = "Mã voucher không được quá 50 ký tự")
+    private String code;
+    
+    @NotBlank(message = "Tiêu đề không được để trống")
+    private String title;
+    
+    private String description;
+    
+    @NotNull(message = "Loại giảm giá không được để trống")
+    private DiscountType discountType;
+    
+    @NotNull(message = "Giá trị giảm không được để trống")
+    @DecimalMin(value = "0.01", message = "Giá trị giảm phải lớn hơn 0")
+    private BigDecimal discountValue;
+    
+    private BigDecimal minOrderAmount;
+    
+    private BigDecimal maxDiscount;
+    
+    @NotNull(message = "Số lượng voucher không được để trống")
+    @Min(value = 1, message = "Số lượng voucher phải lớn hơn 0")
+    private Integer totalQuantity;
+    
+    @NotNull(message = "Ngày bắt đầu không được để trống")
+    private LocalDateTime startDate;
+    
+    @NotNull(message = "Ngày kết thúc không được để trống")
+    private LocalDateTime endDate;
+}
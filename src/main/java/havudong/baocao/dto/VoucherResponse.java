@@ -0,0 +1,33 @@
+package havudong.baocao.dto;
+
+import havudong.baocao.entity.enums.DiscountType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Voucher đang mở; remaining: số lượt còn lại theo bộ đếm trong bộ nhớ
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VoucherResponse {
+    
+    private Long id;
+    private String code;
+    private String title;
+    private String description;
+    private DiscountType discountType;
+    private BigDecimal discountValue;
+    private BigDecimal minOrderAmount;
+    private BigDecimal maxDiscount;
+    private Integer totalQuantity;
+    private Integer remaining;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+}
@@ -9,6 +9,7 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "cart_items", 
@@ -41,4 +42,11 @@ public class CartItem extends BaseEntity {
     
     @Column(nullable = false)
     private Boolean selected = true;
+    
+    // Giữ chỗ stock tạm thời (khôi phục sổ giữ chỗ trong bộ nhớ khi khởi động lại)
+    @Column(name = "reserved_quantity")
+    private Integer reservedQuantity;
+    
+    @Column(name = "reserved_until")
+    private LocalDateTime reservedUntil;
 }
\ No newline at end of file
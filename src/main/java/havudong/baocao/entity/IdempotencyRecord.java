@@ -0,0 +1,48 @@
+package havudong.baocao.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Kết quả của 1 request có header Idempotency-Key (checkout, xác nhận thanh toán)
+ * statusCode = null => request đang được xử lý
+ */
+@Entity
+@Table(name = "idempotency_records", indexes = {
+    @Index(name = "idx_idempotency_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class IdempotencyRecord extends BaseEntity {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // <người dùng>:<Idempotency-Key>
+    @Column(name = "idempotency_key", nullable = false, unique = true, length = 200)
+    private String idempotencyKey;
+    
+    // SHA-256 của method + path + body
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+    
+    @Column(name = "status_code")
+    private Integer statusCode;
+    
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+    
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+    
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
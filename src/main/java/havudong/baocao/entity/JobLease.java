@@ -0,0 +1,34 @@
+package havudong.baocao.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Quyền chạy 1 scheduled job trong cluster: node owner giữ tới leaseUntil, gia hạn bằng heartbeat
+ */
+@Entity
+@Table(name = "job_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobLease {
+    
+    // Tên job (vd: qr-payment)
+    @Id
+    @Column(length = 100)
+    private String name;
+    
+    // Node đang giữ lease (host:pid:hậu tố ngẫu nhiên)
+    @Column(length = 200)
+    private String owner;
+    
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+    
+    @Column(name = "acquired_at")
+    private LocalDateTime acquiredAt;
+}
@@ -24,8 +24,11 @@ import java.time.LocalDateTime;
 @Builder
 public class Message {
     
+    // Cấp id theo khối 50 từ bảng id_sequences (IDENTITY làm Hibernate tắt batch insert)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "messages_id")
+    @TableGenerator(name = "messages_id", table = "id_sequences", pkColumnName = "sequence_name",
+                    valueColumnName = "next_val", pkColumnValue = "messages", allocationSize = 50)
     private Long id;
     
     // Cuộc hội thoại chứa tin nhắn
@@ -16,7 +16,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_seller_created", columnList = "seller_id, created_at, id"),
+    @Index(name = "idx_orders_qr_pending", columnList = "payment_method, payment_status, qr_expired_at"),
+    @Index(name = "idx_orders_payment_txn", columnList = "payment_transaction_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,8 +28,11 @@ import java.util.List;
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Order extends BaseEntity {
     
+    // Cấp id theo khối 50 từ bảng id_sequences (IDENTITY làm Hibernate tắt batch insert)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "orders_id")
+    @TableGenerator(name = "orders_id", table = "id_sequences", pkColumnName = "sequence_name",
+                    valueColumnName = "next_val", pkColumnValue = "orders", allocationSize = 50)
     private Long id;
     
     // Customer đặt hàng
@@ -53,6 +60,10 @@ public class Order extends BaseEntity {
     @Column(name = "discount_amount", precision = 10, scale = 2)
     private BigDecimal discountAmount = BigDecimal.ZERO;
     
+    // Mã voucher đã áp dụng (1 voucher cho cả lần checkout, giảm giá chia theo từng đơn)
+    @Column(name = "voucher_code", length = 50)
+    private String voucherCode;
+    
     // Phí platform (commission) - mặc định 5%
     @Column(name = "platform_fee", precision = 10, scale = 2)
     private BigDecimal platformFee = BigDecimal.ZERO;
@@ -106,4 +117,10 @@ public class Order extends BaseEntity {
 
     @Column(columnDefinition = "TEXT")
     private String note;
+    
+    // Optimistic locking: 2 request cùng sửa 1 đơn => request commit sau bị từ chối thay vì ghi đè
+    // (cột NOT NULL: MySQL điền 0 cho các đơn cũ khi thêm cột)
+    @Version
+    @Column(nullable = false)
+    private Long version = 0L;
 }
\ No newline at end of file
@@ -18,8 +18,11 @@ import java.math.BigDecimal;
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class OrderItem extends BaseEntity {
     
+    // Cấp id theo khối 50 từ bảng id_sequences (IDENTITY làm Hibernate tắt batch insert)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_items_id")
+    @TableGenerator(name = "order_items_id", table = "id_sequences", pkColumnName = "sequence_name",
+                    valueColumnName = "next_val", pkColumnValue = "order_items", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,61 @@
+package havudong.baocao.entity;
+
+import havudong.baocao.entity.enums.OutboxEventType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện domain ghi cùng transaction với thay đổi nghiệp vụ (transactional outbox)
+ * processedAt = null => chưa giao cho listener
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+    @Index(name = "idx_outbox_pending", columnList = "processed_at, available_at"),
+    @Index(name = "idx_outbox_claimed_by", columnList = "claimed_by"),
+    @Index(name = "idx_outbox_aggregate", columnList = "aggregate_id, processed_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "outbox_events_id")
+    @TableGenerator(name = "outbox_events_id", table = "id_sequences", pkColumnName = "sequence_name",
+                    valueColumnName = "next_val", pkColumnValue = "outbox_events", allocationSize = 50)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 50)
+    private OutboxEventType eventType;
+    
+    // Id đơn hàng - các sự kiện cùng aggregate được giao tuần tự
+    @Column(name = "aggregate_id", nullable = false)
+    private Long aggregateId;
+    
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+    
+    @Column(nullable = false)
+    private Integer attempts = 0;
+    
+    // Chưa tới thời điểm này thì không lấy ra (retry backoff / đang được node khác xử lý)
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt;
+    
+    @Column(name = "claimed_by", length = 36)
+    private String claimedBy;
+    
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
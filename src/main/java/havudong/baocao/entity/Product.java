@@ -12,7 +12,13 @@ import lombok.NoArgsConstructor;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+    @Index(name = "idx_products_updated_at", columnList = "updated_at"),
+    // Keyset pagination: WHERE is_active = true ORDER BY <cột>, id
+    @Index(name = "idx_products_active_created", columnList = "is_active, created_at, id"),
+    @Index(name = "idx_products_active_price", columnList = "is_active, price, id"),
+    @Index(name = "idx_products_active_sold", columnList = "is_active, sold_count, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -56,7 +62,8 @@ public class Product extends BaseEntity {
     @Column(precision = 2, scale = 1)
     private BigDecimal rating = BigDecimal.ZERO;
     
-    @Column(name = "sold_count")
+    // Cột sort của keyset pagination (cursor không mã hóa được NULL) => NOT NULL
+    @Column(name = "sold_count", nullable = false, columnDefinition = "INT DEFAULT 0")
     private Integer soldCount = 0;
     
     @Column(name = "is_active")
@@ -9,7 +9,9 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "reviews")
+@Table(name = "reviews", indexes = {
+    @Index(name = "idx_reviews_product_created", columnList = "product_id, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
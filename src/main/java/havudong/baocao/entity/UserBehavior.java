@@ -17,8 +17,11 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class UserBehavior {
     
+    // Cấp id theo khối 50 từ bảng id_sequences (IDENTITY làm Hibernate tắt batch insert)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_behaviors_id")
+    @TableGenerator(name = "user_behaviors_id", table = "id_sequences", pkColumnName = "sequence_name",
+                    valueColumnName = "next_val", pkColumnValue = "user_behaviors", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,8 @@
+package havudong.baocao.entity.enums;
+
+public enum OutboxEventType {
+    ORDER_CREATED,              // Tạo đơn hàng (checkout)
+    ORDER_CANCELLED,            // Hủy đơn hàng
+    PAYMENT_CONFIRMED,          // Đã thanh toán
+    SHIPPING_STATUS_CHANGED     // Đổi trạng thái vận chuyển
+}
@@ -1,9 +1,29 @@
 package havudong.baocao.entity.enums;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum PaymentStatus {
     PENDING,        // Chờ thanh toán
     PAID,           // Đã thanh toán
     FAILED,         // Thanh toán thất bại
     REFUNDED,       // Đã hoàn tiền
-    CANCELLED       // Đã hủy
+    CANCELLED;      // Đã hủy
+    
+    /**
+     * Các trạng thái được phép chuyển tới từ trạng thái hiện tại
+     * (FAILED => PENDING: tạo lại QR hoặc đổi sang COD)
+     */
+    public Set<PaymentStatus> nextStatuses() {
+        return switch (this) {
+            case PENDING -> EnumSet.of(PAID, FAILED, CANCELLED);
+            case FAILED -> EnumSet.of(PENDING, PAID, CANCELLED);
+            case PAID -> EnumSet.of(REFUNDED);
+            case REFUNDED, CANCELLED -> EnumSet.noneOf(PaymentStatus.class);
+        };
+    }
+    
+    public boolean canTransitionTo(PaymentStatus next) {
+        return nextStatuses().contains(next);
+    }
 }
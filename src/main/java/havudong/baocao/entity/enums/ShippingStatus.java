@@ -1,5 +1,8 @@
 package havudong.baocao.entity.enums;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum ShippingStatus {
     PENDING,        // Chờ xử lý
     PROCESSING,     // Đang chuẩn bị hàng
@@ -7,5 +10,36 @@ public enum ShippingStatus {
     IN_TRANSIT,     // Đang vận chuyển
     DELIVERED,      // Đã giao hàng
     CANCELLED,      // Đã hủy
-    RETURNED        // Đã trả hàng
+    RETURNED;       // Đã trả hàng
+    
+    /**
+     * Các trạng thái được phép chuyển tới từ trạng thái hiện tại
+     */
+    public Set<ShippingStatus> nextStatuses() {
+        return switch (this) {
+            case PENDING -> EnumSet.of(PROCESSING, CANCELLED);
+            case PROCESSING -> EnumSet.of(SHIPPED, CANCELLED);
+            case SHIPPED -> EnumSet.of(IN_TRANSIT, DELIVERED, RETURNED);
+            case IN_TRANSIT -> EnumSet.of(DELIVERED, RETURNED);
+            case DELIVERED -> EnumSet.of(RETURNED);
+            case CANCELLED, RETURNED -> EnumSet.noneOf(ShippingStatus.class);
+        };
+    }
+    
+    public boolean canTransitionTo(ShippingStatus next) {
+        return nextStatuses().contains(next);
+    }
+    
+    /**
+     * Các trạng thái được phép chuyển sang target (điều kiện WHERE của UPDATE hàng loạt)
+     */
+    public static Set<ShippingStatus> sourcesOf(ShippingStatus target) {
+        Set<ShippingStatus> sources = EnumSet.noneOf(ShippingStatus.class);
+        for (ShippingStatus status : values()) {
+            if (status.canTransitionTo(target)) {
+                sources.add(status);
+            }
+        }
+        return sources;
+    }
 }
@@ -0,0 +1,63 @@
+package havudong.baocao.event;
+
+import havudong.baocao.entity.Order;
+import havudong.baocao.entity.enums.OutboxEventType;
+import havudong.baocao.entity.enums.PaymentStatus;
+import havudong.baocao.entity.enums.ShippingStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Sự kiện đơn hàng: lưu dạng JSON trong outbox_events, OutboxDispatcher publish lại cho các @EventListener
+ * Listener có thể nhận lại cùng 1 sự kiện (giao ít nhất 1 lần) => phải xử lý idempotent
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+    
+    private OutboxEventType type;
+    private Long orderId;
+    private Long userId;
+    private Long sellerId;
+    private BigDecimal finalAmount;
+    private PaymentStatus paymentStatus;
+    private ShippingStatus shippingStatus;
+    private List<Item> items;
+    private LocalDateTime occurredAt;
+    
+    /**
+     * Snapshot đơn hàng tại thời điểm phát sinh sự kiện (gọi trong transaction, orderItems còn load được)
+     */
+    public static OrderEvent of(OutboxEventType type, Order order) {
+        return OrderEvent.builder()
+                .type(type)
+                .orderId(order.getId())
+                .userId(order.getUser().getId())
+                .sellerId(order.getSeller().getId())
+                .finalAmount(order.getFinalAmount())
+                .paymentStatus(order.getPaymentStatus())
+                .shippingStatus(order.getShippingStatus())
+                .items(order.getOrderItems().stream()
+                        .map(item -> new Item(item.getProduct().getId(), item.getQuantity()))
+                        .toList())
+                .occurredAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS))
+                .build();
+    }
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Long productId;
+        private Integer quantity;
+    }
+}
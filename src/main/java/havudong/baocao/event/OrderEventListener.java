@@ -0,0 +1,46 @@
+package havudong.baocao.event;
+
+import havudong.baocao.service.ProductService;
+import havudong.baocao.service.RecommendationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Các việc phụ sau khi đơn hàng thay đổi, chạy ngoài transaction nghiệp vụ (do OutboxDispatcher giao)
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderEventListener {
+    
+    private final ProductService productService;
+    private final RecommendationService recommendationService;
+    
+    @EventListener
+    public void onOrderEvent(OrderEvent event) {
+        switch (event.getType()) {
+            case ORDER_CREATED -> {
+                List<Long> productIds = productIds(event);
+                productService.refreshStockStats(productIds);
+                recommendationService.trackPurchases(event.getUserId(), productIds, event.getOccurredAt());
+                log.info("Notify seller {}: new order {} ({})", event.getSellerId(), event.getOrderId(), event.getFinalAmount());
+            }
+            case ORDER_CANCELLED -> {
+                productService.refreshStockStats(productIds(event));
+                log.info("Notify seller {}: order {} cancelled", event.getSellerId(), event.getOrderId());
+            }
+            case PAYMENT_CONFIRMED ->
+                    log.info("Notify seller {}: order {} paid", event.getSellerId(), event.getOrderId());
+            case SHIPPING_STATUS_CHANGED ->
+                    log.info("Notify user {}: order {} is {}", event.getUserId(), event.getOrderId(), event.getShippingStatus());
+        }
+    }
+    
+    private static List<Long> productIds(OrderEvent event) {
+        return event.getItems().stream().map(OrderEvent.Item::getProductId).distinct().toList();
+    }
+}
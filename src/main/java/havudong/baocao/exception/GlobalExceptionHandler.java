@@ -4,6 +4,7 @@ import havudong.baocao.dto.ApiResponse;
 import havudong.baocao.dto.ErrorResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -94,6 +95,26 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
     }
     
+    /**
+     * 2 request cùng sửa 1 đơn hàng (@Version) => request sau nhận 409, tải lại rồi thử lại
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleOptimisticLocking(
+            OptimisticLockingFailureException ex, 
+            HttpServletRequest request) {
+        
+        log.warn("Optimistic locking conflict: {} - {}", request.getRequestURI(), ex.getMessage());
+        
+        ErrorResponse error = new ErrorResponse(
+            HttpStatus.CONFLICT.value(),
+            "Conflict",
+            "Đơn hàng vừa được cập nhật bởi người khác, vui lòng tải lại",
+            request.getRequestURI()
+        );
+        
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+    
     @ExceptionHandler(UnauthorizedException.class)
     public ResponseEntity<ErrorResponse> handleUnauthorized(
             UnauthorizedException ex, 
@@ -0,0 +1,207 @@
+package havudong.baocao.filter;
+
+import havudong.baocao.dto.ErrorResponse;
+import havudong.baocao.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Idempotency-Key cho các POST nặng (checkout, xác nhận thanh toán)
+ *
+ * Client gửi header Idempotency-Key (UUID) và giữ nguyên khi retry:
+ * - Lần đầu: xử lý bình thường, lưu status + body response (trừ lỗi 5xx)
+ * - Retry cùng key + cùng body: trả lại response đã lưu, header Idempotent-Replayed: true
+ * - Retry trong lúc lần đầu chưa xong: chờ kết quả lần đầu thay vì chạy lại
+ * - Cùng key nhưng body/path khác: 422
+ *
+ * Filter chạy sau Spring Security => key được gắn theo user đã đăng nhập
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    private static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Value("${app.idempotency.paths:/api/cart/checkout,/api/payments/qr/*/confirm}")
+    private List<String> paths;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod()) || request.getHeader(HEADER) == null) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return paths.stream().noneMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String idempotencyKey = request.getHeader(HEADER).trim();
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            writeError(request, response, HttpStatus.BAD_REQUEST,
+                    "Idempotency-Key không hợp lệ (1-" + MAX_KEY_LENGTH + " ký tự)");
+            return;
+        }
+
+        byte[] body = request.getInputStream().readAllBytes();
+        String key = currentUser() + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request, body);
+
+        IdempotencyService.Acquisition acquisition = idempotencyService.acquire(key, fingerprint);
+        switch (acquisition.getKind()) {
+            case REPLAY -> {
+                log.info("Replaying idempotent response: {} {}", request.getRequestURI(), idempotencyKey);
+                replay(response, acquisition.getResponse());
+            }
+            case MISMATCH -> writeError(request, response, HttpStatus.UNPROCESSABLE_CONTENT,
+                    "Idempotency-Key đã được dùng cho một request khác");
+            case IN_PROGRESS -> writeError(request, response, HttpStatus.CONFLICT,
+                    "Request với Idempotency-Key này đang được xử lý, vui lòng thử lại sau");
+            case EXECUTE -> execute(new CachedBodyRequest(request, body), response, filterChain, key, fingerprint);
+        }
+    }
+
+    private void execute(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                         String key, String fingerprint) throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, wrapper);
+        } catch (ServletException | IOException | RuntimeException e) {
+            idempotencyService.abandon(key);
+            throw e;
+        }
+
+        int status = wrapper.getStatus();
+        if (status < 500) {
+            idempotencyService.complete(key, new IdempotencyService.StoredResponse(fingerprint, status,
+                    wrapper.getContentType(), new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8)));
+        } else {
+            idempotencyService.abandon(key);
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    private void replay(HttpServletResponse response, IdempotencyService.StoredResponse stored) throws IOException {
+        response.setStatus(stored.getStatusCode());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.getContentType() != null) {
+            response.setContentType(stored.getContentType());
+        }
+        if (stored.getBody() != null) {
+            byte[] bytes = stored.getBody().getBytes(StandardCharsets.UTF_8);
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+        }
+    }
+
+    private void writeError(HttpServletRequest request, HttpServletResponse response,
+                            HttpStatus status, String message) throws IOException {
+        ErrorResponse error = new ErrorResponse(status.value(), status.getReasonPhrase(), message, request.getRequestURI());
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), error);
+    }
+
+    private String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : "anonymous";
+    }
+
+    private String fingerprint(HttpServletRequest request, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((request.getMethod() + " " + request.getRequestURI() + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Request với body đã đọc sẵn, đọc lại được cho controller
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -6,11 +6,14 @@ import havudong.baocao.entity.UserPreference;
 import havudong.baocao.repository.UserBehaviorRepository;
 import havudong.baocao.repository.UserPreferenceRepository;
 import havudong.baocao.repository.UserRepository;
+import havudong.baocao.service.JobLeaseService;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -23,22 +26,46 @@ import static havudong.baocao.constant.RecommendationConstants.*;
  * 
  * Chạy lúc 2:00 AM mỗi ngày, phân tích hành vi 30 ngày
  * và cập nhật bảng user_preferences.
+ * Nhiều node: chỉ node giữ lease "user-preference" chạy (JobLeaseService).
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class UserPreferenceUpdateJob {
     
+    private static final String JOB_NAME = "user-preference";
+    
     private final UserRepository userRepository;
     private final UserBehaviorRepository userBehaviorRepository;
     private final UserPreferenceRepository userPreferenceRepository;
+    private final JobLeaseService jobLeaseService;
+    private final PlatformTransactionManager transactionManager;
+    
+    @PostConstruct
+    void registerLease() {
+        jobLeaseService.register(JOB_NAME);
+    }
     
     /**
-     * Chạy mỗi ngày lúc 2:00 AM
+     * Chạy mỗi ngày lúc 2:00 AM (node không giữ lease bỏ qua, không mở transaction)
      */
     @Scheduled(cron = "0 0 2 * * *")
-    @Transactional
     public void updateAllUserPreferences() {
+        if (!jobLeaseService.holds(JOB_NAME)) {
+            log.debug("Skipping user preference update, lease held by another node");
+            return;
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> updateAll());
+    }
+    
+    /**
+     * Cho phép gọi thủ công (test/debug)
+     */
+    public void runManually() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> updateAll());
+    }
+    
+    private void updateAll() {
         long startTime = System.currentTimeMillis();
         log.info("Starting user preference update job...");
         
@@ -63,13 +90,6 @@ public class UserPreferenceUpdateJob {
                  updated, skipped, duration);
     }
     
-    /**
-     * Cho phép gọi thủ công (test/debug)
-     */
-    public void runManually() {
-        updateAllUserPreferences();
-    }
-    
     /**
      * Cập nhật preference cho 1 user
      */
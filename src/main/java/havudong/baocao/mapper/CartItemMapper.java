@@ -13,6 +13,7 @@ public class CartItemMapper {
                 .quantity(cartItem.getQuantity())
                 .price(cartItem.getPrice())
                 .selected(cartItem.getSelected())
+                .reservedUntil(cartItem.getReservedUntil())
                 .product(CartItemResponse.ProductInfo.builder()
                         .id(cartItem.getProduct().getId())
                         .name(cartItem.getProduct().getName())
@@ -77,6 +77,7 @@ public class OrderMapper {
                 .totalAmount(order.getTotalAmount())
                 .shippingFee(order.getShippingFee())
                 .discountAmount(order.getDiscountAmount())
+                .voucherCode(order.getVoucherCode())
                 .platformFee(order.getPlatformFee())
                 .sellerAmount(order.getSellerAmount())
                 .finalAmount(order.getFinalAmount())
@@ -87,6 +88,7 @@ public class OrderMapper {
                 .shippingName(order.getShippingName())
                 .paymentMethod(order.getPaymentMethod() != null ? order.getPaymentMethod().name() : "COD")
                 .note(order.getNote())
+                .version(order.getVersion())
                 .createdAt(order.getCreatedAt())
                 .updatedAt(order.getUpdatedAt())
                 .user(OrderResponse.UserInfo.builder()
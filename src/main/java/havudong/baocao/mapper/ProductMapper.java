@@ -5,11 +5,16 @@ import havudong.baocao.dto.ProductResponse;
 import havudong.baocao.entity.Category;
 import havudong.baocao.entity.Product;
 import havudong.baocao.entity.User;
+import havudong.baocao.service.CategoryService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 @Component
+@RequiredArgsConstructor
 public class ProductMapper {
     
+    private final CategoryService categoryService;
+    
     public Product toEntity(ProductRequest request, User seller, Category category) {
         Product product = new Product();
         product.setSeller(seller);
@@ -38,6 +43,9 @@ public class ProductMapper {
     }
     
     public ProductResponse toResponse(Product product) {
+        // Lấy category từ snapshot theo id => không phải load proxy category
+        Category category = categoryService.getCategoryById(product.getCategory().getId())
+                .orElse(product.getCategory());
         return ProductResponse.builder()
                 .id(product.getId())
                 .name(product.getName())
@@ -50,6 +58,7 @@ public class ProductMapper {
                 .soldCount(product.getSoldCount())
                 .isActive(product.getIsActive())
                 .createdAt(product.getCreatedAt())
+                .updatedAt(product.getUpdatedAt())
                 .seller(ProductResponse.SellerInfo.builder()
                         .id(product.getSeller().getId())
                         .fullName(product.getSeller().getFullName())
@@ -57,9 +66,9 @@ public class ProductMapper {
                         .avatarUrl(product.getSeller().getAvatarUrl())
                         .build())
                 .category(ProductResponse.CategoryInfo.builder()
-                        .id(product.getCategory().getId())
-                        .name(product.getCategory().getName())
-                        .icon(product.getCategory().getIcon())
+                        .id(category.getId())
+                        .name(category.getName())
+                        .icon(category.getIcon())
                         .build())
                 .build();
     }
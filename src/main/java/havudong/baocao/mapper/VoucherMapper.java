@@ -0,0 +1,45 @@
+package havudong.baocao.mapper;
+
+import havudong.baocao.dto.VoucherRequest;
+import havudong.baocao.dto.VoucherResponse;
+import havudong.baocao.entity.Voucher;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+@Component
+public class VoucherMapper {
+    
+    public Voucher toEntity(VoucherRequest request) {
+        Voucher voucher = new Voucher();
+        voucher.setCode(request.getCode().trim().toUpperCase(Locale.ROOT));
+        voucher.setTitle(request.getTitle());
+        voucher.setDescription(request.getDescription());
+        voucher.setDiscountType(request.getDiscountType());
+        voucher.setDiscountValue(request.getDiscountValue());
+        voucher.setMinOrderAmount(request.getMinOrderAmount());
+        voucher.setMaxDiscount(request.getMaxDiscount());
+        voucher.setTotalQuantity(request.getTotalQuantity());
+        voucher.setUsedQuantity(0);
+        voucher.setStartDate(request.getStartDate());
+        voucher.setEndDate(request.getEndDate());
+        return voucher;
+    }
+    
+    public VoucherResponse toResponse(Voucher voucher, int remaining) {
+        return VoucherResponse.builder()
+                .id(voucher.getId())
+                .code(voucher.getCode())
+                .title(voucher.getTitle())
+                .description(voucher.getDescription())
+                .discountType(voucher.getDiscountType())
+                .discountValue(voucher.getDiscountValue())
+                .minOrderAmount(voucher.getMinOrderAmount())
+                .maxDiscount(voucher.getMaxDiscount())
+                .totalQuantity(voucher.getTotalQuantity())
+                .remaining(remaining)
+                .startDate(voucher.getStartDate())
+                .endDate(voucher.getEndDate())
+                .build();
+    }
+}
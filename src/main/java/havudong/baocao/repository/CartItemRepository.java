@@ -4,10 +4,13 @@ import havudong.baocao.entity.CartItem;
 import havudong.baocao.entity.Product;
 import havudong.baocao.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +19,15 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     
     List<CartItem> findByUser(User user);
     
+    // Cart item + product + seller trong 1 câu SELECT (hiển thị giỏ hàng theo seller)
+    @Query("SELECT c FROM CartItem c JOIN FETCH c.product p JOIN FETCH p.seller " +
+           "WHERE c.user = :user ORDER BY c.id")
+    List<CartItem> findByUserWithProductAndSeller(User user);
+    
+    @Query("SELECT c FROM CartItem c JOIN FETCH c.product " +
+           "WHERE c.user = :user AND c.id IN :ids")
+    List<CartItem> findByUserAndIdIn(User user, Collection<Long> ids);
+    
     List<CartItem> findByUserAndSelectedTrue(User user);
     
     Optional<CartItem> findByUserAndProduct(User user, Product product);
@@ -24,6 +36,20 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     
     void deleteByUserAndProduct(User user, Product product);
     
+    // Giữ chỗ còn hiệu lực: cartItemId, productId, số lượng, hạn giữ chỗ
+    @Query("SELECT c.id, c.product.id, c.reservedQuantity, c.reservedUntil FROM CartItem c " +
+           "WHERE c.reservedUntil > :now AND c.reservedQuantity > 0")
+    List<Object[]> findActiveReservations(LocalDateTime now);
+    
+    /**
+     * Chọn/bỏ chọn tất cả items của 1 seller bằng 1 câu UPDATE
+     */
+    @Modifying
+    @Query("UPDATE CartItem c SET c.selected = :selected, c.updatedAt = :now " +
+           "WHERE c.user = :user AND c.selected <> :selected " +
+           "AND c.product.id IN (SELECT p.id FROM Product p WHERE p.seller.id = :sellerId)")
+    int updateSelectedBySeller(User user, Long sellerId, Boolean selected, LocalDateTime now);
+    
     @Query("SELECT SUM(c.price * c.quantity) FROM CartItem c " +
            "WHERE c.user = :user AND c.selected = true")
     BigDecimal calculateTotalAmount(User user);
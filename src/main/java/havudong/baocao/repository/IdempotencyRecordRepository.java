@@ -0,0 +1,35 @@
+package havudong.baocao.repository;
+
+import havudong.baocao.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+    
+    Optional<IdempotencyRecord> findByIdempotencyKey(String idempotencyKey);
+    
+    /**
+     * Xóa bản ghi đang xử lý (request lỗi 5xx => cho phép client retry)
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.idempotencyKey = :idempotencyKey AND r.statusCode IS NULL")
+    int deletePending(String idempotencyKey);
+    
+    /**
+     * Bản ghi đang xử lý quá lâu (node chết giữa chừng) => cho request sau chiếm lại
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.idempotencyKey = :idempotencyKey " +
+           "AND r.statusCode IS NULL AND r.createdAt < :before")
+    int deleteStalePending(String idempotencyKey, LocalDateTime before);
+    
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(LocalDateTime now);
+}
@@ -0,0 +1,33 @@
+package havudong.baocao.repository;
+
+import havudong.baocao.entity.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+    
+    /**
+     * Gia hạn lease đang giữ + giành các lease đã hết hạn trong 1 UPDATE
+     */
+    @Modifying
+    @Query("UPDATE JobLease l SET " +
+           "l.acquiredAt = CASE WHEN l.owner = :owner THEN l.acquiredAt ELSE :now END, " +
+           "l.owner = :owner, l.leaseUntil = :leaseUntil " +
+           "WHERE l.name IN :names AND (l.owner = :owner OR l.leaseUntil IS NULL OR l.leaseUntil < :now)")
+    int acquireOrRenew(Collection<String> names, String owner, LocalDateTime now, LocalDateTime leaseUntil);
+    
+    @Query("SELECT l.name FROM JobLease l WHERE l.name IN :names AND l.owner = :owner AND l.leaseUntil = :leaseUntil")
+    List<String> findHeld(Collection<String> names, String owner, LocalDateTime leaseUntil);
+    
+    // Dừng app bình thường => trả lease để node khác nhận ngay, không chờ hết hạn
+    @Modifying
+    @Query("UPDATE JobLease l SET l.leaseUntil = NULL WHERE l.owner = :owner")
+    int releaseAll(String owner);
+}
@@ -3,10 +3,16 @@ package havudong.baocao.repository;
 import havudong.baocao.entity.Order;
 import havudong.baocao.entity.OrderItem;
 import havudong.baocao.entity.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
@@ -14,4 +20,18 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     List<OrderItem> findByOrder(Order order);
     
     List<OrderItem> findByProduct(Product product);
+    
+    // Export chi tiết đơn hàng theo luồng (cursor phía server)
+    String EXPORT_SELECT = "SELECT i.id, o.id, o.createdAt, i.product.id, i.productName, i.price, i.quantity, " +
+            "i.subtotal, o.paymentStatus, o.shippingStatus " +
+            "FROM OrderItem i JOIN i.order o ";
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(EXPORT_SELECT + "ORDER BY i.id")
+    Stream<Object[]> streamExportRows();
+    
+    // Theo seller: lọc đơn qua index seller_id của orders
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(EXPORT_SELECT + "WHERE o.seller.id = :sellerId ORDER BY i.id")
+    Stream<Object[]> streamExportRowsBySellerId(@Param("sellerId") Long sellerId);
 }
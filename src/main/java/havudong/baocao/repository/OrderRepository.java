@@ -2,19 +2,31 @@ package havudong.baocao.repository;
 
 import havudong.baocao.entity.Order;
 import havudong.baocao.entity.User;
+import havudong.baocao.entity.enums.PaymentMethod;
 import havudong.baocao.entity.enums.PaymentStatus;
 import havudong.baocao.entity.enums.ShippingStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -25,6 +37,9 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     // Seller orders (mỗi order giờ có seller riêng)
     Page<Order> findBySeller(User seller, Pageable pageable);
     
+    // Keyset pagination cho đơn hàng của seller
+    Window<Order> findBySeller(User seller, ScrollPosition position, Sort sort, Limit limit);
+    
     // Lọc theo trạng thái thanh toán
     Page<Order> findByPaymentStatus(PaymentStatus paymentStatus, Pageable pageable);
     
@@ -125,4 +140,97 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findOrdersContainingProduct(Long productId);
     
     Page<Order> findByShippingAddressContaining(String province, Pageable pageable);
+    
+    // Export đơn hàng theo luồng (cursor phía server)
+    String EXPORT_SELECT = "SELECT o.id, o.createdAt, u.id, u.fullName, s.id, s.fullName, " +
+            "o.totalAmount, o.shippingFee, o.discountAmount, o.platformFee, o.sellerAmount, o.finalAmount, " +
+            "o.paymentMethod, o.paymentStatus, o.shippingStatus, o.paidAt, " +
+            "o.shippingName, o.shippingPhone, o.shippingAddress, o.note " +
+            "FROM Order o JOIN o.user u JOIN o.seller s ";
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(EXPORT_SELECT + "ORDER BY o.id")
+    Stream<Object[]> streamExportRows();
+    
+    // Theo seller: đi theo index (seller_id, created_at, id), không sort lại
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(EXPORT_SELECT + "WHERE o.seller.id = :sellerId ORDER BY o.createdAt, o.id")
+    Stream<Object[]> streamExportRowsBySellerId(@Param("sellerId") Long sellerId);
+    
+    @Query("SELECT o.id, o.shippingStatus FROM Order o WHERE o.id IN :ids AND o.seller = :seller")
+    List<Object[]> findShippingStatuses(Collection<Long> ids, User seller);
+    
+    /**
+     * Chuyển trạng thái vận chuyển hàng loạt bằng 1 UPDATE có điều kiện (trạng thái nguồn hợp lệ)
+     * Tăng version để các request đang giữ bản cũ của đơn bị optimistic lock chặn
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.shippingStatus = :target, o.version = o.version + 1, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.seller = :seller AND o.shippingStatus IN :sources")
+    int updateShippingStatuses(Collection<Long> ids, User seller, Collection<ShippingStatus> sources,
+                               ShippingStatus target, LocalDateTime now);
+    
+    // Đơn vừa được UPDATE hàng loạt ở trên (updatedAt = mốc thời gian của lần UPDATE đó)
+    @Query("SELECT o.id FROM Order o WHERE o.id IN :ids AND o.shippingStatus = :status AND o.updatedAt = :updatedAt")
+    List<Long> findIdsByShippingStatusAndUpdatedAt(Collection<Long> ids, ShippingStatus status, LocalDateTime updatedAt);
+    
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.orderItems WHERE o.id IN :ids")
+    List<Order> findAllWithItemsByIdIn(Collection<Long> ids);
+    
+    // QR đang chờ thanh toán (index idx_orders_qr_pending), nạp lại hàng đợi hạn khi khởi động
+    @Query("SELECT o.id, o.qrExpiredAt FROM Order o " +
+           "WHERE o.paymentMethod = :method AND o.paymentStatus = :status AND o.qrExpiredAt IS NOT NULL")
+    List<Object[]> findQrDeadlines(PaymentMethod method, PaymentStatus status);
+    
+    // Mock ngân hàng xác nhận: chỉ đơn còn QR_TRANSFER + PENDING và QR chưa hết hạn
+    @Modifying
+    @Query("UPDATE Order o SET o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.PAID, " +
+           "o.paidAt = :now, o.version = o.version + 1, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.paymentMethod = havudong.baocao.entity.enums.PaymentMethod.QR_TRANSFER " +
+           "AND o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.PENDING AND o.qrExpiredAt > :now")
+    int confirmQrPayments(Collection<Long> ids, LocalDateTime now);
+    
+    @Query("SELECT o.id FROM Order o WHERE o.id IN :ids " +
+           "AND o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.PAID AND o.paidAt = :paidAt")
+    List<Long> findIdsPaidAt(Collection<Long> ids, LocalDateTime paidAt);
+    
+    @Modifying
+    @Query("UPDATE Order o SET o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.FAILED, " +
+           "o.version = o.version + 1, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.paymentMethod = havudong.baocao.entity.enums.PaymentMethod.QR_TRANSFER " +
+           "AND o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.PENDING AND o.qrExpiredAt <= :now")
+    int expireQrPayments(Collection<Long> ids, LocalDateTime now);
+    
+    // Quét theo index (payment_method, payment_status, qr_expired_at), không cần danh sách id
+    @Modifying
+    @Query("UPDATE Order o SET o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.FAILED, " +
+           "o.version = o.version + 1, o.updatedAt = :now " +
+           "WHERE o.paymentMethod = havudong.baocao.entity.enums.PaymentMethod.QR_TRANSFER " +
+           "AND o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.PENDING AND o.qrExpiredAt <= :now")
+    int expireOverdueQrPayments(LocalDateTime now);
+    
+    // Trạng thái thanh toán cho client đang chờ (SSE / long-poll), không load cả entity
+    @Query("SELECT o.paymentStatus, o.qrExpiredAt, o.paidAt FROM Order o WHERE o.id = :id")
+    List<Object[]> findPaymentSnapshot(Long id);
+    
+    // Trong các đơn đang có client chờ, đơn nào đã rời PENDING (kiểm tra lại định kỳ theo lô)
+    @Query("SELECT o.id, o.paymentStatus, o.qrExpiredAt, o.paidAt FROM Order o " +
+           "WHERE o.id IN :ids AND o.paymentStatus <> havudong.baocao.entity.enums.PaymentStatus.PENDING")
+    List<Object[]> findFinishedPayments(Collection<Long> ids);
+    
+    // Khớp mã thanh toán trong thông báo ngân hàng (index idx_orders_payment_txn)
+    @Query("SELECT o.id, o.paymentTransactionId, o.finalAmount, o.paymentStatus FROM Order o " +
+           "WHERE o.paymentTransactionId IN :transactionIds")
+    List<Object[]> findPaymentMatches(Collection<String> transactionIds);
+    
+    // Ngân hàng báo đã nhận tiền: PENDING hoặc FAILED (chuyển khoản sau khi QR hết hạn) => PAID
+    @Modifying
+    @Query("UPDATE Order o SET o.paymentStatus = havudong.baocao.entity.enums.PaymentStatus.PAID, " +
+           "o.paidAt = :now, o.version = o.version + 1, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.paymentStatus IN (havudong.baocao.entity.enums.PaymentStatus.PENDING, " +
+           "havudong.baocao.entity.enums.PaymentStatus.FAILED)")
+    int confirmTransferredPayments(Collection<Long> ids, LocalDateTime now);
+    
+    Optional<Order> findFirstByPaymentMethodAndPaymentStatusAndQrExpiredAtAfterAndCreatedAtBefore(
+            PaymentMethod paymentMethod, PaymentStatus paymentStatus, LocalDateTime qrExpiredAfter, LocalDateTime createdBefore);
 }
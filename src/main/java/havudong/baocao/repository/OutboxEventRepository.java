@@ -0,0 +1,63 @@
+package havudong.baocao.repository;
+
+import havudong.baocao.entity.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    /**
+     * Sự kiện chờ giao, bỏ qua sự kiện còn sự kiện cũ hơn cùng đơn chưa giao và chưa tới lượt
+     * (đang backoff sau lỗi / đang được node khác giao) => giữ thứ tự giữa các lô
+     */
+    @Query("SELECT e.id FROM OutboxEvent e WHERE e.processedAt IS NULL AND e.availableAt <= :now " +
+           "AND NOT EXISTS (SELECT 1 FROM OutboxEvent p WHERE p.aggregateId = e.aggregateId AND p.id < e.id " +
+           "AND p.processedAt IS NULL AND p.availableAt > :now) ORDER BY e.id")
+    List<Long> findPendingIds(LocalDateTime now, Pageable pageable);
+    
+    /**
+     * Giành quyền xử lý: chỉ các dòng vẫn còn chờ mới bị đánh dấu => 2 node không lấy trùng 1 sự kiện
+     * availableAt = leaseUntil: node chết giữa chừng thì hết lease các dòng tự được lấy lại
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.claimedBy = :token, e.availableAt = :leaseUntil, e.attempts = e.attempts + 1 " +
+           "WHERE e.id IN :ids AND e.processedAt IS NULL AND e.availableAt <= :now")
+    int claim(Collection<Long> ids, String token, LocalDateTime now, LocalDateTime leaseUntil);
+    
+    List<OutboxEvent> findByClaimedByOrderById(String claimedBy);
+    
+    /**
+     * Sự kiện chưa giao cũ nhất của từng đơn nằm ngoài lô vừa giành (node khác giành trước giữa lúc tìm và claim)
+     * MySQL không cho subquery trên chính bảng đang UPDATE nên không kiểm tra được ngay trong claim
+     */
+    @Query("SELECT e.aggregateId, MIN(e.id) FROM OutboxEvent e WHERE e.aggregateId IN :aggregateIds " +
+           "AND e.processedAt IS NULL AND (e.claimedBy IS NULL OR e.claimedBy <> :token) GROUP BY e.aggregateId")
+    List<Object[]> findOldestUnclaimed(Collection<Long> aggregateIds, String token);
+    
+    /**
+     * Trả lại sự kiện đã giành nhưng phải chờ sự kiện cũ hơn (không tính là 1 lần thử)
+     */
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.availableAt = :retryAt, e.attempts = e.attempts - 1 WHERE e.id IN :ids")
+    int defer(Collection<Long> ids, LocalDateTime retryAt);
+    
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.processedAt = :now, e.lastError = NULL WHERE e.id IN :ids")
+    int markProcessed(Collection<Long> ids, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.availableAt = :retryAt, e.lastError = :error WHERE e.id IN :ids")
+    int markFailed(Collection<Long> ids, LocalDateTime retryAt, String error);
+    
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(LocalDateTime before);
+}
@@ -1,32 +1,60 @@
 package havudong.baocao.repository;
 
+import havudong.baocao.dto.ProductResponse;
 import havudong.baocao.entity.Category;
 import havudong.baocao.entity.Product;
 import havudong.baocao.entity.User;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     
+    // Projection: product + seller + category trong 1 câu SELECT (tránh N+1 khi map response)
+    String RESPONSE_SELECT = "SELECT new havudong.baocao.dto.ProductResponse(" +
+            "p.id, p.name, p.description, p.price, p.originalPrice, p.stock, p.mainImage, " +
+            "p.rating, p.soldCount, p.isActive, p.createdAt, p.updatedAt, " +
+            "s.id, s.fullName, s.email, s.avatarUrl, c.id, c.name, c.icon) " +
+            "FROM Product p JOIN p.seller s JOIN p.category c ";
+    
     Page<Product> findByIsActiveTrue(Pageable pageable);
     
+    // Keyset pagination - không COUNT, không OFFSET
+    @EntityGraph(attributePaths = {"seller", "category"})
+    Window<Product> findByIsActiveTrue(ScrollPosition position, Sort sort, Limit limit);
+    
     Page<Product> findByCategoryAndIsActiveTrue(Category category, Pageable pageable);
     
     Page<Product> findBySeller(User seller, Pageable pageable);
     
     List<Product> findBySellerAndIsActiveTrue(User seller);
     
+    // EntityGraph để load seller + category trong 1 query (dùng cho product detail)
+    @EntityGraph(attributePaths = {"seller", "category"})
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findByIdWithDetails(@Param("id") Long id);
+    
     /**
      * Pessimistic lock để tránh race condition khi update stock
      */
@@ -82,6 +110,104 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
             @Param("minRating") Double minRating,
             Pageable pageable);
     
+    // ========== Projection queries cho các endpoint danh sách ==========
+    
+    @Query(value = RESPONSE_SELECT + "WHERE p.isActive = true",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true")
+    Page<ProductResponse> findActiveResponses(Pageable pageable);
+    
+    // Top N (không cần COUNT), sort theo pageable
+    @Query(RESPONSE_SELECT + "WHERE p.isActive = true")
+    List<ProductResponse> findTopActiveResponses(Pageable pageable);
+    
+    @Query(RESPONSE_SELECT + "WHERE p.isActive = true AND c.id = :categoryId")
+    List<ProductResponse> findTopActiveResponsesByCategoryId(@Param("categoryId") Long categoryId, Pageable pageable);
+    
+    @Query(value = RESPONSE_SELECT + "WHERE p.isActive = true AND c.id = :categoryId",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true AND p.category.id = :categoryId")
+    Page<ProductResponse> findActiveResponsesByCategoryId(@Param("categoryId") Long categoryId, Pageable pageable);
+    
+    @Query(value = RESPONSE_SELECT + "WHERE s.id = :sellerId",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.seller.id = :sellerId")
+    Page<ProductResponse> findResponsesBySellerId(@Param("sellerId") Long sellerId, Pageable pageable);
+    
+    @Query(value = RESPONSE_SELECT + "WHERE p.isActive = true " +
+           "AND LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true " +
+           "AND LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))")
+    Page<ProductResponse> searchResponsesByKeyword(@Param("keyword") String keyword, Pageable pageable);
+    
+    @Query(value = RESPONSE_SELECT + "WHERE p.isActive = true AND p.price BETWEEN :minPrice AND :maxPrice",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true " +
+           "AND p.price BETWEEN :minPrice AND :maxPrice")
+    Page<ProductResponse> findResponsesByPriceRange(@Param("minPrice") BigDecimal minPrice,
+                                                    @Param("maxPrice") BigDecimal maxPrice,
+                                                    Pageable pageable);
+    
+    @Query(value = RESPONSE_SELECT + "WHERE p.isActive = true " +
+           "AND LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
+           "AND (:categoryId IS NULL OR c.id = :categoryId) " +
+           "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
+           "AND (:maxPrice IS NULL OR p.price <= :maxPrice) " +
+           "AND (:minRating IS NULL OR p.rating >= :minRating)",
+           countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true " +
+           "AND LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
+           "AND (:categoryId IS NULL OR p.category.id = :categoryId) " +
+           "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
+           "AND (:maxPrice IS NULL OR p.price <= :maxPrice) " +
+           "AND (:minRating IS NULL OR p.rating >= :minRating)")
+    Page<ProductResponse> searchResponsesWithFilters(
+            @Param("keyword") String keyword,
+            @Param("categoryId") Long categoryId,
+            @Param("minPrice") BigDecimal minPrice,
+            @Param("maxPrice") BigDecimal maxPrice,
+            @Param("minRating") Double minRating,
+            Pageable pageable);
+    
+    // Load kết quả từ search index / leaderboard theo danh sách id
+    @Query(RESPONSE_SELECT + "WHERE p.isActive = true AND p.id IN :ids")
+    List<ProductResponse> findActiveResponsesByIdIn(@Param("ids") Collection<Long> ids);
+    
+    // Nạp dữ liệu cho search index theo từng lô (keyset theo id)
+    @Query("SELECT p.id, p.name, p.description, p.category.id, p.price, p.rating, p.soldCount, p.createdAt, p.isActive " +
+           "FROM Product p WHERE p.isActive = true AND p.id > :afterId ORDER BY p.id")
+    List<Object[]> findSearchDocuments(@Param("afterId") Long afterId, Pageable pageable);
+    
+    // Đồng bộ search index với các thay đổi từ node khác
+    @Query("SELECT p.id, p.name, p.description, p.category.id, p.price, p.rating, p.soldCount, p.createdAt, p.isActive " +
+           "FROM Product p WHERE p.updatedAt >= :since")
+    List<Object[]> findSearchDocumentsUpdatedSince(@Param("since") LocalDateTime since);
+    
+    // Nạp dữ liệu cho gợi ý tìm kiếm (chỉ tên + soldCount)
+    @Query("SELECT p.id, p.name, p.soldCount FROM Product p " +
+           "WHERE p.isActive = true AND p.id > :afterId ORDER BY p.id")
+    List<Object[]> findSuggestDocuments(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT p.category.id, COUNT(p) FROM Product p WHERE p.isActive = true GROUP BY p.category.id")
+    List<Object[]> countActiveByCategory();
+    
+    // Giá trị mới sau khi trừ/hoàn stock bằng UPDATE trực tiếp (cập nhật cache, index, leaderboard)
+    @Query("SELECT p.id, p.category.id, p.soldCount, p.createdAt, p.isActive FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findStockChanges(@Param("ids") Collection<Long> ids);
+    
+    // Stock hiện tại (đồng bộ bộ đếm flash sale)
+    @Query("SELECT p.id, p.stock FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findStocks(@Param("ids") Collection<Long> ids);
+    
+    // Export catalog: đọc theo luồng (cursor phía server, 1000 dòng/lần)
+    String EXPORT_SELECT = "SELECT p.id, p.name, p.description, c.id, c.name, p.price, p.originalPrice, p.stock, " +
+            "p.mainImage, p.isActive, p.soldCount, p.rating, s.id, p.createdAt, p.updatedAt " +
+            "FROM Product p JOIN p.seller s JOIN p.category c ";
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(EXPORT_SELECT + "ORDER BY p.id")
+    Stream<Object[]> streamExportRows();
+    
+    // Theo seller: câu riêng để dùng index seller_id (không OR với tham số null)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(EXPORT_SELECT + "WHERE p.seller.id = :sellerId ORDER BY p.id")
+    Stream<Object[]> streamExportRowsBySellerId(@Param("sellerId") Long sellerId);
+    
     // For recommendation system
     Page<Product> findByCategoryOrderBySoldCountDesc(Category category, Pageable pageable);
     
@@ -3,8 +3,13 @@ package havudong.baocao.repository;
 import havudong.baocao.entity.Product;
 import havudong.baocao.entity.Review;
 import havudong.baocao.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -21,6 +26,10 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     
     List<Review> findByProduct(Product product);
     
+    // Keyset pagination, load user cùng lúc để tránh N+1
+    @EntityGraph(attributePaths = {"user"})
+    Window<Review> findByProduct(Product product, ScrollPosition position, Sort sort, Limit limit);
+    
     // Reviews của user
     Page<Review> findByUser(User user, Pageable pageable);
     
@@ -2,6 +2,7 @@ package havudong.baocao.repository;
 
 import havudong.baocao.entity.UserBehavior;
 import havudong.baocao.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -20,6 +21,9 @@ public interface UserBehaviorRepository extends JpaRepository<UserBehavior, Long
     // New method for improved recommendation system
     List<UserBehavior> findByUserAndTimestampAfterOrderByTimestampDesc(User user, LocalDateTime since);
     
+    // Sự kiện mua hàng đã ghi chưa (outbox có thể giao lại cùng 1 ORDER_CREATED)
+    boolean existsByUserIdAndActionAndTimestamp(Long userId, String action, LocalDateTime timestamp);
+    
     // Get all behaviors in a time period for trending analysis
     List<UserBehavior> findByTimestampAfter(LocalDateTime since);
     
@@ -28,6 +32,18 @@ public interface UserBehaviorRepository extends JpaRepository<UserBehavior, Long
            "GROUP BY ub.product.id ORDER BY cnt DESC")
     List<Object[]> findTrendingProducts(@Param("since") LocalDateTime since, @Param("limit") int limit);
     
+    // Đếm số hành vi theo (product, action) để tính trending score bằng ACTION_WEIGHTS
+    @Query("SELECT ub.product.id, ub.action, COUNT(ub) FROM UserBehavior ub " +
+           "WHERE ub.timestamp >= :since AND ub.product IS NOT NULL " +
+           "GROUP BY ub.product.id, ub.action")
+    List<Object[]> countActionsByProductSince(@Param("since") LocalDateTime since);
+    
+    // Từ khóa tìm kiếm phổ biến (dùng cho gợi ý typeahead)
+    @Query("SELECT ub.searchQuery, COUNT(ub) as cnt FROM UserBehavior ub " +
+           "WHERE ub.timestamp >= :since AND ub.action = 'SEARCH' AND ub.searchQuery IS NOT NULL " +
+           "GROUP BY ub.searchQuery ORDER BY cnt DESC")
+    List<Object[]> findPopularSearchQueries(@Param("since") LocalDateTime since, Pageable pageable);
+    
     @Query("SELECT ub.category.id, COUNT(ub) as cnt FROM UserBehavior ub " +
            "WHERE ub.user = :user AND ub.timestamp >= :since " +
            "GROUP BY ub.category.id ORDER BY cnt DESC")
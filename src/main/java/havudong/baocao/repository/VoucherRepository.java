@@ -3,6 +3,7 @@ package havudong.baocao.repository;
 import havudong.baocao.entity.Voucher;
 import havudong.baocao.entity.enums.VoucherStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -23,4 +24,19 @@ public interface VoucherRepository extends JpaRepository<Voucher, Long> {
            "AND v.startDate <= :now AND v.endDate >= :now " +
            "AND v.usedQuantity < v.totalQuantity")
     List<Voucher> findActiveVouchers(LocalDateTime now);
+    
+    // Voucher đang chạy + sắp chạy (nạp vào bộ nhớ, thời gian hiệu lực kiểm tra khi áp dụng)
+    @Query("SELECT v FROM Voucher v WHERE v.status = 'ACTIVE' " +
+           "AND v.endDate >= :now AND v.usedQuantity < v.totalQuantity")
+    List<Voucher> findUsableVouchers(LocalDateTime now);
+    
+    /**
+     * Tăng lượt dùng nếu voucher còn hiệu lực và còn lượt - không lock trước, 0 dòng = hết lượt
+     */
+    @Modifying
+    @Query("UPDATE Voucher v SET v.usedQuantity = v.usedQuantity + 1, v.updatedAt = :now " +
+           "WHERE v.id = :id AND v.status = 'ACTIVE' " +
+           "AND v.startDate <= :now AND v.endDate >= :now " +
+           "AND v.usedQuantity < v.totalQuantity")
+    int incrementUsage(Long id, LocalDateTime now);
 }
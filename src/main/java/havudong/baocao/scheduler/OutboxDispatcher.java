@@ -0,0 +1,253 @@
+package havudong.baocao.scheduler;
+
+import havudong.baocao.entity.OutboxEvent;
+import havudong.baocao.event.OrderEvent;
+import havudong.baocao.repository.OutboxEventRepository;
+import havudong.baocao.service.JobLeaseService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giao sự kiện trong outbox_events cho các listener trong ứng dụng (@EventListener OrderEvent)
+ *
+ * - 1 thread poll theo lô (app.outbox.batch-size), được đánh thức ngay khi có transaction ghi outbox commit,
+ *   không có gì thì chờ tối đa app.outbox.poll-interval-ms
+ * - Giành quyền cả lô bằng 1 UPDATE có điều kiện (claimed_by + lease) => chạy nhiều node không giao trùng
+ * - Mỗi đơn hàng 1 virtual thread: sự kiện cùng đơn giao theo thứ tự, các đơn khác nhau giao song song
+ * - Listener lỗi => sự kiện đó và các sự kiện sau của cùng đơn được thử lại với backoff tăng dần
+ * - Giữa các lô: sự kiện chỉ được lấy khi mọi sự kiện cũ hơn (id nhỏ hơn) cùng đơn đã giao hoặc nằm cùng lô
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxDispatcher {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final String CLEANUP_JOB = "outbox-cleanup";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${app.outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    // Node giữ lô quá thời gian này (chết giữa chừng) => node khác lấy lại
+    @Value("${app.outbox.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${app.outbox.max-backoff-seconds:600}")
+    private long maxBackoffSeconds;
+
+    @Value("${app.outbox.retention-hours:72}")
+    private long retentionHours;
+
+    private final Semaphore signal = new Semaphore(0);
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService deliveryExecutor;
+
+    private Thread poller;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        jobLeaseService.register(CLEANUP_JOB);
+    }
+
+    /**
+     * Bắt đầu giao sau khi app sẵn sàng (listener, cache sản phẩm đã khởi tạo xong)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        poller = Thread.ofPlatform().name("outbox-dispatcher").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (poller != null) {
+            poller.interrupt();
+            poller.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        deliveryExecutor.shutdown();
+        deliveryExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Có sự kiện mới vừa commit => poll ngay thay vì chờ hết chu kỳ
+     */
+    public void wakeUp() {
+        if (signal.availablePermits() == 0) {
+            signal.release();
+        }
+    }
+
+    /**
+     * Xóa sự kiện đã giao quá app.outbox.retention-hours (1 node trong cluster)
+     */
+    @Scheduled(cron = "${app.outbox.cleanup-cron:0 15 * * * *}")
+    public void deleteProcessed() {
+        if (!jobLeaseService.holds(CLEANUP_JOB)) {
+            return;
+        }
+        Integer deleted = transactionTemplate.execute(status ->
+                outboxEventRepository.deleteProcessedBefore(LocalDateTime.now().minusHours(retentionHours)));
+        log.info("Deleted {} processed outbox events", deleted);
+    }
+
+    private void run() {
+        while (running) {
+            int dispatched = 0;
+            try {
+                dispatched = dispatchBatch();
+            } catch (RuntimeException e) {
+                log.error("Outbox dispatch failed", e);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // Lô đầy => còn sự kiện tồn, poll tiếp ngay
+            if (dispatched < batchSize) {
+                try {
+                    signal.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    signal.drainPermits();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int dispatchBatch() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = outboxEventRepository.findPendingIds(now, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        String token = UUID.randomUUID().toString();
+        transactionTemplate.executeWithoutResult(status ->
+                outboxEventRepository.claim(ids, token, now, now.plusSeconds(leaseSeconds)));
+        List<OutboxEvent> events = outboxEventRepository.findByClaimedByOrderById(token);
+
+        Map<Long, List<OutboxEvent>> byOrder = new LinkedHashMap<>();
+        for (OutboxEvent event : events) {
+            byOrder.computeIfAbsent(event.getAggregateId(), id -> new ArrayList<>()).add(event);
+        }
+        deferBlocked(byOrder, token);
+
+        Queue<Long> processed = new ConcurrentLinkedQueue<>();
+        List<Future<?>> deliveries = new ArrayList<>(byOrder.size());
+        for (List<OutboxEvent> orderEvents : byOrder.values()) {
+            deliveries.add(deliveryExecutor.submit(() -> deliver(orderEvents, processed)));
+        }
+        for (Future<?> delivery : deliveries) {
+            try {
+                delivery.get();
+            } catch (ExecutionException e) {
+                log.error("Outbox delivery failed", e.getCause());
+            }
+        }
+
+        if (!processed.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status ->
+                    outboxEventRepository.markProcessed(List.copyOf(processed), LocalDateTime.now()));
+        }
+        log.debug("Dispatched {}/{} outbox events", processed.size(), events.size());
+        return ids.size();
+    }
+
+    /**
+     * Sự kiện cũ hơn cùng đơn chưa giao mà không nằm trong lô (node khác vừa giành) => trả lại các sự kiện
+     * mới hơn nó, lấy lại ở lượt poll sau khi sự kiện cũ đã giao
+     */
+    private void deferBlocked(Map<Long, List<OutboxEvent>> byOrder, String token) {
+        if (byOrder.isEmpty()) {
+            return;
+        }
+        List<Long> deferred = new ArrayList<>();
+        for (Object[] row : outboxEventRepository.findOldestUnclaimed(byOrder.keySet(), token)) {
+            Long oldestId = (Long) row[1];
+            List<OutboxEvent> orderEvents = byOrder.get((Long) row[0]);
+            orderEvents.removeIf(event -> {
+                if (event.getId() > oldestId) {
+                    deferred.add(event.getId());
+                    return true;
+                }
+                return false;
+            });
+            if (orderEvents.isEmpty()) {
+                byOrder.remove((Long) row[0]);
+            }
+        }
+        if (!deferred.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.defer(
+                    deferred, LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(pollIntervalMs))));
+            log.debug("Deferred {} outbox events behind older events of the same order", deferred.size());
+        }
+    }
+
+    /**
+     * Giao lần lượt các sự kiện của 1 đơn hàng, dừng ở sự kiện lỗi đầu tiên để giữ thứ tự
+     */
+    private void deliver(List<OutboxEvent> events, Queue<Long> processed) {
+        for (int i = 0; i < events.size(); i++) {
+            OutboxEvent event = events.get(i);
+            try {
+                eventPublisher.publishEvent(objectMapper.readValue(event.getPayload(), OrderEvent.class));
+                processed.add(event.getId());
+            } catch (RuntimeException e) {
+                List<Long> retryIds = events.subList(i, events.size()).stream().map(OutboxEvent::getId).toList();
+                long backoff = Math.min(1L << Math.min(event.getAttempts(), 20), maxBackoffSeconds);
+                transactionTemplate.executeWithoutResult(status -> outboxEventRepository.markFailed(
+                        retryIds, LocalDateTime.now().plusSeconds(backoff), truncate(String.valueOf(e))));
+                log.warn("Outbox event {} ({}) failed, attempt {}, retry in {}s",
+                        event.getId(), event.getEventType(), event.getAttempts(), backoff, e);
+                return;
+            }
+        }
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -1,113 +1,283 @@
 package havudong.baocao.scheduler;
 
 import havudong.baocao.entity.Order;
+import havudong.baocao.entity.enums.OutboxEventType;
 import havudong.baocao.entity.enums.PaymentMethod;
 import havudong.baocao.entity.enums.PaymentStatus;
+import havudong.baocao.event.OrderEvent;
 import havudong.baocao.repository.OrderRepository;
+import havudong.baocao.service.JobLeaseService;
+import havudong.baocao.service.OutboxService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
 /**
  * QR Payment Scheduler - Auto confirm và xử lý expired
- * 
+ *
  * GIẢI THÍCH KHI BẢO VỆ:
- * 
+ *
  * 1. Auto Confirm (Mock):
  *    - Tự động xác nhận thanh toán sau 30-60 giây
  *    - Mô phỏng việc ngân hàng thông báo đã nhận tiền
- *    - Trong thực tế: sử dụng webhook từ payment gateway
- * 
+ *    - Trong thực tế: sử dụng webhook từ ngân hàng (BankWebhookService)
+ *    - Mặc định tắt, chỉ bật ở profile local (app.payment.qr.auto-confirm=true)
+ *
  * 2. Auto Expire:
- *    - Kiểm tra các QR đã hết hạn (quá 5 phút)
- *    - Đánh dấu FAILED để user tạo QR mới hoặc đổi COD
- * 
- * 3. Tại sao dùng Scheduler?
- *    - Đơn giản hóa demo cho luận văn
- *    - Không cần setup payment gateway thật
- *    - Dễ dàng test flow thanh toán
+ *    - QR hết hạn (quá 5 phút) mà chưa thanh toán => FAILED để user tạo QR mới hoặc đổi COD
+ *
+ * 3. Hàng đợi hạn (DelayQueue) thay vì quét bảng:
+ *    - Mỗi QR tạo ra đăng ký 2 mốc (auto confirm, hết hạn) vào hàng đợi trong bộ nhớ
+ *    - 1 thread chờ đúng tới mốc gần nhất, gom các mốc đã tới thành lô
+ *      => 1 UPDATE có điều kiện cho cả lô (chỉ đổi đơn còn QR_TRANSFER + PENDING)
+ *
+ * 4. Nhiều node: chỉ node giữ lease "qr-payment" (JobLeaseService) giữ hàng đợi và cập nhật đơn hàng
+ *    - Mỗi app.payment.qr.sweep-interval-ms: hết hạn các QR bị sót + nạp QR đang chờ (kể cả QR tạo ở node khác)
+ *      bằng index (payment_method, payment_status, qr_expired_at)
+ *    - Mất lease => bỏ hàng đợi, node mới giữ lease nạp lại ở lượt quét đầu tiên
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class QrPaymentScheduler {
 
+    // Thời gian hiệu lực QR (PaymentService), dùng suy ra lúc tạo QR khi nạp lại
+    public static final int QR_EXPIRY_MINUTES = 5;
+
+    private static final String JOB_NAME = "qr-payment";
+
+    private static final int MAX_BATCH = 500;
+
     private final OrderRepository orderRepository;
+    private final OutboxService outboxService;
+    private final PlatformTransactionManager transactionManager;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${app.payment.qr.auto-confirm:false}")
+    private boolean autoConfirm;
+
+    private final DelayQueue<Deadline> queue = new DelayQueue<>();
+
+    // orderId -> hạn QR hiện tại, bỏ qua mốc của QR cũ (user tạo lại QR / hủy QR)
+    private final Map<Long, LocalDateTime> current = new ConcurrentHashMap<>();
+
+    private TransactionTemplate transactionTemplate;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        jobLeaseService.register(JOB_NAME);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("qr-payment-scheduler").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Đăng ký mốc cho QR vừa tạo, trong transaction thì chờ commit
+     * Node không giữ lease bỏ qua: node giữ lease nạp QR này ở lượt quét kế tiếp
+     */
+    public void schedule(Long orderId, LocalDateTime qrExpiredAt) {
+        if (!jobLeaseService.holds(JOB_NAME)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    register(orderId, qrExpiredAt);
+                }
+            });
+        } else {
+            register(orderId, qrExpiredAt);
+        }
+    }
 
     /**
-     * Auto Confirm Payment (chạy mỗi 10 giây)
-     * 
-     * Logic:
-     * - Tìm đơn hàng QR_TRANSFER + PENDING
-     * - Đã tạo QR từ 30-60 giây trước
-     * - Tự động chuyển sang PAID
-     * 
-     * Random delay 30-60s để tạo cảm giác tự nhiên
+     * Bỏ theo dõi QR (đã hủy / đã thanh toán qua kênh khác), mốc còn trong hàng đợi bị bỏ qua khi tới hạn
      */
-    @Scheduled(fixedRate = 10000)  // Chạy mỗi 10 giây
-    @Transactional
-    public void autoConfirmPayment() {
-        // Tìm đơn hàng cần auto confirm
-        List<Order> pendingOrders = orderRepository.findAll().stream()
-                .filter(o -> o.getPaymentMethod() == PaymentMethod.QR_TRANSFER)
-                .filter(o -> o.getPaymentStatus() == PaymentStatus.PENDING)
-                .filter(o -> o.getQrExpiredAt() != null)
-                .filter(o -> o.getQrExpiredAt().isAfter(LocalDateTime.now())) // Chưa hết hạn
-                .filter(o -> o.getCreatedAt() != null)
-                .toList();
-        
-        for (Order order : pendingOrders) {
-            // Random confirm sau 30-60 giây
-            LocalDateTime qrCreatedAt = order.getQrExpiredAt().minusMinutes(5); // QR tạo = expired - 5 phút
-            long secondsSinceQrCreated = java.time.Duration.between(qrCreatedAt, LocalDateTime.now()).getSeconds();
-            
-            // Random threshold từ 30-60 giây cho mỗi order
-            int randomThreshold = 30 + (int)(order.getId() % 31); // 30-60 based on order ID
-            
-            if (secondsSinceQrCreated >= randomThreshold) {
-                log.info("Auto confirming payment for order {} after {} seconds", 
-                        order.getId(), secondsSinceQrCreated);
-                
-                order.setPaymentStatus(PaymentStatus.PAID);
-                order.setPaidAt(LocalDateTime.now());
-                orderRepository.save(order);
-                
-                log.info("Payment auto-confirmed for order {}", order.getId());
+    public void cancel(Long orderId) {
+        current.remove(orderId);
+    }
+
+    /**
+     * Hết hạn QR bị sót (1 UPDATE theo index) và nạp các QR đang chờ chưa có trong hàng đợi
+     * (khởi động, vừa giành được lease, QR tạo ở node khác)
+     */
+    @Scheduled(fixedDelayString = "${app.payment.qr.sweep-interval-ms:15000}")
+    public void sweep() {
+        if (!jobLeaseService.holds(JOB_NAME)) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Integer expired = transactionTemplate.execute(status -> orderRepository.expireOverdueQrPayments(now));
+        if (expired != null && expired > 0) {
+            log.info("Expired {} overdue QR payments", expired);
+        }
+
+        int loaded = 0;
+        for (Object[] row : orderRepository.findQrDeadlines(PaymentMethod.QR_TRANSFER, PaymentStatus.PENDING)) {
+            Long orderId = (Long) row[0];
+            LocalDateTime qrExpiredAt = (LocalDateTime) row[1];
+            if (!qrExpiredAt.equals(current.get(orderId))) {
+                register(orderId, qrExpiredAt);
+                loaded++;
+            }
+        }
+        if (loaded > 0) {
+            log.info("Loaded {} pending QR payments", loaded);
+        }
+    }
+
+    private void register(Long orderId, LocalDateTime qrExpiredAt) {
+        // Cùng độ chính xác với cột DATETIME(6) để so với giá trị nạp lại từ database
+        qrExpiredAt = qrExpiredAt.truncatedTo(ChronoUnit.MICROS);
+        current.put(orderId, qrExpiredAt);
+        long expiresAt = toMillis(qrExpiredAt);
+        queue.add(new Deadline(orderId, qrExpiredAt, expiresAt, false));
+        if (autoConfirm) {
+            // Mock ngân hàng báo có tiền sau 30-60 giây (theo order ID) kể từ lúc tạo QR
+            long issuedAt = expiresAt - TimeUnit.MINUTES.toMillis(QR_EXPIRY_MINUTES);
+            long confirmAt = issuedAt + TimeUnit.SECONDS.toMillis(30 + orderId % 31);
+            queue.add(new Deadline(orderId, qrExpiredAt, confirmAt, true));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            List<Deadline> due = new ArrayList<>();
+            try {
+                due.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(due, MAX_BATCH - 1);
+
+            if (!jobLeaseService.holds(JOB_NAME)) {
+                queue.clear();
+                current.clear();
+                continue;
+            }
+
+            List<Long> confirmIds = new ArrayList<>();
+            List<Long> expireIds = new ArrayList<>();
+            for (Deadline deadline : due) {
+                if (!deadline.qrExpiredAt.equals(current.get(deadline.orderId))) {
+                    continue;
+                }
+                if (deadline.confirm) {
+                    confirmIds.add(deadline.orderId);
+                } else {
+                    expireIds.add(deadline.orderId);
+                    current.remove(deadline.orderId, deadline.qrExpiredAt);
+                }
+            }
+
+            try {
+                if (!confirmIds.isEmpty()) {
+                    autoConfirmPayments(confirmIds);
+                }
+                if (!expireIds.isEmpty()) {
+                    expireQrPayments(expireIds);
+                }
+            } catch (RuntimeException e) {
+                log.error("QR payment batch failed ({} confirm, {} expire)", confirmIds.size(), expireIds.size(), e);
             }
         }
     }
 
     /**
-     * Auto Expire QR (chạy mỗi 30 giây)
-     * 
-     * Logic:
-     * - Tìm đơn hàng có QR đã hết hạn
-     * - Trạng thái vẫn PENDING
-     * - Chuyển sang FAILED
+     * Auto Confirm Payment (mock): QR_TRANSFER + PENDING + QR chưa hết hạn => PAID
      */
-    @Scheduled(fixedRate = 30000)  // Chạy mỗi 30 giây
-    @Transactional
-    public void autoExpireQr() {
-        List<Order> expiredOrders = orderRepository.findAll().stream()
-                .filter(o -> o.getPaymentMethod() == PaymentMethod.QR_TRANSFER)
-                .filter(o -> o.getPaymentStatus() == PaymentStatus.PENDING)
-                .filter(o -> o.getQrExpiredAt() != null)
-                .filter(o -> o.getQrExpiredAt().isBefore(LocalDateTime.now())) // Đã hết hạn
-                .toList();
-        
-        for (Order order : expiredOrders) {
-            log.info("QR expired for order {}. Marking as FAILED.", order.getId());
-            order.setPaymentStatus(PaymentStatus.FAILED);
-            orderRepository.save(order);
+    private void autoConfirmPayments(List<Long> orderIds) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Mốc paidAt làm dấu để biết đơn nào do chính UPDATE này xác nhận
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            int updated = orderRepository.confirmQrPayments(orderIds, now);
+            if (updated == 0) {
+                return;
+            }
+            List<Long> paidIds = orderRepository.findIdsPaidAt(orderIds, now);
+            for (Order order : orderRepository.findAllWithItemsByIdIn(paidIds)) {
+                outboxService.publish(OrderEvent.of(OutboxEventType.PAYMENT_CONFIRMED, order));
+            }
+            paidIds.forEach(current::remove);
+            log.info("Payment auto-confirmed for orders {}", paidIds);
+        });
+    }
+
+    /**
+     * Auto Expire QR: QR_TRANSFER + PENDING + đã quá hạn => FAILED
+     */
+    private void expireQrPayments(List<Long> orderIds) {
+        Integer expired = transactionTemplate.execute(status ->
+                orderRepository.expireQrPayments(orderIds, LocalDateTime.now()));
+        if (expired != null && expired > 0) {
+            log.info("Expired {} QR payments", expired);
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class Deadline implements Delayed {
+        private final long orderId;
+        private final LocalDateTime qrExpiredAt;
+        private final long dueAt;
+        private final boolean confirm;
+
+        private Deadline(long orderId, LocalDateTime qrExpiredAt, long dueAt, boolean confirm) {
+            this.orderId = orderId;
+            this.qrExpiredAt = qrExpiredAt;
+            this.dueAt = dueAt;
+            this.confirm = confirm;
         }
-        
-        if (!expiredOrders.isEmpty()) {
-            log.info("Expired {} QR payments", expiredOrders.size());
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAt, ((Deadline) other).dueAt);
         }
     }
 }
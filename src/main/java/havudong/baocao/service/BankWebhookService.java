@@ -0,0 +1,318 @@
+package havudong.baocao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import havudong.baocao.dto.BankWebhookRequest;
+import havudong.baocao.entity.Order;
+import havudong.baocao.entity.enums.OutboxEventType;
+import havudong.baocao.entity.enums.PaymentStatus;
+import havudong.baocao.event.OrderEvent;
+import havudong.baocao.exception.BadRequestException;
+import havudong.baocao.exception.UnauthorizedException;
+import havudong.baocao.repository.OrderRepository;
+import havudong.baocao.scheduler.QrPaymentScheduler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Nhận thông báo chuyển khoản từ ngân hàng (webhook) và xác nhận thanh toán QR
+ *
+ * - Chữ ký: HMAC-SHA256(secret, timestamp + "." + body), lệch giờ quá app.payment.webhook.tolerance-seconds => từ chối
+ * - Webhook chỉ kiểm tra chữ ký rồi đưa giao dịch vào buffer trong bộ nhớ, trả 202 ngay
+ *   (buffer đầy => 503 để ngân hàng gửi lại sau)
+ * - 1 thread gom buffer theo lô: 1 SELECT theo index payment_transaction_id + 1 UPDATE có điều kiện
+ *   (chỉ đơn còn PENDING/FAILED) => ngân hàng gửi lại / replay cuối ngày không xác nhận 2 lần
+ * - Mã giao dịch ngân hàng đã nhận được nhớ app.payment.webhook.dedup-hours để bỏ qua bản trùng sớm
+ * - Tắt app: ngừng nhận (503, ngân hàng gửi lại node khác / sau), xử lý hết buffer rồi mới dừng
+ *   (tối đa app.payment.webhook.shutdown-timeout-seconds)
+ *
+ * Buffer không ghi xuống database: app chết đột ngột => giao dịch đã trả 202 nhưng chưa xử lý bị mất.
+ * Đường đối soát là file replay cuối ngày của ngân hàng gửi lại toàn bộ giao dịch trong ngày qua chính webhook này
+ * (đơn đã PAID bị bỏ qua, đơn còn PENDING/FAILED được xác nhận).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BankWebhookService {
+
+    // Nội dung chuyển khoản: DH{orderId}_{timestamp} (ngân hàng có thể bỏ dấu "_")
+    private static final Pattern TRANSACTION_ID = Pattern.compile("DH(\\d+)_?(\\d{13})");
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final OrderRepository orderRepository;
+    private final OutboxService outboxService;
+    private final QrPaymentScheduler qrPaymentScheduler;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.payment.webhook.secret:}")
+    private String secret;
+
+    @Value("${app.payment.webhook.tolerance-seconds:300}")
+    private long toleranceSeconds;
+
+    @Value("${app.payment.webhook.buffer-size:20000}")
+    private int bufferSize;
+
+    @Value("${app.payment.webhook.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.payment.webhook.dedup-hours:24}")
+    private long dedupHours;
+
+    @Value("${app.payment.webhook.shutdown-timeout-seconds:30}")
+    private long shutdownTimeoutSeconds;
+
+    private BlockingQueue<BankWebhookRequest.Transaction> buffer;
+
+    private Cache<String, Boolean> seenReferences;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    private volatile boolean accepting;
+
+    @PostConstruct
+    void start() {
+        if (!isConfigured()) {
+            log.warn("Bank webhook secret (BANK_WEBHOOK_SECRET) is not set, all webhook calls will be rejected");
+        }
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        seenReferences = Caffeine.newBuilder()
+                .maximumSize(bufferSize * 10L)
+                .expireAfterWrite(Duration.ofHours(dedupHours))
+                .build();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        accepting = true;
+        worker = Thread.ofPlatform().name("bank-webhook-worker").daemon().start(this::run);
+    }
+
+    /**
+     * Ngừng nhận rồi xử lý hết buffer: các giao dịch đã trả 202 cho ngân hàng không bị bỏ
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        accepting = false;
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+        if (worker.isAlive()) {
+            worker.interrupt();
+        }
+        if (!buffer.isEmpty()) {
+            List<String> references = buffer.stream().map(BankWebhookRequest.Transaction::getReference).toList();
+            log.error("Unprocessed bank notifications on shutdown, reconcile with end-of-day replay: {}", references);
+        }
+    }
+
+    /**
+     * Xử lý 1 lần gọi webhook: kiểm tra chữ ký, đọc body, đưa giao dịch vào buffer
+     *
+     * @return số giao dịch mới được nhận, -1 nếu buffer đầy
+     */
+    public int receive(String timestamp, String signature, String body) {
+        if (!isConfigured()) {
+            throw new UnauthorizedException("Webhook ngân hàng chưa được cấu hình");
+        }
+        if (!verify(timestamp, signature, body)) {
+            throw new UnauthorizedException("Chữ ký webhook không hợp lệ");
+        }
+        BankWebhookRequest request;
+        try {
+            request = objectMapper.readValue(body, BankWebhookRequest.class);
+        } catch (JacksonException e) {
+            throw new BadRequestException("Dữ liệu webhook không hợp lệ");
+        }
+        if (request.getTransactions() == null || request.getTransactions().isEmpty()) {
+            return 0;
+        }
+        return enqueue(request.getTransactions());
+    }
+
+    /**
+     * Chữ ký hợp lệ và timestamp (epoch giây) nằm trong khoảng cho phép
+     */
+    public boolean verify(String timestamp, String signature, String body) {
+        if (!isConfigured() || timestamp == null || signature == null) {
+            return false;
+        }
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (Math.abs(System.currentTimeMillis() / 1000 - sentAt) > toleranceSeconds) {
+            return false;
+        }
+        byte[] expected = sign(timestamp, body).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, signature.trim().toLowerCase().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * HMAC-SHA256 dạng hex (dùng chung cho bank simulator)
+     */
+    public String sign(String timestamp, String body) {
+        if (!isConfigured()) {
+            throw new IllegalStateException("app.payment.webhook.secret (BANK_WEBHOOK_SECRET) is not set");
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            mac.update(timestamp.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) '.');
+            return HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+
+    /**
+     * Endpoint webhook không cần đăng nhập: secret rỗng => ai cũng ký được, nên từ chối mọi lần gọi
+     */
+    public boolean isConfigured() {
+        return secret != null && !secret.isBlank();
+    }
+
+    /**
+     * Đưa giao dịch vào buffer, bỏ qua mã giao dịch đã nhận
+     *
+     * @return số giao dịch mới được nhận, -1 nếu buffer đầy (giao dịch chưa nhận được bỏ đánh dấu để lần gửi lại xử lý)
+     */
+    private int enqueue(List<BankWebhookRequest.Transaction> transactions) {
+        int accepted = 0;
+        for (BankWebhookRequest.Transaction transaction : transactions) {
+            String reference = transaction.getReference();
+            if (reference == null || seenReferences.asMap().putIfAbsent(reference, Boolean.TRUE) != null) {
+                continue;
+            }
+            if (!accepting) {
+                seenReferences.invalidate(reference);
+                log.warn("Shutting down, rejecting bank notifications");
+                return -1;
+            }
+            if (!buffer.offer(transaction)) {
+                seenReferences.invalidate(reference);
+                log.warn("Bank notification buffer full ({}), rejecting batch", bufferSize);
+                return -1;
+            }
+            accepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * Chạy tới khi đã dừng nhận và buffer rỗng
+     */
+    private void run() {
+        while (running || !buffer.isEmpty()) {
+            List<BankWebhookRequest.Transaction> batch = new ArrayList<>();
+            try {
+                BankWebhookRequest.Transaction first = buffer.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.drainTo(batch, batchSize - 1);
+            try {
+                apply(batch);
+            } catch (RuntimeException e) {
+                // Lỗi database: bỏ đánh dấu để ngân hàng gửi lại vẫn được xử lý
+                batch.forEach(transaction -> seenReferences.invalidate(transaction.getReference()));
+                log.error("Failed to apply {} bank notifications", batch.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Khớp lô giao dịch với đơn hàng và chuyển các đơn đủ tiền sang PAID
+     */
+    private void apply(List<BankWebhookRequest.Transaction> batch) {
+        // Mã thanh toán -> tổng tiền đã chuyển trong lô (thiếu tiền => giữ PENDING, log để đối soát thủ công)
+        Map<String, BigDecimal> transferred = new HashMap<>();
+        for (BankWebhookRequest.Transaction transaction : batch) {
+            String transactionId = extractTransactionId(transaction.getDescription());
+            if (transactionId == null || transaction.getAmount() == null) {
+                log.debug("Unmatched bank transaction {}: {}", transaction.getReference(), transaction.getDescription());
+                continue;
+            }
+            transferred.merge(transactionId, transaction.getAmount(), BigDecimal::add);
+        }
+        if (transferred.isEmpty()) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> payable = new ArrayList<>();
+            for (Object[] row : orderRepository.findPaymentMatches(transferred.keySet())) {
+                Long orderId = (Long) row[0];
+                BigDecimal amount = transferred.get((String) row[1]);
+                BigDecimal finalAmount = (BigDecimal) row[2];
+                PaymentStatus paymentStatus = (PaymentStatus) row[3];
+                if (!paymentStatus.canTransitionTo(PaymentStatus.PAID)) {
+                    log.debug("Order {} already {}, ignoring bank transfer", orderId, paymentStatus);
+                } else if (amount.compareTo(finalAmount) < 0) {
+                    log.warn("Order {} underpaid: received {}, expected {}", orderId, amount, finalAmount);
+                } else {
+                    payable.add(orderId);
+                }
+            }
+            if (payable.isEmpty()) {
+                return;
+            }
+
+            // Mốc paidAt làm dấu để biết đơn nào do chính UPDATE này xác nhận
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            orderRepository.confirmTransferredPayments(payable, now);
+            List<Long> paidIds = orderRepository.findIdsPaidAt(payable, now);
+            for (Order order : orderRepository.findAllWithItemsByIdIn(paidIds)) {
+                outboxService.publish(OrderEvent.of(OutboxEventType.PAYMENT_CONFIRMED, order));
+            }
+            paidIds.forEach(qrPaymentScheduler::cancel);
+            log.info("Bank transfers confirmed {} orders ({} notifications)", paidIds.size(), batch.size());
+        });
+    }
+
+    private static String extractTransactionId(String description) {
+        if (description == null) {
+            return null;
+        }
+        Matcher matcher = TRANSACTION_ID.matcher(description.toUpperCase());
+        return matcher.find() ? "DH" + matcher.group(1) + "_" + matcher.group(2) : null;
+    }
+}
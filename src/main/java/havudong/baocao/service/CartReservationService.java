@@ -0,0 +1,285 @@
+package havudong.baocao.service;
+
+import havudong.baocao.entity.CartItem;
+import havudong.baocao.entity.Product;
+import havudong.baocao.exception.OutOfStockException;
+import havudong.baocao.repository.CartItemRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giữ chỗ stock tạm thời cho sản phẩm trong giỏ hàng
+ *
+ * - Thêm/sửa số lượng trong giỏ => giữ chỗ app.cart.reservation.ttl-minutes, hết hàng thì báo ngay
+ * - Stock còn lại = stock - tổng giữ chỗ còn hiệu lực của các giỏ hàng khác
+ * - Checkout dùng luôn phần đã giữ chỗ (không kiểm tra lại), sau khi commit thì xóa giữ chỗ
+ * - Giữ chỗ hết hạn được timer wheel (1 thread) gỡ theo từng tick
+ * - Lưu trên cart_items (reserved_quantity, reserved_until) để nạp lại khi khởi động
+ *
+ * Giữ chỗ là "mềm": chỉ có hiệu lực trong 1 node, database vẫn chặn bán quá stock khi checkout
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CartReservationService {
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final CartItemRepository cartItemRepository;
+    private final FlashSaleService flashSaleService;
+
+    @Value("${app.cart.reservation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cart.reservation.ttl-minutes:15}")
+    private long ttlMinutes;
+
+    @Value("${app.cart.reservation.sweep-interval-ms:1000}")
+    private long tickMs;
+
+    // cartItemId -> giữ chỗ hiện tại
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+
+    // productId -> tổng số lượng đang giữ chỗ
+    private final Map<Long, int[]> reservedByProduct = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private final Queue<Hold>[] wheel = new Queue[WHEEL_SIZE];
+
+    private ScheduledExecutorService sweeper;
+
+    private long lastTick;
+
+    @PostConstruct
+    void startSweeper() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        lastTick = System.currentTimeMillis() / tickMs - 1;
+        sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("cart-reservation-sweeper").daemon().factory());
+        sweeper.scheduleWithFixedDelay(this::sweep, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Nạp lại các giữ chỗ còn hạn từ database
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) {
+            return;
+        }
+        List<Object[]> rows = cartItemRepository.findActiveReservations(LocalDateTime.now());
+        for (Object[] row : rows) {
+            Hold hold = new Hold((Long) row[0], (Long) row[1], (Integer) row[2], toMillis((LocalDateTime) row[3]));
+            synchronized (reservedFor(hold.productId)) {
+                put(hold);
+            }
+        }
+        log.info("Recovered {} cart reservations", rows.size());
+    }
+
+    /**
+     * Giữ chỗ (hoặc gia hạn) cho toàn bộ số lượng của cart item, gọi trong transaction thêm/sửa giỏ hàng
+     * Không đủ stock => OutOfStockException
+     */
+    public void reserve(CartItem item) {
+        Product product = item.getProduct();
+        if (!enabled || item.getId() == null || flashSaleService.isActive(product.getId())) {
+            return;
+        }
+
+        long expiresAt = System.currentTimeMillis() + Duration.ofMinutes(ttlMinutes).toMillis();
+        Hold hold = new Hold(item.getId(), product.getId(), item.getQuantity(), expiresAt);
+        int[] reserved = reservedFor(product.getId());
+        Hold previous;
+        synchronized (reserved) {
+            previous = holds.get(item.getId());
+            int own = previous != null ? previous.quantity : 0;
+            int available = product.getStock() - (reserved[0] - own);
+            if (item.getQuantity() > available) {
+                throw new OutOfStockException(product.getName(), item.getQuantity(), Math.max(available, 0));
+            }
+            put(hold);
+        }
+
+        item.setReservedQuantity(hold.quantity);
+        item.setReservedUntil(LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneId.systemDefault()));
+
+        // Transaction rollback => bỏ giữ chỗ vừa tạo, trả lại giữ chỗ cũ (nếu còn hạn)
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        rollback(hold, previous);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Cart item đang giữ chỗ đủ số lượng => checkout không cần kiểm tra stock lại
+     */
+    public boolean covers(CartItem item) {
+        Hold hold = holds.get(item.getId());
+        return hold != null && hold.quantity >= item.getQuantity() && hold.expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Stock còn bán được cho cart item (trừ giữ chỗ của các giỏ hàng khác)
+     */
+    public int available(CartItem item) {
+        Product product = item.getProduct();
+        int[] reserved = reservedByProduct.get(product.getId());
+        if (reserved == null) {
+            return product.getStock();
+        }
+        synchronized (reserved) {
+            Hold own = holds.get(item.getId());
+            return product.getStock() - reserved[0] + (own != null ? own.quantity : 0);
+        }
+    }
+
+    /**
+     * Bỏ giữ chỗ (xóa khỏi giỏ, checkout xong) - trong transaction thì chờ commit
+     */
+    public void release(Collection<Long> cartItemIds) {
+        if (cartItemIds.isEmpty() || holds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(cartItemIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.forEach(id -> remove(holds.get(id)));
+                }
+            });
+        } else {
+            ids.forEach(id -> remove(holds.get(id)));
+        }
+    }
+
+    /**
+     * Mỗi tick quét các ô của wheel ứng với các tick đã trôi qua hết, gỡ giữ chỗ đã hết hạn.
+     * Giữ chỗ hạn xa hơn 1 vòng wheel vẫn nằm trong ô, được quét lại ở vòng sau.
+     */
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long lastElapsedTick = now / tickMs - 1;
+            long from = Math.max(lastTick + 1, lastElapsedTick - WHEEL_SIZE + 1);
+            List<Hold> expired = new ArrayList<>();
+            for (long tick = from; tick <= lastElapsedTick; tick++) {
+                Queue<Hold> slot = wheel[(int) (tick % WHEEL_SIZE)];
+                List<Hold> pending = new ArrayList<>();
+                Hold hold;
+                while ((hold = slot.poll()) != null) {
+                    if (holds.get(hold.cartItemId) != hold) {
+                        continue;
+                    }
+                    if (hold.expiresAt <= now) {
+                        expired.add(hold);
+                    } else {
+                        pending.add(hold);
+                    }
+                }
+                slot.addAll(pending);
+            }
+            lastTick = lastElapsedTick;
+
+            expired.forEach(this::remove);
+            if (!expired.isEmpty()) {
+                log.debug("Released {} expired cart reservations", expired.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Cart reservation sweep failed", e);
+        }
+    }
+
+    /**
+     * Gọi khi đang giữ lock của sản phẩm
+     */
+    private void put(Hold hold) {
+        Hold previous = holds.put(hold.cartItemId, hold);
+        int[] reserved = reservedFor(hold.productId);
+        reserved[0] += hold.quantity - (previous != null ? previous.quantity : 0);
+        wheel[(int) ((hold.expiresAt / tickMs) % WHEEL_SIZE)].add(hold);
+    }
+
+    private void remove(Hold hold) {
+        if (hold == null) {
+            return;
+        }
+        int[] reserved = reservedFor(hold.productId);
+        synchronized (reserved) {
+            if (holds.remove(hold.cartItemId, hold)) {
+                reserved[0] -= hold.quantity;
+            }
+        }
+    }
+
+    private void rollback(Hold hold, Hold previous) {
+        int[] reserved = reservedFor(hold.productId);
+        synchronized (reserved) {
+            if (!holds.remove(hold.cartItemId, hold)) {
+                return;
+            }
+            reserved[0] -= hold.quantity;
+            if (previous != null && previous.expiresAt > System.currentTimeMillis()) {
+                put(previous);
+            }
+        }
+    }
+
+    private int[] reservedFor(Long productId) {
+        return reservedByProduct.computeIfAbsent(productId, id -> new int[1]);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class Hold {
+        private final long cartItemId;
+        private final long productId;
+        private final int quantity;
+        private final long expiresAt;
+
+        private Hold(long cartItemId, long productId, int quantity, long expiresAt) {
+            this.cartItemId = cartItemId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package havudong.baocao.service;
 
+import havudong.baocao.dto.CartBatchUpdateRequest;
 import havudong.baocao.dto.CartGroupedResponse;
 import havudong.baocao.entity.CartItem;
 import havudong.baocao.entity.Product;
@@ -12,10 +13,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +27,7 @@ import java.util.stream.Collectors;
 public class CartService {
     
     private final CartItemRepository cartItemRepository;
+    private final CartReservationService cartReservationService;
     
     @Transactional
     public CartItem addToCart(User user, Product product, Integer quantity) {
@@ -36,6 +40,7 @@ public class CartService {
             CartItem item = existingItem.get();
             item.setQuantity(item.getQuantity() + quantity);
             item.setPrice(product.getPrice());
+            cartReservationService.reserve(item);
             return cartItemRepository.save(item);
         }
         
@@ -46,7 +51,10 @@ public class CartService {
         newItem.setPrice(product.getPrice());
         newItem.setSelected(true);
         
-        return cartItemRepository.save(newItem);
+        // Cần id của cart item để giữ chỗ
+        CartItem saved = cartItemRepository.save(newItem);
+        cartReservationService.reserve(saved);
+        return saved;
     }
     
     public List<CartItem> getCartItems(User user) {
@@ -65,7 +73,7 @@ public class CartService {
      * Lấy giỏ hàng đã group theo seller - phục vụ hiển thị UI marketplace
      */
     public CartGroupedResponse getCartGroupedBySeller(User user) {
-        List<CartItem> items = cartItemRepository.findByUser(user);
+        List<CartItem> items = cartItemRepository.findByUserWithProductAndSeller(user);
         
         if (items.isEmpty()) {
             return CartGroupedResponse.builder()
@@ -105,6 +113,7 @@ public class CartService {
                         .stock(product.getStock())
                         .selected(item.getSelected())
                         .subtotal(itemSubtotal)
+                        .reservedUntil(item.getReservedUntil())
                         .build());
                 
                 if (item.getSelected()) {
@@ -139,7 +148,9 @@ public class CartService {
         
         log.info("Updating cart item {} quantity from {} to {}", id, item.getQuantity(), quantity);
         item.setQuantity(quantity);
-        return cartItemRepository.save(item);
+        cartReservationService.reserve(item);
+        // Entity đang được quản lý => dirty checking tự UPDATE khi commit, không cần save
+        return item;
     }
     
     @Transactional
@@ -148,27 +159,61 @@ public class CartService {
             .orElseThrow(() -> new ResourceNotFoundException("Cart item", "id", id));
         
         item.setSelected(!item.getSelected());
-        return cartItemRepository.save(item);
+        return item;
     }
     
+    /**
+     * Chọn/bỏ chọn tất cả items của 1 seller - 1 câu UPDATE, không load giỏ hàng
+     */
     @Transactional
     public void selectAllBySeller(User user, Long sellerId, Boolean selected) {
-        List<CartItem> items = cartItemRepository.findByUser(user);
-        items.stream()
-                .filter(item -> item.getProduct().getSeller().getId().equals(sellerId))
-                .forEach(item -> item.setSelected(selected));
-        cartItemRepository.saveAll(items);
+        int updated = cartItemRepository.updateSelectedBySeller(user, sellerId, selected, LocalDateTime.now());
+        log.info("Set selected={} for {} cart items of seller {} (user {})", selected, updated, sellerId, user.getId());
+    }
+    
+    /**
+     * Áp dụng nhiều thay đổi số lượng / chọn trong 1 transaction
+     * - Load các cart item (kèm product) bằng 1 query, chỉ lấy item thuộc user
+     * - Các UPDATE được Hibernate gom batch khi commit
+     * @return giỏ hàng sau khi cập nhật (group theo seller)
+     */
+    @Transactional
+    public CartGroupedResponse updateCartItems(User user, List<CartBatchUpdateRequest.ItemChange> changes) {
+        Map<Long, CartItem> items = cartItemRepository.findByUserAndIdIn(user,
+                        changes.stream().map(CartBatchUpdateRequest.ItemChange::getCartItemId).toList())
+                .stream()
+                .collect(Collectors.toMap(CartItem::getId, Function.identity()));
+        
+        for (CartBatchUpdateRequest.ItemChange change : changes) {
+            CartItem item = items.get(change.getCartItemId());
+            if (item == null) {
+                throw new ResourceNotFoundException("Cart item", "id", change.getCartItemId());
+            }
+            if (change.getSelected() != null) {
+                item.setSelected(change.getSelected());
+            }
+            if (change.getQuantity() != null && !change.getQuantity().equals(item.getQuantity())) {
+                item.setQuantity(change.getQuantity());
+                cartReservationService.reserve(item);
+            }
+        }
+        
+        log.info("Applied {} cart changes for user {}", changes.size(), user.getId());
+        return getCartGroupedBySeller(user);
     }
     
     @Transactional
     public void removeFromCart(Long id) {
         log.info("Removing cart item: {}", id);
         cartItemRepository.deleteById(id);
+        cartReservationService.release(List.of(id));
     }
     
     @Transactional
     public void clearCart(User user) {
         log.info("Clearing cart for user: {}", user.getId());
+        List<Long> ids = cartItemRepository.findByUser(user).stream().map(CartItem::getId).toList();
         cartItemRepository.deleteByUser(user);
+        cartReservationService.release(ids);
     }
 }
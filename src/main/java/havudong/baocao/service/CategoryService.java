@@ -1,40 +1,87 @@
 package havudong.baocao.service;
 
+import havudong.baocao.dto.CategoryResponse;
 import havudong.baocao.entity.Category;
 import havudong.baocao.exception.DuplicateResourceException;
 import havudong.baocao.exception.ResourceNotFoundException;
+import havudong.baocao.mapper.CategoryMapper;
 import havudong.baocao.repository.CategoryRepository;
+import havudong.baocao.util.HttpCacheUtil;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.ObjectMapper;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Danh mục rất ít thay đổi => giữ snapshot bất biến trong bộ nhớ (copy-on-write)
+ *
+ * - Đọc (theo id, theo tên, danh sách) không chạm database
+ * - Ghi (create/update/delete) build snapshot mới sau khi commit rồi thay tham chiếu 1 lần
+ * - Reload định kỳ để đồng bộ thay đổi từ node khác
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class CategoryService {
     
     private final CategoryRepository categoryRepository;
+    private final CategoryMapper categoryMapper;
+    private final ObjectMapper objectMapper;
+    private final ProductCache productCache;
+    
+    private volatile Snapshot snapshot;
     
     @Transactional
     public Category createCategory(Category category) {
         if (categoryRepository.existsByName(category.getName())) {
             throw new DuplicateResourceException("Category", "name", category.getName());
         }
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        // Product detail trong cache nhúng tên/icon danh mục => bỏ cache để body (và ETag) đổi theo
+        afterCommit(() -> {
+            reload();
+            productCache.invalidateAll();
+        });
+        return saved;
     }
     
     public Optional<Category> getCategoryById(Long id) {
-        return categoryRepository.findById(id);
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshot().byId.get(id));
     }
     
     public Optional<Category> getCategoryByName(String name) {
-        return categoryRepository.findByName(name);
+        if (name == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshot().byName.get(name.toLowerCase(Locale.ROOT)));
     }
     
     public List<Category> getAllCategories() {
-        return categoryRepository.findAll();
+        return snapshot().all;
+    }
+    
+    /**
+     * Danh sách CategoryResponse đã serialize sẵn thành JSON (không serialize lại mỗi request)
+     */
+    public byte[] getAllCategoriesJson() {
+        return snapshot().listJson;
+    }
+    
+    public String getAllCategoriesEtag() {
+        return snapshot().listEtag;
     }
     
     @Transactional
@@ -46,11 +93,81 @@ public class CategoryService {
         category.setIcon(categoryDetails.getIcon());
         category.setDescription(categoryDetails.getDescription());
         
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        // Product detail trong cache nhúng tên/icon danh mục => bỏ cache để body (và ETag) đổi theo
+        afterCommit(() -> {
+            reload();
+            productCache.invalidateAll();
+        });
+        return saved;
     }
     
     @Transactional
     public void deleteCategory(Long id) {
         categoryRepository.deleteById(id);
+        afterCommit(this::reload);
+    }
+    
+    /**
+     * Load lại toàn bộ danh mục, build snapshot mới rồi mới thay thế
+     */
+    @Scheduled(fixedDelayString = "${app.category.refresh-interval-ms:300000}",
+               initialDelayString = "${app.category.refresh-interval-ms:300000}")
+    public synchronized void reload() {
+        long startTime = System.currentTimeMillis();
+        List<Category> categories = categoryRepository.findAll();
+        snapshot = new Snapshot(categories, categories.stream().map(categoryMapper::toResponse).toList(), objectMapper);
+        log.debug("Category snapshot reloaded: {} categories in {}ms",
+                categories.size(), System.currentTimeMillis() - startTime);
+    }
+    
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    reload();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+    
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private static final class Snapshot {
+        
+        private final Map<Long, Category> byId;
+        // MySQL so sánh tên không phân biệt hoa thường (unique) => key lowercase
+        private final Map<String, Category> byName;
+        private final List<Category> all;
+        private final byte[] listJson;
+        private final String listEtag;
+        
+        private Snapshot(List<Category> categories, List<CategoryResponse> responses, ObjectMapper objectMapper) {
+            Map<Long, Category> ids = new HashMap<>();
+            Map<String, Category> names = new HashMap<>();
+            for (Category category : categories) {
+                ids.put(category.getId(), category);
+                names.put(category.getName().toLowerCase(Locale.ROOT), category);
+            }
+            this.byId = Map.copyOf(ids);
+            this.byName = Map.copyOf(names);
+            this.all = List.copyOf(categories);
+            this.listJson = objectMapper.writeValueAsBytes(responses);
+            this.listEtag = HttpCacheUtil.collectionEtag(responses, CategoryResponse::getId, CategoryResponse::getUpdatedAt);
+        }
     }
 }
@@ -3,9 +3,11 @@ package havudong.baocao.service;
 import havudong.baocao.dto.CheckoutRequest;
 import havudong.baocao.dto.OrderResponse;
 import havudong.baocao.entity.*;
+import havudong.baocao.entity.enums.OutboxEventType;
 import havudong.baocao.entity.enums.PaymentMethod;
 import havudong.baocao.entity.enums.PaymentStatus;
 import havudong.baocao.entity.enums.ShippingStatus;
+import havudong.baocao.event.OrderEvent;
 import havudong.baocao.exception.BadRequestException;
 import havudong.baocao.exception.OutOfStockException;
 import havudong.baocao.exception.ResourceNotFoundException;
@@ -26,7 +28,9 @@ import java.util.stream.Collectors;
 /**
  * Service xử lý checkout và tạo đơn hàng
  * - Tự động tách đơn hàng theo seller
- * - Validate và lock stock
+ * - Validate và trừ stock (batch UPDATE có điều kiện)
+ * - Áp dụng voucher cho cả lần checkout, số tiền giảm chia theo tiền hàng của từng đơn
+ * - Ghi sự kiện ORDER_CREATED vào outbox, việc phụ (cache sản phẩm, hành vi mua hàng...) chạy sau commit
  * - Tính phí platform commission
  */
 @Service
@@ -37,6 +41,10 @@ public class CheckoutService {
     private final CartItemRepository cartItemRepository;
     private final OrderRepository orderRepository;
     private final ProductService productService;
+    private final FlashSaleService flashSaleService;
+    private final CartReservationService cartReservationService;
+    private final VoucherService voucherService;
+    private final OutboxService outboxService;
     private final OrderMapper orderMapper;
     
     // Phí platform (commission) - mặc định 5%
@@ -76,8 +84,28 @@ public class CheckoutService {
         
         log.info("Splitting order into {} seller groups", itemsBySeller.size());
         
-        // 3. Validate stock cho tất cả sản phẩm trước
-        validateStock(cartItems);
+        // 3. Giữ suất flash sale trong bộ nhớ (hết suất => từ chối ngay, không chạm bảng products),
+        // suất được nhận do writer của FlashSaleService trừ stock theo lô
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (CartItem item : cartItems) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        Map<Long, Integer> flashSaleQuantities = flashSaleService.admit(quantities);
+        
+        // Validate stock cho các sản phẩm còn lại trước
+        validateStock(cartItems, flashSaleQuantities.keySet());
+        
+        // Voucher: giữ 1 lượt trong bộ nhớ (hết lượt => từ chối trước khi tạo đơn)
+        Map<Long, BigDecimal> discountBySeller = Map.of();
+        VoucherService.Redemption redemption = null;
+        if (request.getVoucherCode() != null && !request.getVoucherCode().isBlank()) {
+            Map<Long, BigDecimal> subtotalBySeller = new LinkedHashMap<>();
+            itemsBySeller.forEach((sellerId, sellerItems) -> subtotalBySeller.put(sellerId, subtotal(sellerItems)));
+            BigDecimal merchandiseTotal = subtotalBySeller.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+            
+            redemption = voucherService.reserve(request.getVoucherCode(), merchandiseTotal);
+            discountBySeller = allocateDiscount(subtotalBySeller, merchandiseTotal, redemption.getDiscountAmount());
+        }
         
         // 4. Tạo order cho mỗi seller
         List<Order> createdOrders = new ArrayList<>();
@@ -86,20 +114,30 @@ public class CheckoutService {
             Long sellerId = entry.getKey();
             List<CartItem> sellerItems = entry.getValue();
             
-            Order order = createOrderForSeller(customer, sellerItems, request);
+            Order order = createOrderForSeller(customer, sellerItems, request,
+                    discountBySeller.getOrDefault(sellerId, BigDecimal.ZERO),
+                    redemption != null ? redemption.getCode() : null);
             createdOrders.add(order);
+            outboxService.publish(OrderEvent.of(OutboxEventType.ORDER_CREATED, order));
             
             log.info("Created order {} for seller {} with {} items", 
                     order.getId(), sellerId, sellerItems.size());
         }
         
         // 5. Trừ stock sau khi tất cả orders được tạo thành công
-        for (CartItem item : cartItems) {
-            productService.decreaseStock(item.getProduct().getId(), item.getQuantity());
+        // (1 batch UPDATE có điều kiện ở cuối transaction => giữ lock dòng sản phẩm ngắn nhất)
+        // Sản phẩm flash sale đã được writer trừ stock ở bước 3
+        quantities.keySet().removeAll(flashSaleQuantities.keySet());
+        productService.reserveStock(quantities);
+        
+        // Ghi lượt dùng voucher (UPDATE có điều kiện trên 1 dòng "nóng" => để cuối cùng)
+        if (redemption != null) {
+            voucherService.redeem(redemption);
         }
         
-        // 6. Xóa cart items đã checkout
+        // 6. Xóa cart items đã checkout (giữ chỗ đã chuyển thành đơn hàng => bỏ sau khi commit)
         cartItemRepository.deleteAll(cartItems);
+        cartReservationService.release(cartItems.stream().map(CartItem::getId).toList());
         
         log.info("Checkout completed. Created {} orders for user {}", 
                 createdOrders.size(), customer.getId());
@@ -111,26 +149,65 @@ public class CheckoutService {
     
     /**
      * Validate stock cho tất cả items trước khi tạo order
+     * Không lock: chỉ để báo lỗi sớm, kiểm tra chính xác nằm ở reserveStock
+     * (sản phẩm flash sale đã kiểm tra bằng bộ đếm trong bộ nhớ, cart item đã giữ chỗ thì bỏ qua)
      */
-    private void validateStock(List<CartItem> cartItems) {
+    private void validateStock(List<CartItem> cartItems, Set<Long> flashSaleProductIds) {
         for (CartItem item : cartItems) {
-            Product product = productService.getProductByIdWithLock(item.getProduct().getId());
+            Product product = item.getProduct();
             
             if (!product.getIsActive()) {
                 throw new BadRequestException(
                         String.format("Sản phẩm '%s' đã ngừng bán", product.getName()));
             }
             
-            if (product.getStock() < item.getQuantity()) {
-                throw new OutOfStockException(product.getName(), item.getQuantity(), product.getStock());
+            // Đã giữ chỗ đủ số lượng => dùng luôn phần giữ chỗ
+            if (flashSaleProductIds.contains(product.getId()) || cartReservationService.covers(item)) {
+                continue;
+            }
+            
+            // Chưa giữ chỗ / hết hạn: stock còn lại phải trừ phần các giỏ hàng khác đang giữ
+            int available = cartReservationService.available(item);
+            if (available < item.getQuantity()) {
+                throw new OutOfStockException(product.getName(), item.getQuantity(), Math.max(available, 0));
             }
         }
     }
     
+    private BigDecimal subtotal(List<CartItem> items) {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (CartItem item : items) {
+            subtotal = subtotal.add(item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        return subtotal;
+    }
+    
+    /**
+     * Chia tiền giảm của voucher theo tỷ lệ tiền hàng từng seller (làm tròn đồng, đơn cuối nhận phần dư)
+     */
+    private Map<Long, BigDecimal> allocateDiscount(Map<Long, BigDecimal> subtotalBySeller,
+                                                   BigDecimal merchandiseTotal, BigDecimal discount) {
+        Map<Long, BigDecimal> allocation = new HashMap<>();
+        if (merchandiseTotal.signum() == 0) {
+            return allocation;
+        }
+        BigDecimal remaining = discount;
+        int index = 0;
+        for (Map.Entry<Long, BigDecimal> entry : subtotalBySeller.entrySet()) {
+            BigDecimal share = ++index == subtotalBySeller.size()
+                    ? remaining
+                    : discount.multiply(entry.getValue()).divide(merchandiseTotal, 0, RoundingMode.DOWN);
+            allocation.put(entry.getKey(), share);
+            remaining = remaining.subtract(share);
+        }
+        return allocation;
+    }
+    
     /**
      * Tạo order cho 1 seller từ danh sách cart items
      */
-    private Order createOrderForSeller(User customer, List<CartItem> items, CheckoutRequest request) {
+    private Order createOrderForSeller(User customer, List<CartItem> items, CheckoutRequest request,
+                                       BigDecimal discountAmount, String voucherCode) {
         // Lấy seller từ product đầu tiên (tất cả items có cùng seller)
         User seller = items.get(0).getProduct().getSeller();
         
@@ -186,8 +263,9 @@ public class CheckoutService {
         // Phí ship (có thể tính theo seller hoặc khoảng cách)
         order.setShippingFee(defaultShippingFee);
         
-        // Discount (có thể implement voucher system sau)
-        order.setDiscountAmount(BigDecimal.ZERO);
+        // Discount từ voucher của platform (không trừ vào tiền seller nhận)
+        order.setDiscountAmount(discountAmount);
+        order.setVoucherCode(voucherCode);
         
         // Tính phí platform commission
         BigDecimal platformFee = totalAmount.multiply(platformFeeRate)
@@ -0,0 +1,151 @@
+package havudong.baocao.service;
+
+import havudong.baocao.repository.OrderItemRepository;
+import havudong.baocao.repository.OrderRepository;
+import havudong.baocao.repository.ProductRepository;
+import havudong.baocao.util.CsvWriter;
+import havudong.baocao.util.DataFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Export sản phẩm / đơn hàng / chi tiết đơn hàng ra CSV hoặc NDJSON
+ *
+ * - Query trả về cột (không phải entity) nên persistence context không giữ gì, không cần detach/clear
+ * - Stream đọc tiến (fetch size 1000, MySQL cần useCursorFetch=true), ghi thẳng ra response
+ * - Bộ nhớ dùng không phụ thuộc số dòng export
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DataExportService {
+
+    // Cột CSV của sản phẩm trùng tên với cột import => file export import lại được
+    private static final String[] PRODUCT_COLUMNS = {
+            "id", "name", "description", "categoryId", "category", "price", "originalPrice", "stock",
+            "mainImage", "isActive", "soldCount", "rating", "sellerId", "createdAt", "updatedAt"};
+
+    private static final String[] ORDER_COLUMNS = {
+            "id", "createdAt", "customerId", "customerName", "sellerId", "sellerName",
+            "totalAmount", "shippingFee", "discountAmount", "platformFee", "sellerAmount", "finalAmount",
+            "paymentMethod", "paymentStatus", "shippingStatus", "paidAt",
+            "shippingName", "shippingPhone", "shippingAddress", "note"};
+
+    private static final String[] ORDER_ITEM_COLUMNS = {
+            "id", "orderId", "orderCreatedAt", "productId", "productName", "price", "quantity", "subtotal",
+            "paymentStatus", "shippingStatus"};
+
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * sellerId = null => toàn bộ sản phẩm (admin)
+     */
+    public StreamingResponseBody exportProducts(Long sellerId, DataFormat format) {
+        return export("products", PRODUCT_COLUMNS, format, () -> sellerId == null
+                ? productRepository.streamExportRows()
+                : productRepository.streamExportRowsBySellerId(sellerId));
+    }
+
+    public StreamingResponseBody exportOrders(Long sellerId, DataFormat format) {
+        return export("orders", ORDER_COLUMNS, format, () -> sellerId == null
+                ? orderRepository.streamExportRows()
+                : orderRepository.streamExportRowsBySellerId(sellerId));
+    }
+
+    public StreamingResponseBody exportOrderItems(Long sellerId, DataFormat format) {
+        return export("order items", ORDER_ITEM_COLUMNS, format, () -> sellerId == null
+                ? orderItemRepository.streamExportRows()
+                : orderItemRepository.streamExportRowsBySellerId(sellerId));
+    }
+
+    /**
+     * Tên file gợi ý cho Content-Disposition
+     */
+    public static String fileName(String prefix, DataFormat format) {
+        return prefix + "-" + LocalDate.now() + "." + format.getExtension();
+    }
+
+    private StreamingResponseBody export(String name, String[] columns, DataFormat format,
+                                         Supplier<Stream<Object[]>> query) {
+        return output -> {
+            long startTime = System.currentTimeMillis();
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+
+            Long rows = transactionTemplate.execute(status -> {
+                try (Stream<Object[]> stream = query.get()) {
+                    return format == DataFormat.CSV
+                            ? writeCsv(output, columns, stream.iterator())
+                            : writeNdjson(output, columns, stream.iterator());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            log.info("Exported {} {} ({}) in {}ms", rows, name, format, System.currentTimeMillis() - startTime);
+        };
+    }
+
+    private long writeCsv(OutputStream output, String[] columns, Iterator<Object[]> rows) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        CsvWriter csv = new CsvWriter(writer);
+        csv.writeBom();
+        csv.writeRow((Object[]) columns);
+
+        long count = 0;
+        while (rows.hasNext()) {
+            csv.writeRow(rows.next());
+            if (++count % FLUSH_EVERY_ROWS == 0) {
+                csv.flush();
+            }
+        }
+        csv.flush();
+        return count;
+    }
+
+    private long writeNdjson(OutputStream output, String[] columns, Iterator<Object[]> rows) {
+        long count = 0;
+        // Không close generator để không đóng luôn response stream, chỉ flush
+        JsonGenerator generator = objectMapper.writer().withRootValueSeparator("\n").createGenerator(output);
+        while (rows.hasNext()) {
+            Object[] row = rows.next();
+            generator.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                generator.writeName(columns[i]);
+                generator.writePOJO(row[i]);
+            }
+            generator.writeEndObject();
+            if (++count % FLUSH_EVERY_ROWS == 0) {
+                generator.flush();
+            }
+        }
+        if (count > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        return count;
+    }
+}
@@ -0,0 +1,476 @@
+package havudong.baocao.service;
+
+import havudong.baocao.dto.FlashSaleResponse;
+import havudong.baocao.entity.Product;
+import havudong.baocao.exception.BadRequestException;
+import havudong.baocao.exception.OutOfStockException;
+import havudong.baocao.exception.ResourceNotFoundException;
+import havudong.baocao.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flash sale cho sản phẩm "hot": bộ đếm suất trong bộ nhớ + 1 writer ghi stock theo lô
+ *
+ * - Bắt đầu sale: nạp stock hiện tại vào 1 bộ đếm atomic cho sản phẩm
+ * - Checkout: trừ bộ đếm bằng CAS, hết suất => từ chối ngay, không chạm database
+ * - Checkout được nhận đưa yêu cầu vào hàng đợi và chờ; thread flash-sale-writer (writer duy nhất cho mọi SKU
+ *   flash sale trên node) gom các yêu cầu đang chờ, mỗi SKU 1 UPDATE có điều kiện stock >= tổng số lượng,
+ *   cả lô trong 1 transaction riêng => dòng "nóng" chỉ bị 1 thread khóa, 1 lần cho nhiều checkout
+ * - SKU không đủ stock cho cả lô (node khác đã bán) => ghi lại từng yêu cầu theo thứ tự đến
+ * - Checkout rollback hoặc chờ quá app.flash-sale.admit-timeout-ms => stock đã ghi được writer hoàn lại.
+ *   Node dừng giữa 2 bước này thì stock bị trừ dư (bán thiếu, không bao giờ bán quá)
+ * - Checkout giữ connection database trong lúc chờ: pool phải lớn hơn số checkout flash sale chờ cùng lúc,
+ *   thiếu connection thì checkout quá hạn bỏ cuộc và trả connection cho writer
+ *
+ * Nhiều node: mỗi node có bộ đếm và writer riêng, UPDATE có điều kiện trong database chặn bán quá.
+ * Mỗi app.flash-sale.sync-interval-ms bộ đếm được đồng bộ lại = stock trong database - số suất chờ ghi
+ * (stock sửa tay cũng được nhận ở lần đồng bộ kế tiếp)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FlashSaleService {
+
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+
+    @Value("${app.flash-sale.sync-interval-ms:1000}")
+    private long syncIntervalMs;
+
+    @Value("${app.flash-sale.admit-timeout-ms:2000}")
+    private long admitTimeoutMs;
+
+    @Value("${app.flash-sale.writer-batch-size:500}")
+    private int writerBatchSize;
+
+    private final Map<Long, Sale> sales = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<Claim> claims = new LinkedBlockingQueue<>();
+
+    private ScheduledExecutorService syncer;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    void startWorkers() {
+        syncer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("flash-sale-sync").daemon().factory());
+        syncer.scheduleWithFixedDelay(this::syncAll, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+        writer = Thread.ofPlatform().name("flash-sale-writer").daemon().start(this::runWriter);
+    }
+
+    /**
+     * Dừng writer sau khi ghi hết hàng đợi (kể cả các lần hoàn stock)
+     */
+    @PreDestroy
+    void stopWorkers() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        syncer.shutdown();
+        syncer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Bật flash sale: số suất = stock hiện tại trong database
+     */
+    public FlashSaleResponse start(Long productId) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new ResourceNotFoundException("Product", "id", productId));
+        if (!Boolean.TRUE.equals(product.getIsActive())) {
+            throw new BadRequestException(String.format("Sản phẩm '%s' đã ngừng bán", product.getName()));
+        }
+
+        Sale sale = new Sale(productId, product.getName(), product.getStock());
+        if (sales.putIfAbsent(productId, sale) != null) {
+            throw new BadRequestException(String.format("Sản phẩm '%s' đang flash sale", product.getName()));
+        }
+
+        log.info("Flash sale started for product: {}, stock: {}", productId, product.getStock());
+        return sale.toResponse();
+    }
+
+    /**
+     * Tắt flash sale: checkout quay về chỉ kiểm tra stock trong database
+     */
+    public FlashSaleResponse stop(Long productId) {
+        Sale sale = sales.remove(productId);
+        if (sale == null) {
+            throw new BadRequestException("Sản phẩm không trong flash sale");
+        }
+        sale.closed = true;
+
+        log.info("Flash sale stopped for product: {}, sold: {}, rejected: {}",
+                productId, sale.sold.get(), sale.rejected.get());
+        return sale.toResponse();
+    }
+
+    public boolean isActive(Long productId) {
+        return sales.containsKey(productId);
+    }
+
+    public List<FlashSaleResponse> getActiveSales() {
+        return sales.values().stream()
+                .sorted(Comparator.comparing((Sale sale) -> sale.startedAt))
+                .map(Sale::toResponse)
+                .toList();
+    }
+
+    /**
+     * Giữ suất cho các sản phẩm đang flash sale trong quantities (productId -> số lượng) và chờ writer trừ stock
+     *
+     * Phải gọi trong transaction checkout: commit => tính là đã bán, rollback => writer hoàn stock,
+     * suất trả lại bộ đếm và bộ đếm được đồng bộ lại theo database
+     *
+     * @return phần quantities thuộc flash sale (stock đã trừ, không cần ProductService.reserveStock)
+     */
+    public Map<Long, Integer> admit(Map<Long, Integer> quantities) {
+        Map<Sale, Integer> acquired = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Sale sale = sales.get(entry.getKey());
+            if (sale == null) {
+                continue;
+            }
+            if (!sale.tryAcquire(entry.getValue())) {
+                acquired.forEach(Sale::undo);
+                throw new OutOfStockException(String.format(
+                        "Sản phẩm '%s' đã hết suất flash sale. Yêu cầu: %d, Còn lại: %d",
+                        sale.productName, entry.getValue(), Math.max(sale.available.get(), 0)));
+            }
+            acquired.put(sale, entry.getValue());
+        }
+
+        if (acquired.isEmpty()) {
+            return Map.of();
+        }
+
+        // Đưa hết vào hàng đợi rồi mới chờ => các SKU của cùng 1 đơn được ghi chung 1 lô
+        List<Claim> taken = new ArrayList<>(acquired.size());
+        acquired.forEach((sale, quantity) -> taken.add(submit(sale, quantity, false)));
+        Claim failed = null;
+        for (Claim claim : taken) {
+            if (!await(claim) && failed == null) {
+                failed = claim;
+            }
+        }
+
+        if (failed != null) {
+            abort(taken, acquired);
+            if (failed.state.get() == Claim.CANCELLED) {
+                throw new BadRequestException("Flash sale đang quá tải, vui lòng thử lại");
+            }
+            throw new OutOfStockException(String.format(
+                    "Sản phẩm '%s' đã hết suất flash sale. Yêu cầu: %d", failed.sale.productName, failed.quantity));
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    acquired.forEach((sale, quantity) -> sale.sold.addAndGet(quantity));
+                } else {
+                    abort(taken, acquired);
+                }
+            }
+        });
+
+        Map<Long, Integer> admitted = new HashMap<>();
+        acquired.forEach((sale, quantity) -> admitted.put(sale.productId, quantity));
+        return admitted;
+    }
+
+    /**
+     * Hủy đơn: trả suất của sản phẩm đang flash sale lại bộ đếm sau khi commit
+     * (stock trong database được hoàn riêng bằng ProductService.releaseStock)
+     */
+    public void release(Map<Long, Integer> quantities) {
+        Map<Sale, Integer> released = new HashMap<>();
+        quantities.forEach((productId, quantity) -> {
+            Sale sale = sales.get(productId);
+            if (sale != null) {
+                released.put(sale, quantity);
+            }
+        });
+        if (released.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    released.forEach(Sale::release);
+                }
+            });
+        } else {
+            released.forEach(Sale::release);
+        }
+    }
+
+    /**
+     * Không giữ được suất (hoặc checkout rollback): hoàn stock đã trừ qua writer, trả suất lại bộ đếm
+     * và đồng bộ ngay (có thể node khác đã bán hết stock trong database)
+     */
+    private void abort(List<Claim> taken, Map<Sale, Integer> acquired) {
+        for (Claim claim : taken) {
+            if (claim.state.get() == Claim.TAKEN) {
+                submit(claim.sale, claim.quantity, true);
+            }
+        }
+        acquired.forEach(Sale::undo);
+        syncer.execute(() -> sync(List.copyOf(acquired.keySet())));
+    }
+
+    private Claim submit(Sale sale, int quantity, boolean giveBack) {
+        Claim claim = new Claim(sale, quantity, giveBack);
+        sale.pendingWrite.addAndGet(giveBack ? -quantity : quantity);
+        claims.add(claim);
+        return claim;
+    }
+
+    /**
+     * Chờ writer xử lý, quá hạn thì hủy (writer ghi xong sau đó sẽ tự hoàn stock)
+     */
+    private boolean await(Claim claim) {
+        try {
+            claim.done.await(admitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        claim.finish(Claim.CANCELLED);
+        return claim.state.get() == Claim.TAKEN;
+    }
+
+    private void runWriter() {
+        List<Claim> batch = new ArrayList<>();
+        while (running || !claims.isEmpty()) {
+            try {
+                Claim first = claims.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                claims.drainTo(batch, writerBatchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Flash sale writer failed on batch of {} claims", batch.size(), e);
+            } finally {
+                for (Claim claim : batch) {
+                    claim.finish(Claim.REJECTED);
+                    claim.sale.pendingWrite.addAndGet(claim.giveBack ? claim.quantity : -claim.quantity);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Ghi 1 lô: hoàn stock trước (suất trả lại dùng được ngay cho lô này), rồi mỗi SKU 1 UPDATE cho tổng số lượng
+     */
+    private void write(List<Claim> batch) {
+        Map<Long, Integer> giveBacks = new HashMap<>();
+        Map<Long, List<Claim>> bySku = new LinkedHashMap<>();
+        for (Claim claim : batch) {
+            if (claim.giveBack) {
+                giveBacks.merge(claim.sale.productId, claim.quantity, Integer::sum);
+            } else if (claim.state.get() == Claim.PENDING) {
+                bySku.computeIfAbsent(claim.sale.productId, productId -> new ArrayList<>()).add(claim);
+            }
+        }
+        restore(giveBacks);
+
+        Map<Long, Integer> totals = new HashMap<>();
+        bySku.forEach((productId, skuClaims) ->
+                totals.put(productId, skuClaims.stream().mapToInt(claim -> claim.quantity).sum()));
+        Set<Long> reserved = productService.tryReserveStock(totals);
+
+        // Checkout đã hủy trong lúc ghi => hoàn lại phần vừa trừ
+        Map<Long, Integer> cancelled = new HashMap<>();
+        bySku.forEach((productId, skuClaims) -> {
+            if (reserved.contains(productId)) {
+                skuClaims.forEach(claim -> settle(claim, true, cancelled));
+                return;
+            }
+            // Không đủ cho cả lô: ghi từng yêu cầu theo thứ tự đến
+            for (Claim claim : skuClaims) {
+                boolean ok = claim.state.get() == Claim.PENDING
+                        && productService.tryReserveStock(Map.of(productId, claim.quantity)).contains(productId);
+                settle(claim, ok, cancelled);
+            }
+        });
+        restore(cancelled);
+
+        if (log.isDebugEnabled() && !totals.isEmpty()) {
+            log.debug("Flash sale writer: {} claims, stock reserved for {}/{} products", batch.size(),
+                    reserved.size(), totals.size());
+        }
+    }
+
+    private static void settle(Claim claim, boolean reserved, Map<Long, Integer> cancelled) {
+        if (!reserved) {
+            if (claim.finish(Claim.REJECTED)) {
+                claim.sale.rejected.incrementAndGet();
+            }
+        } else if (!claim.finish(Claim.TAKEN)) {
+            cancelled.merge(claim.sale.productId, claim.quantity, Integer::sum);
+        }
+    }
+
+    private void restore(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        try {
+            productService.releaseStock(quantities);
+            productService.refreshStockStats(quantities.keySet());
+        } catch (RuntimeException e) {
+            log.error("Failed to restore flash sale stock: {}", quantities, e);
+        }
+    }
+
+    private void syncAll() {
+        if (!sales.isEmpty()) {
+            sync(List.copyOf(sales.values()));
+        }
+    }
+
+    /**
+     * Đồng bộ bộ đếm theo stock trong database (1 SELECT cho cả lô), chỉ chạy trên thread syncer
+     */
+    private void sync(List<Sale> batch) {
+        Map<Long, Sale> byProduct = new HashMap<>();
+        batch.forEach(sale -> byProduct.put(sale.productId, sale));
+        try {
+            for (Object[] row : productRepository.findStocks(byProduct.keySet())) {
+                Sale sale = byProduct.get((Long) row[0]);
+                int stock = (Integer) row[1];
+                int available = Math.max(stock - sale.pendingWrite.get(), 0);
+                int previous = sale.available.getAndSet(available);
+                if (previous != available) {
+                    log.debug("Flash sale counter of product {} synced: {} -> {}", sale.productId, previous, available);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to sync flash sale stock for products: {}", byProduct.keySet(), e);
+        }
+    }
+
+    /**
+     * 1 yêu cầu trừ (hoặc hoàn) stock gửi cho writer
+     */
+    private static final class Claim {
+
+        private static final int PENDING = 0;
+        private static final int TAKEN = 1;
+        private static final int REJECTED = 2;
+        private static final int CANCELLED = 3;
+
+        private final Sale sale;
+        private final int quantity;
+        private final boolean giveBack;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Claim(Sale sale, int quantity, boolean giveBack) {
+            this.sale = sale;
+            this.quantity = quantity;
+            this.giveBack = giveBack;
+        }
+
+        /**
+         * Chốt kết quả 1 lần duy nhất (writer và checkout đang chờ tranh nhau)
+         */
+        private boolean finish(int outcome) {
+            if (state.compareAndSet(PENDING, outcome)) {
+                done.countDown();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Sale {
+
+        private final Long productId;
+        private final String productName;
+        private final int initialStock;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicInteger available;
+        // Số suất writer chưa ghi xuống database (trừ đi phần hoàn stock đang chờ ghi)
+        private final AtomicInteger pendingWrite = new AtomicInteger();
+        private final AtomicLong sold = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private volatile boolean closed;
+
+        private Sale(Long productId, String productName, int initialStock) {
+            this.productId = productId;
+            this.productName = productName;
+            this.initialStock = initialStock;
+            this.available = new AtomicInteger(initialStock);
+        }
+
+        private boolean tryAcquire(int quantity) {
+            while (true) {
+                int current = available.get();
+                if (current < quantity) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                if (available.compareAndSet(current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+
+        private void undo(int quantity) {
+            available.addAndGet(quantity);
+        }
+
+        private void release(int quantity) {
+            available.addAndGet(quantity);
+        }
+
+        private FlashSaleResponse toResponse() {
+            return FlashSaleResponse.builder()
+                    .productId(productId)
+                    .productName(productName)
+                    .initialStock(initialStock)
+                    .available(available.get())
+                    .sold(sold.get())
+                    .pendingWrite(pendingWrite.get())
+                    .rejected(rejected.get())
+                    .active(!closed)
+                    .startedAt(startedAt)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package havudong.baocao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import havudong.baocao.entity.IdempotencyRecord;
+import havudong.baocao.repository.IdempotencyRecordRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lưu kết quả request theo Idempotency-Key để client retry không chạy lại checkout / thanh toán
+ *
+ * - Kết quả đã xong: cache Caffeine (giới hạn số lượng + TTL) trước, bảng idempotency_records sau
+ * - Request trùng đang chạy trên cùng node: chờ CompletableFuture của request đầu tiên
+ * - Request trùng đang chạy trên node khác: bản ghi statusCode = null (unique key) => chờ bằng cách đọc lại bảng
+ * - Request lỗi 5xx không được lưu: xóa bản ghi đang xử lý để client retry thật
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private static final long DB_POLL_INTERVAL_MS = 100;
+
+    private static final String CLEANUP_JOB = "idempotency-cleanup";
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${app.idempotency.retention-hours:24}")
+    private long retentionHours;
+
+    @Value("${app.idempotency.cache-max-size:10000}")
+    private long cacheMaxSize;
+
+    // Thời gian tối đa request trùng chờ request đầu tiên
+    @Value("${app.idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    // Bản ghi đang xử lý lâu hơn mức này coi như node đã chết giữa chừng
+    @Value("${app.idempotency.stale-after-seconds:120}")
+    private long staleAfterSeconds;
+
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private Cache<String, StoredResponse> completed;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        completed = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofHours(retentionHours))
+                .build();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        jobLeaseService.register(CLEANUP_JOB);
+    }
+
+    /**
+     * Giành quyền xử lý key, hoặc trả về kết quả đã lưu (chờ nếu request trùng đang chạy)
+     * Kết quả EXECUTE => bắt buộc gọi complete() hoặc abandon() sau khi xử lý
+     */
+    public Acquisition acquire(String key, String fingerprint) {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        while (true) {
+            StoredResponse done = completed.getIfPresent(key);
+            if (done != null) {
+                return Acquisition.of(done, fingerprint);
+            }
+
+            CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(key, mine);
+            if (running != null) {
+                // Kết quả null => request đầu tiên bỏ cuộc, vòng lặp sau thử giành quyền
+                if (!await(running, deadline)) {
+                    return Acquisition.IN_PROGRESS;
+                }
+                continue;
+            }
+
+            IdempotencyRecord existing;
+            try {
+                existing = claim(key, fingerprint);
+                if (existing == null) {
+                    return Acquisition.EXECUTE;
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Node khác vừa insert cùng key
+                existing = null;
+            } catch (RuntimeException e) {
+                release(key, mine, null);
+                throw e;
+            }
+
+            if (existing == null || existing.getStatusCode() == null) {
+                // Node khác đang xử lý
+                release(key, mine, null);
+                if (System.currentTimeMillis() >= deadline) {
+                    return Acquisition.IN_PROGRESS;
+                }
+                sleep();
+                continue;
+            }
+
+            StoredResponse stored = StoredResponse.of(existing);
+            completed.put(key, stored);
+            release(key, mine, stored);
+            return Acquisition.of(stored, fingerprint);
+        }
+    }
+
+    /**
+     * Lưu kết quả cho key đang xử lý, các request trùng đang chờ nhận luôn kết quả này
+     */
+    public void complete(String key, StoredResponse response) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                IdempotencyRecord record = idempotencyRecordRepository.findByIdempotencyKey(key)
+                        .orElseGet(IdempotencyRecord::new);
+                record.setIdempotencyKey(key);
+                record.setFingerprint(response.getFingerprint());
+                record.setStatusCode(response.getStatusCode());
+                record.setContentType(response.getContentType());
+                record.setResponseBody(response.getBody());
+                record.setExpiresAt(LocalDateTime.now().plusHours(retentionHours));
+                idempotencyRecordRepository.save(record);
+            });
+        } catch (RuntimeException e) {
+            // Vẫn giữ trong cache của node này, chỉ mất khả năng replay từ node khác
+            log.error("Failed to persist idempotency record: {}", key, e);
+        }
+        completed.put(key, response);
+        release(key, inFlight.get(key), response);
+    }
+
+    /**
+     * Request lỗi (5xx/exception): không lưu kết quả, cho phép retry chạy lại
+     */
+    public void abandon(String key) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> idempotencyRecordRepository.deletePending(key));
+        } catch (RuntimeException e) {
+            log.error("Failed to release idempotency key: {}", key, e);
+        }
+        release(key, inFlight.get(key), null);
+    }
+
+    /**
+     * Dọn các bản ghi hết hạn (1 node trong cluster)
+     */
+    @Scheduled(cron = "${app.idempotency.cleanup-cron:0 30 * * * *}")
+    public void deleteExpired() {
+        if (!jobLeaseService.holds(CLEANUP_JOB)) {
+            return;
+        }
+        Integer deleted = transactionTemplate.execute(status ->
+                idempotencyRecordRepository.deleteExpired(LocalDateTime.now()));
+        log.info("Deleted {} expired idempotency records", deleted);
+    }
+
+    /**
+     * Insert bản ghi đang xử lý; trả về bản ghi đã tồn tại nếu có (null = giành được key)
+     */
+    private IdempotencyRecord claim(String key, String fingerprint) {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            idempotencyRecordRepository.deleteStalePending(key, now.minusSeconds(staleAfterSeconds));
+
+            Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findByIdempotencyKey(key);
+            if (existing.isPresent() && existing.get().getExpiresAt().isAfter(now)) {
+                return existing.get();
+            }
+            existing.ifPresent(record -> {
+                idempotencyRecordRepository.delete(record);
+                idempotencyRecordRepository.flush();
+            });
+
+            IdempotencyRecord record = new IdempotencyRecord();
+            record.setIdempotencyKey(key);
+            record.setFingerprint(fingerprint);
+            record.setExpiresAt(now.plusHours(retentionHours));
+            idempotencyRecordRepository.saveAndFlush(record);
+            return null;
+        });
+    }
+
+    private boolean await(CompletableFuture<StoredResponse> running, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            running.get(remaining, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void release(String key, CompletableFuture<StoredResponse> future, StoredResponse response) {
+        if (future != null) {
+            inFlight.remove(key, future);
+            future.complete(response);
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(DB_POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Response đã lưu (body là JSON UTF-8)
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class StoredResponse {
+        private final String fingerprint;
+        private final int statusCode;
+        private final String contentType;
+        private final String body;
+
+        static StoredResponse of(IdempotencyRecord record) {
+            return new StoredResponse(record.getFingerprint(), record.getStatusCode(),
+                    record.getContentType(), record.getResponseBody());
+        }
+    }
+
+    /**
+     * Kết quả acquire: EXECUTE (tự xử lý), REPLAY (trả response đã lưu),
+     * MISMATCH (key đã dùng cho request khác), IN_PROGRESS (chờ quá lâu)
+     */
+    @Getter
+    public static final class Acquisition {
+
+        public enum Kind { EXECUTE, REPLAY, MISMATCH, IN_PROGRESS }
+
+        static final Acquisition EXECUTE = new Acquisition(Kind.EXECUTE, null);
+        static final Acquisition IN_PROGRESS = new Acquisition(Kind.IN_PROGRESS, null);
+
+        private final Kind kind;
+        private final StoredResponse response;
+
+        private Acquisition(Kind kind, StoredResponse response) {
+            this.kind = kind;
+            this.response = response;
+        }
+
+        static Acquisition of(StoredResponse stored, String fingerprint) {
+            return stored.getFingerprint().equals(fingerprint)
+                    ? new Acquisition(Kind.REPLAY, stored)
+                    : new Acquisition(Kind.MISMATCH, null);
+        }
+    }
+}
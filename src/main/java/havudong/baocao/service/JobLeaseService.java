@@ -0,0 +1,158 @@
+package havudong.baocao.service;
+
+import havudong.baocao.repository.JobLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chỉ 1 node trong cluster chạy mỗi scheduled job (QR payment, cập nhật preference, dọn dữ liệu...)
+ *
+ * - Mỗi job 1 dòng job_leases (owner, lease_until), giành/gia hạn bằng 1 UPDATE có điều kiện
+ * - 1 thread heartbeat mỗi app.scheduler.lease.heartbeat-ms xử lý mọi job (1 UPDATE + 1 SELECT)
+ * - Job hỏi holds(name) trước khi chạy: chỉ đọc bộ nhớ, node không giữ lease không chạm database
+ * - Node chết => lease hết hạn sau app.scheduler.lease.ttl-seconds, node khác nhận ở heartbeat kế tiếp
+ * - Lease trong bộ nhớ hết hạn sớm hơn trong database (tính từ lúc bắt đầu heartbeat)
+ *   => mất kết nối database thì node tự thôi chạy trước khi node khác giành được
+ *
+ * Dùng đồng hồ của app server (các node cần đồng bộ NTP); job vẫn phải dùng UPDATE có điều kiện
+ * để an toàn trong khoảng chồng lấn ngắn nếu đồng hồ lệch
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JobLeaseService {
+
+    private final JobLeaseRepository jobLeaseRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.scheduler.lease.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.scheduler.lease.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${app.scheduler.lease.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    // Job đã đăng ký -> hạn lease trong bộ nhớ (System.nanoTime), 0 = không giữ
+    private final Map<String, Long> leases = new ConcurrentHashMap<>();
+
+    private final String owner = nodeName();
+
+    private TransactionTemplate transactionTemplate;
+
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("job-lease-heartbeat").daemon().factory());
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        log.info("Job lease owner: {}", owner);
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        if (!enabled || leases.isEmpty()) {
+            return;
+        }
+        leases.replaceAll((name, until) -> 0L);
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobLeaseRepository.releaseAll(owner));
+        } catch (RuntimeException e) {
+            log.warn("Failed to release job leases: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Đăng ký job (gọi khi khởi tạo bean job) và thử giành lease ngay
+     */
+    public void register(String name) {
+        if (leases.putIfAbsent(name, 0L) != null || !enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO job_leases (name) VALUES (?)", name);
+        } catch (DuplicateKeyException e) {
+            // Node khác đã tạo dòng của job
+        }
+        renew(List.of(name));
+    }
+
+    /**
+     * Node này đang giữ lease của job => được chạy (không truy cập database)
+     */
+    public boolean holds(String name) {
+        if (!enabled) {
+            return true;
+        }
+        Long until = leases.get(name);
+        return until != null && until != 0L && until - System.nanoTime() > 0;
+    }
+
+    private void heartbeat() {
+        if (!enabled || leases.isEmpty()) {
+            return;
+        }
+        try {
+            renew(List.copyOf(leases.keySet()));
+        } catch (RuntimeException e) {
+            log.error("Job lease heartbeat failed", e);
+        }
+    }
+
+    private void renew(List<String> names) {
+        long startedAt = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime leaseUntil = now.plusSeconds(ttlSeconds);
+        List<String> held = transactionTemplate.execute(status -> {
+            jobLeaseRepository.acquireOrRenew(names, owner, now, leaseUntil);
+            return jobLeaseRepository.findHeld(names, owner, leaseUntil);
+        });
+
+        Set<String> heldNames = Set.copyOf(held);
+        long localUntil = startedAt + TimeUnit.SECONDS.toNanos(ttlSeconds);
+        for (String name : names) {
+            boolean holding = heldNames.contains(name);
+            Long previous = leases.put(name, holding ? localUntil : 0L);
+            boolean wasHolding = previous != null && previous != 0L && previous - startedAt > 0;
+            if (holding != wasHolding) {
+                log.info("Job lease {} {} by {}", name, holding ? "acquired" : "lost", owner);
+            }
+        }
+    }
+
+    private static String nodeName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        // Hậu tố ngẫu nhiên: node khởi động lại / 2 context cùng JVM không bị coi là owner cũ
+        return host + ":" + ProcessHandle.current().pid() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -1,32 +1,50 @@
 package havudong.baocao.service;
 
+import havudong.baocao.dto.OrderBulkStatusResponse;
 import havudong.baocao.entity.Order;
 import havudong.baocao.entity.OrderItem;
 import havudong.baocao.entity.User;
+import havudong.baocao.entity.enums.OutboxEventType;
 import havudong.baocao.entity.enums.PaymentStatus;
 import havudong.baocao.entity.enums.ShippingStatus;
+import havudong.baocao.event.OrderEvent;
 import havudong.baocao.exception.BadRequestException;
 import havudong.baocao.exception.ResourceNotFoundException;
 import havudong.baocao.repository.OrderRepository;
+import havudong.baocao.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class OrderService {
     
+    // Index (seller_id, created_at, id) cho keyset pagination
+    private static final Set<String> SCROLL_SORT_FIELDS = Set.of("createdAt");
+    
     private final OrderRepository orderRepository;
     private final ProductService productService;
+    private final FlashSaleService flashSaleService;
+    private final OutboxService outboxService;
     
     @Transactional
     public Order createOrder(Order order) {
@@ -82,6 +100,14 @@ public class OrderService {
         return orderRepository.findBySeller(seller, pageable);
     }
     
+    /**
+     * Keyset pagination cho đơn hàng của seller (mới nhất trước)
+     */
+    public Window<Order> scrollSellerOrders(User seller, String cursor, int size) {
+        Sort sort = CursorCodec.keysetSort("createdAt", Sort.Direction.DESC, SCROLL_SORT_FIELDS);
+        return orderRepository.findBySeller(seller, CursorCodec.decode(cursor, sort), sort, CursorCodec.limit(size));
+    }
+    
     // Tính doanh thu của seller
     public BigDecimal calculateSellerRevenue(User seller) {
         BigDecimal revenue = orderRepository.calculateSellerRevenue(seller);
@@ -98,29 +124,56 @@ public class OrderService {
         return orderRepository.calculateRevenue(startDate, endDate);
     }
     
-    // Cập nhật trạng thái thanh toán
+    // Cập nhật trạng thái thanh toán (expectedVersion: version client đang xem, null = bỏ qua)
     @Transactional
-    public Order updatePaymentStatus(Long id, PaymentStatus paymentStatus) {
+    public Order updatePaymentStatus(Long id, PaymentStatus paymentStatus, Long expectedVersion) {
         Order order = orderRepository.findById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Order", "id", id));
+        checkVersion(order, expectedVersion);
+        
+        PaymentStatus previous = order.getPaymentStatus();
+        if (previous == paymentStatus) {
+            return order;
+        }
+        if (!previous.canTransitionTo(paymentStatus)) {
+            throw new BadRequestException(String.format(
+                    "Không thể chuyển trạng thái thanh toán từ %s sang %s", previous, paymentStatus));
+        }
         
-        log.info("Updating payment status for order: {} from {} to {}", 
-                id, order.getPaymentStatus(), paymentStatus);
+        log.info("Updating payment status for order: {} from {} to {}", id, previous, paymentStatus);
         
         order.setPaymentStatus(paymentStatus);
+        if (paymentStatus == PaymentStatus.PAID && previous != PaymentStatus.PAID) {
+            outboxService.publish(OrderEvent.of(OutboxEventType.PAYMENT_CONFIRMED, order));
+        }
         return orderRepository.save(order);
     }
     
-    // Cập nhật trạng thái vận chuyển
+    // Cập nhật trạng thái vận chuyển (expectedVersion: version client đang xem, null = bỏ qua)
     @Transactional
-    public Order updateShippingStatus(Long id, ShippingStatus shippingStatus) {
+    public Order updateShippingStatus(Long id, ShippingStatus shippingStatus, Long expectedVersion) {
         Order order = orderRepository.findById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Order", "id", id));
+        checkVersion(order, expectedVersion);
+        
+        ShippingStatus previous = order.getShippingStatus();
+        if (previous == shippingStatus) {
+            return order;
+        }
+        if (!previous.canTransitionTo(shippingStatus)) {
+            throw new BadRequestException(String.format(
+                    "Không thể chuyển trạng thái vận chuyển từ %s sang %s", previous, shippingStatus));
+        }
+        // Hủy phải hoàn stock/voucher như khách tự hủy
+        if (shippingStatus == ShippingStatus.CANCELLED) {
+            cancelOrder(id);
+            return order;
+        }
         
-        log.info("Updating shipping status for order: {} from {} to {}", 
-                id, order.getShippingStatus(), shippingStatus);
+        log.info("Updating shipping status for order: {} from {} to {}", id, previous, shippingStatus);
         
         order.setShippingStatus(shippingStatus);
+        outboxService.publish(OrderEvent.of(OutboxEventType.SHIPPING_STATUS_CHANGED, order));
         return orderRepository.save(order);
     }
     
@@ -133,18 +186,20 @@ public class OrderService {
             .orElseThrow(() -> new ResourceNotFoundException("Order", "id", id));
         
         // Chỉ có thể hủy nếu chưa vận chuyển
-        if (order.getShippingStatus() != ShippingStatus.PENDING && 
-            order.getShippingStatus() != ShippingStatus.PROCESSING) {
+        if (!order.getShippingStatus().canTransitionTo(ShippingStatus.CANCELLED)) {
             throw new BadRequestException(
                     "Không thể hủy đơn hàng đã được vận chuyển. Trạng thái hiện tại: " + order.getShippingStatus());
         }
         
         log.info("Cancelling order: {}, restoring stock for {} items", id, order.getOrderItems().size());
         
-        // Hoàn stock cho tất cả sản phẩm trong đơn hàng
+        // Hoàn stock cho tất cả sản phẩm trong đơn hàng (1 batch UPDATE)
+        Map<Long, Integer> quantities = new HashMap<>();
         for (OrderItem item : order.getOrderItems()) {
-            productService.restoreStock(item.getProduct().getId(), item.getQuantity());
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
         }
+        productService.releaseStock(quantities);
+        flashSaleService.release(quantities);
         
         order.setShippingStatus(ShippingStatus.CANCELLED);
         
@@ -157,9 +212,81 @@ public class OrderService {
         }
         
         orderRepository.save(order);
+        outboxService.publish(OrderEvent.of(OutboxEventType.ORDER_CANCELLED, order));
         log.info("Order {} cancelled successfully", id);
     }
     
+    /**
+     * Seller chuyển trạng thái vận chuyển cho nhiều đơn cùng lúc (vd: PROCESSING -> SHIPPED)
+     *
+     * - 1 SELECT lấy trạng thái hiện tại, 1 UPDATE có điều kiện (trạng thái nguồn hợp lệ) cho cả lô
+     * - Đơn không tồn tại / không thuộc seller / không chuyển được / vừa bị người khác đổi => bỏ qua kèm lý do
+     * - Không hỗ trợ hủy hàng loạt (cần hoàn stock từng đơn)
+     */
+    @Transactional
+    public OrderBulkStatusResponse bulkUpdateShippingStatus(User seller, List<Long> orderIds, ShippingStatus target) {
+        if (target == ShippingStatus.PENDING || target == ShippingStatus.CANCELLED) {
+            throw new BadRequestException("Không hỗ trợ chuyển hàng loạt sang trạng thái " + target);
+        }
+        
+        Set<Long> ids = new LinkedHashSet<>(orderIds);
+        Map<Long, ShippingStatus> current = new HashMap<>();
+        for (Object[] row : orderRepository.findShippingStatuses(ids, seller)) {
+            current.put((Long) row[0], (ShippingStatus) row[1]);
+        }
+        
+        List<OrderBulkStatusResponse.Skipped> skipped = new ArrayList<>();
+        List<Long> candidates = new ArrayList<>();
+        for (Long id : ids) {
+            ShippingStatus status = current.get(id);
+            if (status == null) {
+                skipped.add(new OrderBulkStatusResponse.Skipped(id, "Không tìm thấy đơn hàng của shop"));
+            } else if (!status.canTransitionTo(target)) {
+                skipped.add(new OrderBulkStatusResponse.Skipped(id, String.format(
+                        "Không thể chuyển từ %s sang %s", status, target)));
+            } else {
+                candidates.add(id);
+            }
+        }
+        
+        List<Long> updated = List.of();
+        if (!candidates.isEmpty()) {
+            // Mốc thời gian làm dấu để biết đơn nào do chính UPDATE này đổi (cắt về micro giây như cột DATETIME(6))
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+            int count = orderRepository.updateShippingStatuses(
+                    candidates, seller, ShippingStatus.sourcesOf(target), target, now);
+            updated = count == candidates.size()
+                    ? candidates
+                    : orderRepository.findIdsByShippingStatusAndUpdatedAt(candidates, target, now);
+            
+            if (updated.size() < candidates.size()) {
+                Set<Long> updatedIds = Set.copyOf(updated);
+                candidates.stream()
+                        .filter(id -> !updatedIds.contains(id))
+                        .forEach(id -> skipped.add(new OrderBulkStatusResponse.Skipped(
+                                id, "Đơn hàng vừa được cập nhật bởi người khác")));
+                updated = candidates.stream().filter(updatedIds::contains).toList();
+            }
+            
+            for (Order order : orderRepository.findAllWithItemsByIdIn(updated)) {
+                outboxService.publish(OrderEvent.of(OutboxEventType.SHIPPING_STATUS_CHANGED, order));
+            }
+        }
+        
+        log.info("Seller {} moved {}/{} orders to {}", seller.getId(), updated.size(), ids.size(), target);
+        return OrderBulkStatusResponse.builder()
+                .shippingStatus(target)
+                .updated(updated)
+                .skipped(skipped)
+                .build();
+    }
+    
+    private void checkVersion(Order order, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(order.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Order.class, order.getId());
+        }
+    }
+    
     /**
      * Tính doanh thu platform (tổng phí hoa hồng)
      */
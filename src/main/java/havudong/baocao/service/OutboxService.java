@@ -0,0 +1,55 @@
+package havudong.baocao.service;
+
+import havudong.baocao.entity.OutboxEvent;
+import havudong.baocao.event.OrderEvent;
+import havudong.baocao.repository.OutboxEventRepository;
+import havudong.baocao.scheduler.OutboxDispatcher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ghi sự kiện domain vào outbox trong cùng transaction với thay đổi nghiệp vụ
+ *
+ * - Transaction rollback => sự kiện biến mất cùng dữ liệu, commit => chắc chắn được giao (không mất khi app dừng)
+ * - Các việc phụ (cập nhật cache/leaderboard sản phẩm, lưu hành vi mua hàng, thông báo) chạy trong listener
+ *   của OutboxDispatcher sau khi commit, không kéo dài transaction checkout
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxDispatcher outboxDispatcher;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(OrderEvent event) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setEventType(event.getType());
+        outboxEvent.setAggregateId(event.getOrderId());
+        outboxEvent.setPayload(objectMapper.writeValueAsString(event));
+        outboxEvent.setAvailableAt(now);
+        outboxEvent.setCreatedAt(now);
+        outboxEventRepository.save(outboxEvent);
+
+        log.debug("Outbox event queued: {} for order {}", event.getType(), event.getOrderId());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    outboxDispatcher.wakeUp();
+                }
+            });
+        }
+    }
+}
@@ -1,16 +1,19 @@
 package havudong.baocao.service;
 
 import havudong.baocao.entity.Order;
+import havudong.baocao.entity.enums.OutboxEventType;
 import havudong.baocao.entity.enums.PaymentMethod;
 import havudong.baocao.entity.enums.PaymentStatus;
+import havudong.baocao.event.OrderEvent;
+import havudong.baocao.exception.ResourceNotFoundException;
 import havudong.baocao.repository.OrderRepository;
+import havudong.baocao.scheduler.QrPaymentScheduler;
+import havudong.baocao.util.VietQrPayload;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,10 +28,11 @@ import java.util.Optional;
  *    - Customer chọn thanh toán QR → Backend sinh mã QR VietQR
  *    - QR chứa: STK ngân hàng, số tiền, nội dung chuyển khoản
  *    - Customer quét mã QR bằng app ngân hàng → Chuyển khoản
- *    - System tự động xác nhận sau 30-60 giây (mock cho demo)
+ *    - Ngân hàng gọi webhook => xác nhận (profile local: mock tự xác nhận sau 30-60 giây)
  * 
  * 2. VietQR Format:
- *    - Sử dụng VietQR API (https://vietqr.io)
+ *    - Payload chuẩn EMVCo/NAPAS tạo ngay trong ứng dụng (VietQrPayload), ảnh PNG render + cache bởi QrImageService
+ *      => không phụ thuộc img.vietqr.io, ảnh phục vụ từ GET /api/payments/qr/{orderId}/image
  *    - Tích hợp với hầu hết ngân hàng Việt Nam
  *    - QR có thể scan bằng app ngân hàng hoặc ví điện tử
  * 
@@ -39,7 +43,7 @@ import java.util.Optional;
  * 
  * 4. Mock Auto-Confirm:
  *    - Trong thực tế: sử dụng webhook từ ngân hàng
- *    - Demo: scheduler tự động confirm sau 30-60s
+ *    - Demo (profile local): scheduler tự động confirm sau 30-60s
  */
 @Service
 @RequiredArgsConstructor
@@ -47,15 +51,19 @@ import java.util.Optional;
 public class PaymentService {
 
     private final OrderRepository orderRepository;
+    private final OutboxService outboxService;
+    private final QrPaymentScheduler qrPaymentScheduler;
+    private final QrImageService qrImageService;
 
     // ============ THÔNG TIN NGÂN HÀNG ============
     // MB Bank - Military Commercial Joint Stock Bank
     private static final String BANK_ID = "MB";  // Mã ngân hàng MB Bank
+    private static final String BANK_BIN = "970422";  // Mã BIN MB Bank (NAPAS)
     private static final String BANK_ACCOUNT = "037189928";  // Số tài khoản
     private static final String ACCOUNT_NAME = "SHOP ECOMMERCE";  // Tên tài khoản
     
     // QR hết hạn sau 5 phút
-    private static final int QR_EXPIRY_MINUTES = 5;
+    private static final int QR_EXPIRY_MINUTES = QrPaymentScheduler.QR_EXPIRY_MINUTES;
     
     /**
      * Tạo mã QR thanh toán cho đơn hàng
@@ -85,8 +93,11 @@ public class PaymentService {
         // Tính thời gian hết hạn
         LocalDateTime expiredAt = LocalDateTime.now().plusMinutes(QR_EXPIRY_MINUTES);
         
-        // Tạo URL QR VietQR
-        String qrUrl = generateVietQrUrl(order.getFinalAmount().longValue(), transactionId);
+        // Tạo payload VietQR + render sẵn ảnh vào cache
+        long amount = order.getFinalAmount().longValue();
+        String qrPayload = VietQrPayload.build(BANK_BIN, BANK_ACCOUNT, amount, transactionId);
+        qrImageService.render(amount, transactionId, qrPayload);
+        String qrUrl = generateVietQrUrl(orderId, amount, transactionId);
         
         // Cập nhật order
         order.setPaymentMethod(PaymentMethod.QR_TRANSFER);
@@ -94,12 +105,14 @@ public class PaymentService {
         order.setQrExpiredAt(expiredAt);
         order.setPaymentTransactionId(transactionId);
         orderRepository.save(order);
+        qrPaymentScheduler.schedule(orderId, expiredAt);
         
         log.info("QR generated successfully - Order: {}, TransactionId: {}", orderId, transactionId);
         
         Map<String, Object> result = new HashMap<>();
         result.put("orderId", orderId);
         result.put("qrCodeUrl", qrUrl);
+        result.put("qrPayload", qrPayload);
         result.put("transactionId", transactionId);
         result.put("expiredAt", expiredAt.toString());
         result.put("expiryMinutes", QR_EXPIRY_MINUTES);
@@ -171,11 +184,15 @@ public class PaymentService {
         if (order.getPaymentStatus() == PaymentStatus.PAID) {
             throw new RuntimeException("Đơn hàng đã được thanh toán trước đó");
         }
+        if (!order.getPaymentStatus().canTransitionTo(PaymentStatus.PAID)) {
+            throw new RuntimeException("Đơn hàng ở trạng thái " + order.getPaymentStatus() + ", không thể xác nhận thanh toán");
+        }
         
         // Cập nhật trạng thái
         order.setPaymentStatus(PaymentStatus.PAID);
         order.setPaidAt(LocalDateTime.now());
         orderRepository.save(order);
+        outboxService.publish(OrderEvent.of(OutboxEventType.PAYMENT_CONFIRMED, order));
         
         log.info("Payment confirmed successfully - Order: {}", orderId);
         
@@ -208,6 +225,7 @@ public class PaymentService {
         order.setPaymentTransactionId(null);
         order.setPaymentStatus(PaymentStatus.PENDING);
         orderRepository.save(order);
+        qrPaymentScheduler.cancel(orderId);
         
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -223,15 +241,10 @@ public class PaymentService {
     public Optional<Order> findOrderPendingAutoConfirm() {
         // Tìm đơn hàng QR_TRANSFER, PENDING, đã tạo QR từ 30-60 giây
         // Mock: auto confirm sau 30 giây
-        LocalDateTime thirtySecondsAgo = LocalDateTime.now().minusSeconds(30);
-        
-        return orderRepository.findAll().stream()
-                .filter(o -> o.getPaymentMethod() == PaymentMethod.QR_TRANSFER)
-                .filter(o -> o.getPaymentStatus() == PaymentStatus.PENDING)
-                .filter(o -> o.getQrExpiredAt() != null)
-                .filter(o -> o.getQrExpiredAt().isAfter(LocalDateTime.now())) // Chưa hết hạn
-                .filter(o -> o.getCreatedAt() != null && o.getCreatedAt().isBefore(thirtySecondsAgo))
-                .findFirst();
+        // Dùng index (payment_method, payment_status, qr_expired_at), không load cả bảng
+        LocalDateTime now = LocalDateTime.now();
+        return orderRepository.findFirstByPaymentMethodAndPaymentStatusAndQrExpiredAtAfterAndCreatedAtBefore(
+                PaymentMethod.QR_TRANSFER, PaymentStatus.PENDING, now, now.minusSeconds(30));
     }
     
     // ============ PRIVATE METHODS ============
@@ -245,35 +258,33 @@ public class PaymentService {
     }
     
     /**
-     * Tạo URL mã QR VietQR
+     * Ảnh PNG mã QR của đơn hàng
      * 
-     * VietQR API: https://img.vietqr.io/image/{BANK_ID}-{ACCOUNT}-{TEMPLATE}.png
-     * Parameters:
-     * - amount: Số tiền
-     * - addInfo: Nội dung chuyển khoản
-     * - accountName: Tên tài khoản
+     * Thường đã có trong cache (render lúc tạo QR); cache miss (node khác tạo QR, cache bị xóa)
+     * => đối chiếu mã giao dịch + số tiền với đơn hàng rồi render lại
      */
-    private String generateVietQrUrl(long amount, String transactionId) {
-        try {
-            String template = "compact2";  // Template QR (compact, compact2, qr_only, print)
-            String encodedAddInfo = URLEncoder.encode(transactionId, StandardCharsets.UTF_8.toString());
-            String encodedAccountName = URLEncoder.encode(ACCOUNT_NAME, StandardCharsets.UTF_8.toString());
-            
-            // VietQR URL format
-            String url = String.format(
-                "https://img.vietqr.io/image/%s-%s-%s.png?amount=%d&addInfo=%s&accountName=%s",
-                BANK_ID,
-                BANK_ACCOUNT,
-                template,
-                amount,
-                encodedAddInfo,
-                encodedAccountName
-            );
-            
-            return url;
-        } catch (Exception e) {
-            log.error("Error generating VietQR URL", e);
-            throw new RuntimeException("Lỗi tạo mã QR");
+    public byte[] getQrImage(Long orderId, String transactionId, long amount) {
+        byte[] cached = qrImageService.getCached(amount, transactionId);
+        if (cached != null) {
+            return cached;
+        }
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order", "id", orderId));
+        if (!transactionId.equals(order.getPaymentTransactionId())
+                || order.getFinalAmount() == null || order.getFinalAmount().longValue() != amount) {
+            throw new ResourceNotFoundException("QR", "transactionId", transactionId);
         }
+        String qrPayload = VietQrPayload.build(BANK_BIN, BANK_ACCOUNT, amount, transactionId);
+        return qrImageService.render(amount, transactionId, qrPayload);
+    }
+    
+    /**
+     * URL ảnh QR phục vụ từ chính ứng dụng
+     * 
+     * Mã giao dịch + số tiền nằm trong URL => mỗi QR 1 URL riêng, không đổi nội dung
+     * nên client/CDN cache lâu dài được (tạo QR mới => mã giao dịch mới => URL mới)
+     */
+    private String generateVietQrUrl(Long orderId, long amount, String transactionId) {
+        return "/api/payments/qr/" + orderId + "/image?tx=" + transactionId + "&amount=" + amount;
     }
 }
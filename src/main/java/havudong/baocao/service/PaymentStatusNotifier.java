@@ -0,0 +1,345 @@
+package havudong.baocao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import havudong.baocao.entity.enums.PaymentStatus;
+import havudong.baocao.event.OrderEvent;
+import havudong.baocao.exception.ResourceNotFoundException;
+import havudong.baocao.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đẩy trạng thái thanh toán QR cho client đang mở màn hình QR (SSE hoặc long-poll) thay vì polling
+ *
+ * - Client chờ được giữ bằng async servlet (SseEmitter / DeferredResult), không chiếm thread
+ * - Chỉ đọc database khi đăng ký (1 SELECT vài cột) và khi đơn đang có người chờ thay đổi trạng thái
+ * - Thanh toán xác nhận / đơn bị hủy: nhận OrderEvent (outbox) => đẩy ngay
+ * - QR hết hạn: 1 timer cho mỗi đơn đang có người chờ, đẩy đúng lúc hết hạn
+ * - Nhiều node: OrderEvent chỉ được giao ở node claim được sự kiện => mỗi app.payment.status.recheck-interval-ms
+ *   mỗi node kiểm tra lại mọi đơn đang có người chờ bằng 1 SELECT theo lô (chỉ trả về đơn đã rời PENDING)
+ * - SSE đóng sau app.payment.status.sse-timeout-ms, EventSource tự kết nối lại và nhận trạng thái hiện tại
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentStatusNotifier {
+
+    private static final String EVENT_NAME = "payment-status";
+
+    private static final int RECHECK_BATCH = 500;
+
+    private final OrderRepository orderRepository;
+
+    @Value("${app.payment.status.sse-timeout-ms:60000}")
+    private long sseTimeoutMs;
+
+    @Value("${app.payment.status.long-poll-timeout-ms:25000}")
+    private long longPollTimeoutMs;
+
+    @Value("${app.payment.status.recheck-interval-ms:2000}")
+    private long recheckIntervalMs;
+
+    // orderId -> các client đang chờ
+    private final Map<Long, Watch> watches = new ConcurrentHashMap<>();
+
+    // Đơn vừa có trạng thái cuối: tránh lỡ sự kiện xảy ra giữa lúc đọc trạng thái và lúc đăng ký chờ
+    private final Cache<Long, Boolean> recentlyFinished = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .maximumSize(100_000)
+            .build();
+
+    private ScheduledThreadPoolExecutor timer;
+
+    @PostConstruct
+    void init() {
+        timer = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("payment-status-timer").daemon().factory());
+        timer.setRemoveOnCancelPolicy(true);
+        timer.scheduleWithFixedDelay(this::recheck, recheckIntervalMs, recheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+        watches.values().forEach(watch -> watch.waiters.forEach(Waiter::close));
+        watches.clear();
+    }
+
+    /**
+     * SSE: gửi trạng thái hiện tại ngay, sau đó đẩy khi thanh toán xong / QR hết hạn rồi đóng kết nối
+     */
+    public SseEmitter subscribe(Long orderId) {
+        Map<String, Object> snapshot = snapshot(orderId);
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(snapshot));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        if (isFinal(snapshot)) {
+            emitter.complete();
+            return emitter;
+        }
+
+        SseWaiter waiter = new SseWaiter(emitter);
+        emitter.onCompletion(() -> remove(orderId, waiter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove(orderId, waiter));
+        watch(orderId, waiter, (LocalDateTime) snapshot.get("qrExpiredAt"));
+        return emitter;
+    }
+
+    /**
+     * Long-poll: trả về ngay nếu trạng thái khác knownStatus, không thì chờ tới khi đổi
+     * Hết app.payment.status.long-poll-timeout-ms => trả "changed": false (không đọc database), client gọi lại
+     */
+    public DeferredResult<Map<String, Object>> await(Long orderId, PaymentStatus knownStatus) {
+        Map<String, Object> snapshot = snapshot(orderId);
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(longPollTimeoutMs);
+        if (isFinal(snapshot) || (knownStatus != null && !knownStatus.name().equals(snapshot.get("paymentStatus")))) {
+            snapshot.put("changed", true);
+            result.setResult(snapshot);
+            return result;
+        }
+
+        LongPollWaiter waiter = new LongPollWaiter(result);
+        result.onTimeout(() -> {
+            Map<String, Object> unchanged = new HashMap<>();
+            unchanged.put("orderId", orderId);
+            unchanged.put("paymentStatus", snapshot.get("paymentStatus"));
+            unchanged.put("changed", false);
+            result.setResult(unchanged);
+        });
+        result.onCompletion(() -> remove(orderId, waiter));
+        watch(orderId, waiter, (LocalDateTime) snapshot.get("qrExpiredAt"));
+        return result;
+    }
+
+    /**
+     * Sự kiện đơn hàng (do OutboxDispatcher giao sau commit)
+     */
+    @EventListener
+    public void onOrderEvent(OrderEvent event) {
+        switch (event.getType()) {
+            case PAYMENT_CONFIRMED, ORDER_CANCELLED -> {
+                recentlyFinished.put(event.getOrderId(), Boolean.TRUE);
+                if (watches.containsKey(event.getOrderId())) {
+                    refresh(event.getOrderId());
+                }
+            }
+            default -> { }
+        }
+    }
+
+    /**
+     * Số client đang chờ (theo dõi tải)
+     */
+    public int waitingCount() {
+        return watches.values().stream().mapToInt(watch -> watch.waiters.size()).sum();
+    }
+
+    private void watch(Long orderId, Waiter waiter, LocalDateTime qrExpiredAt) {
+        watches.compute(orderId, (id, watch) -> {
+            if (watch == null) {
+                watch = new Watch();
+                scheduleExpiry(orderId, watch, qrExpiredAt);
+            }
+            watch.waiters.add(waiter);
+            return watch;
+        });
+        if (recentlyFinished.getIfPresent(orderId) != null) {
+            refresh(orderId);
+        }
+    }
+
+    private void remove(Long orderId, Waiter waiter) {
+        watches.computeIfPresent(orderId, (id, watch) -> {
+            watch.waiters.remove(waiter);
+            if (watch.waiters.isEmpty()) {
+                watch.cancelExpiry();
+                return null;
+            }
+            return watch;
+        });
+    }
+
+    /**
+     * Thanh toán xác nhận ở node khác (sự kiện không tới node này): 1 SELECT cho tối đa RECHECK_BATCH đơn đang chờ
+     */
+    private void recheck() {
+        if (watches.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(watches.keySet());
+        for (int from = 0; from < ids.size(); from += RECHECK_BATCH) {
+            List<Long> chunk = ids.subList(from, Math.min(from + RECHECK_BATCH, ids.size()));
+            try {
+                for (Object[] row : orderRepository.findFinishedPayments(chunk)) {
+                    Long orderId = (Long) row[0];
+                    push(orderId, toSnapshot(orderId, (PaymentStatus) row[1], (LocalDateTime) row[2], (LocalDateTime) row[3]));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to recheck payment status of {} orders: {}", chunk.size(), e.getMessage());
+            }
+        }
+    }
+
+    private void scheduleExpiry(Long orderId, Watch watch, LocalDateTime qrExpiredAt) {
+        if (qrExpiredAt == null) {
+            return;
+        }
+        long delayMs = Duration.between(LocalDateTime.now(), qrExpiredAt).toMillis();
+        watch.expiry = timer.schedule(() -> refresh(orderId), Math.max(delayMs, 0), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Đọc lại trạng thái và đẩy cho mọi client chờ đơn này nếu đã là trạng thái cuối
+     * (QR tạo lại với hạn mới => hẹn lại timer)
+     */
+    private void refresh(Long orderId) {
+        Map<String, Object> snapshot;
+        try {
+            snapshot = snapshot(orderId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to load payment status of order {}: {}", orderId, e.getMessage());
+            return;
+        }
+        if (!isFinal(snapshot)) {
+            Watch watch = watches.get(orderId);
+            if (watch != null) {
+                watch.cancelExpiry();
+                scheduleExpiry(orderId, watch, (LocalDateTime) snapshot.get("qrExpiredAt"));
+            }
+            return;
+        }
+        push(orderId, snapshot);
+    }
+
+    /**
+     * Đẩy trạng thái cuối cho mọi client chờ đơn này rồi bỏ theo dõi
+     */
+    private void push(Long orderId, Map<String, Object> snapshot) {
+        Watch watch = watches.remove(orderId);
+        if (watch == null) {
+            return;
+        }
+        watch.cancelExpiry();
+        snapshot.put("changed", true);
+        List.copyOf(watch.waiters).forEach(waiter -> waiter.deliver(snapshot));
+        log.debug("Pushed payment status {} of order {} to {} clients",
+                snapshot.get("paymentStatus"), orderId, watch.waiters.size());
+    }
+
+    /**
+     * Trạng thái thanh toán (cùng các field với PaymentService.checkPaymentStatus), không ghi database:
+     * QR quá hạn mà còn PENDING thì báo FAILED như checkPaymentStatus
+     */
+    private Map<String, Object> snapshot(Long orderId) {
+        List<Object[]> rows = orderRepository.findPaymentSnapshot(orderId);
+        if (rows.isEmpty()) {
+            throw new ResourceNotFoundException("Order", "id", orderId);
+        }
+        Object[] row = rows.get(0);
+        return toSnapshot(orderId, (PaymentStatus) row[0], (LocalDateTime) row[1], (LocalDateTime) row[2]);
+    }
+
+    private static Map<String, Object> toSnapshot(Long orderId, PaymentStatus status,
+                                                  LocalDateTime qrExpiredAt, LocalDateTime paidAt) {
+        boolean expired = qrExpiredAt != null && LocalDateTime.now().isAfter(qrExpiredAt);
+        if (expired && status == PaymentStatus.PENDING) {
+            status = PaymentStatus.FAILED;
+        }
+
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("orderId", orderId);
+        snapshot.put("paymentStatus", status.name());
+        snapshot.put("isQrExpired", expired);
+        snapshot.put("qrExpiredAt", qrExpiredAt);
+        snapshot.put("paidAt", paidAt);
+        return snapshot;
+    }
+
+    private static boolean isFinal(Map<String, Object> snapshot) {
+        return !PaymentStatus.PENDING.name().equals(snapshot.get("paymentStatus"));
+    }
+
+    private interface Waiter {
+        void deliver(Map<String, Object> snapshot);
+
+        void close();
+    }
+
+    private static final class SseWaiter implements Waiter {
+        private final SseEmitter emitter;
+
+        private SseWaiter(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void deliver(Map<String, Object> snapshot) {
+            try {
+                emitter.send(SseEmitter.event().name(EVENT_NAME).data(snapshot));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                // Client đã ngắt kết nối
+                emitter.completeWithError(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+    }
+
+    private static final class LongPollWaiter implements Waiter {
+        private final DeferredResult<Map<String, Object>> result;
+
+        private LongPollWaiter(DeferredResult<Map<String, Object>> result) {
+            this.result = result;
+        }
+
+        @Override
+        public void deliver(Map<String, Object> snapshot) {
+            result.setResult(snapshot);
+        }
+
+        @Override
+        public void close() {
+            result.setErrorResult(new IllegalStateException("Server shutting down"));
+        }
+    }
+
+    private static final class Watch {
+        private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+        private volatile ScheduledFuture<?> expiry;
+
+        private void cancelExpiry() {
+            ScheduledFuture<?> current = expiry;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+}
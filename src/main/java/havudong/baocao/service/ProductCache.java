@@ -0,0 +1,67 @@
+package havudong.baocao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import havudong.baocao.dto.ProductResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Cache ProductResponse đã map sẵn cho trang chi tiết sản phẩm
+ *
+ * - Giới hạn số lượng + TTL (TTL là lưới an toàn cho thay đổi từ node khác)
+ * - Hit/miss được export qua Micrometer (cache.gets{cache="products"})
+ * - ProductService invalidate sau khi commit ở mọi thao tác ghi
+ * Không sửa object lấy từ cache, object được dùng chung giữa các request.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductCache {
+
+    private static final String CACHE_NAME = "products";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.cache.product.max-size:10000}")
+    private long maxSize;
+
+    @Value("${app.cache.product.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private Cache<Long, ProductResponse> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        log.info("Product cache initialized: maxSize={}, ttl={}s", maxSize, ttlSeconds);
+    }
+
+    /**
+     * Lấy từ cache, nếu chưa có thì load (loader trả về null = không tồn tại, không cache)
+     */
+    public ProductResponse get(Long productId, Function<Long, ProductResponse> loader) {
+        return cache.get(productId, loader);
+    }
+
+    public void invalidate(Long productId) {
+        cache.invalidate(productId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,413 @@
+package havudong.baocao.service;
+
+import havudong.baocao.dto.ProductImportResponse;
+import havudong.baocao.dto.ProductImportRow;
+import havudong.baocao.entity.Category;
+import havudong.baocao.entity.Product;
+import havudong.baocao.entity.User;
+import havudong.baocao.exception.BadRequestException;
+import havudong.baocao.util.CsvReader;
+import havudong.baocao.util.DataFormat;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Import sản phẩm hàng loạt cho seller từ CSV hoặc NDJSON
+ *
+ * - Đọc request body theo luồng, mỗi lần chỉ giữ 1 lô (chunk) trong bộ nhớ
+ * - Category tra trong map load 1 lần cho mỗi lượt import
+ * - Insert bằng JDBC batch, mỗi lô 1 transaction; lô lỗi thì thử lại từng dòng để báo đúng dòng lỗi
+ * - Sau khi mỗi lô commit: cập nhật search index, gợi ý, leaderboard như khi tạo từng sản phẩm
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductImportService {
+
+    private static final String INSERT_SQL = "INSERT INTO products " +
+            "(seller_id, category_id, name, description, price, original_price, stock, main_image, " +
+            "rating, sold_count, is_active, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Tên cột CSV (bỏ "_", không phân biệt hoa thường) -> field
+    private static final Set<String> CSV_COLUMNS = Set.of(
+            "categoryid", "category", "categoryname", "name", "description",
+            "price", "originalprice", "stock", "mainimage", "isactive");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final CategoryService categoryService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final ProductLeaderboard productLeaderboard;
+
+    @Value("${app.product-import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.product-import.max-errors:1000}")
+    private int maxErrors;
+
+    // Lượt import gần nhất của từng seller (đang chạy hoặc đã xong)
+    private final Map<Long, ImportJob> imports = new ConcurrentHashMap<>();
+
+    public ProductImportResponse importProducts(User seller, InputStream input, DataFormat format) {
+        ImportJob job = new ImportJob(seller);
+        imports.compute(seller.getId(), (sellerId, current) -> {
+            if (current != null && current.running) {
+                throw new BadRequestException("Đang có một lượt import khác chưa hoàn tất");
+            }
+            return job;
+        });
+
+        log.info("Starting product import ({}) for seller: {}", format, seller.getId());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            job.categories = loadCategories();
+            if (format == DataFormat.CSV) {
+                readCsv(reader, job);
+            } else {
+                readNdjson(reader, job);
+            }
+            flush(job);
+            job.status = "COMPLETED";
+        } catch (IOException e) {
+            // Lô đã commit vẫn giữ nguyên, chỉ dừng ở vị trí lỗi
+            log.warn("Product import for seller {} stopped: {}", seller.getId(), e.getMessage());
+            job.reject(null, "Không đọc được file: " + e.getMessage());
+            job.status = "FAILED";
+        } catch (RuntimeException e) {
+            job.status = "FAILED";
+            throw e;
+        } finally {
+            job.running = false;
+            job.finishedAt = System.currentTimeMillis();
+        }
+
+        log.info("Product import for seller {} finished: {} rows, {} imported, {} failed in {}ms",
+                seller.getId(), job.queued + job.failed, job.imported, job.failed, job.finishedAt - job.startedAt);
+        return job.toResponse(true);
+    }
+
+    /**
+     * Tiến độ lượt import hiện tại/gần nhất của seller
+     */
+    public Optional<ProductImportResponse> getProgress(Long sellerId) {
+        return Optional.ofNullable(imports.get(sellerId)).map(job -> job.toResponse(!job.running));
+    }
+
+    // ============ PARSING ============
+
+    private void readCsv(BufferedReader reader, ImportJob job) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRow();
+        if (header == null) {
+            throw new BadRequestException("File CSV trống");
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i).trim().replace("_", "").toLowerCase(Locale.ROOT);
+            if (CSV_COLUMNS.contains(column)) {
+                columns.putIfAbsent(column.equals("categoryname") ? "category" : column, i);
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        for (String required : List.of("name", "price", "stock")) {
+            if (!columns.containsKey(required)) {
+                missing.add(required);
+            }
+        }
+        if (!columns.containsKey("categoryid") && !columns.containsKey("category")) {
+            missing.add("categoryId/category");
+        }
+        if (!missing.isEmpty()) {
+            throw new BadRequestException("File CSV thiếu cột bắt buộc: " + String.join(", ", missing));
+        }
+
+        List<String> fields;
+        while ((fields = csv.readRow()) != null) {
+            int line = csv.getRowLineNumber();
+            ProductImportRow row;
+            try {
+                row = toRow(fields, columns);
+            } catch (NumberFormatException e) {
+                job.reject(line, "Giá trị số không hợp lệ: " + e.getMessage());
+                continue;
+            }
+            accept(job, line, row);
+        }
+    }
+
+    private ProductImportRow toRow(List<String> fields, Map<String, Integer> columns) {
+        ProductImportRow row = new ProductImportRow();
+        String categoryId = field(fields, columns, "categoryid");
+        row.setCategoryId(categoryId != null ? Long.valueOf(categoryId) : null);
+        row.setCategory(field(fields, columns, "category"));
+        row.setName(field(fields, columns, "name"));
+        row.setDescription(field(fields, columns, "description"));
+        String price = field(fields, columns, "price");
+        row.setPrice(price != null ? new BigDecimal(price) : null);
+        String originalPrice = field(fields, columns, "originalprice");
+        row.setOriginalPrice(originalPrice != null ? new BigDecimal(originalPrice) : null);
+        String stock = field(fields, columns, "stock");
+        row.setStock(stock != null ? Integer.valueOf(stock) : null);
+        row.setMainImage(field(fields, columns, "mainimage"));
+        String isActive = field(fields, columns, "isactive");
+        row.setIsActive(isActive == null || Boolean.parseBoolean(isActive) || isActive.equals("1"));
+        return row;
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private void readNdjson(BufferedReader reader, ImportJob job) throws IOException {
+        String text;
+        int line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            ProductImportRow row;
+            try {
+                row = objectMapper.readValue(text, ProductImportRow.class);
+            } catch (JacksonException e) {
+                job.reject(line, "JSON không hợp lệ: " + e.getOriginalMessage());
+                continue;
+            }
+            accept(job, line, row);
+        }
+    }
+
+    // ============ VALIDATION + BATCH INSERT ============
+
+    private void accept(ImportJob job, int line, ProductImportRow row) {
+        Set<ConstraintViolation<ProductImportRow>> violations = validator.validate(row);
+        if (!violations.isEmpty()) {
+            job.reject(line, violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+            return;
+        }
+
+        Category category = job.categories.resolve(row);
+        if (category == null) {
+            job.reject(line, "Không tìm thấy danh mục: " +
+                    (row.getCategoryId() != null ? row.getCategoryId() : Objects.toString(row.getCategory(), "")));
+            return;
+        }
+
+        Product product = new Product();
+        product.setSeller(job.seller);
+        product.setCategory(category);
+        product.setName(row.getName().trim());
+        product.setDescription(row.getDescription());
+        product.setPrice(row.getPrice());
+        product.setOriginalPrice(row.getOriginalPrice());
+        product.setStock(row.getStock());
+        product.setMainImage(row.getMainImage());
+        product.setIsActive(row.getIsActive() != null ? row.getIsActive() : true);
+
+        job.chunk.add(product);
+        job.chunkLines.add(line);
+        job.queued++;
+        if (job.chunk.size() >= chunkSize) {
+            flush(job);
+        }
+    }
+
+    private void flush(ImportJob job) {
+        if (job.chunk.isEmpty()) {
+            return;
+        }
+        List<Product> chunk = new ArrayList<>(job.chunk);
+        List<Integer> lines = new ArrayList<>(job.chunkLines);
+        job.chunk.clear();
+        job.chunkLines.clear();
+
+        LocalDateTime now = LocalDateTime.now();
+        for (Product product : chunk) {
+            product.setCreatedAt(now);
+            product.setUpdatedAt(now);
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Product> saved = new ArrayList<>(chunk.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertBatch(chunk));
+            saved.addAll(chunk);
+        } catch (DataAccessException e) {
+            log.warn("Product import batch failed for seller {}, retrying row by row: {}",
+                    job.seller.getId(), e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                Product product = chunk.get(i);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insertBatch(List.of(product)));
+                    saved.add(product);
+                } catch (DataAccessException rowError) {
+                    job.queued--;
+                    job.reject(lines.get(i), "Không thể lưu sản phẩm: " +
+                            NestedExceptionUtils.getMostSpecificCause(rowError).getMessage());
+                }
+            }
+        }
+        job.imported += saved.size();
+
+        for (Product product : saved) {
+            if (product.getId() != null) {
+                productSearchIndex.upsert(product);
+                productSuggestIndex.upsert(product);
+                productLeaderboard.productChanged(ProductLeaderboard.Change.of(product));
+            }
+        }
+
+        log.info("Product import progress for seller {}: {} rows, {} imported, {} failed",
+                job.seller.getId(), job.queued + job.failed, job.imported, job.failed);
+    }
+
+    private void insertBatch(List<Product> products) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Product product = products.get(i);
+                        ps.setLong(1, product.getSeller().getId());
+                        ps.setLong(2, product.getCategory().getId());
+                        ps.setString(3, product.getName());
+                        ps.setString(4, product.getDescription());
+                        ps.setBigDecimal(5, product.getPrice());
+                        ps.setObject(6, product.getOriginalPrice(), Types.DECIMAL);
+                        ps.setInt(7, product.getStock());
+                        ps.setString(8, product.getMainImage());
+                        ps.setBigDecimal(9, product.getRating());
+                        ps.setInt(10, product.getSoldCount());
+                        ps.setBoolean(11, product.getIsActive());
+                        ps.setTimestamp(12, Timestamp.valueOf(product.getCreatedAt()));
+                        ps.setTimestamp(13, Timestamp.valueOf(product.getUpdatedAt()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return products.size();
+                    }
+                },
+                keyHolder);
+
+        // Index cập nhật theo id sinh ra, nếu driver không trả đủ key thì để sync định kỳ xử lý
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() == products.size()) {
+            for (int i = 0; i < products.size(); i++) {
+                Object key = keys.get(i).values().iterator().next();
+                products.get(i).setId(((Number) key).longValue());
+            }
+        }
+    }
+
+    private CategoryLookup loadCategories() {
+        return new CategoryLookup(categoryService.getAllCategories());
+    }
+
+    // ============ STATE ============
+
+    private static final class CategoryLookup {
+        private final Map<Long, Category> byId = new HashMap<>();
+        private final Map<String, Category> byName = new HashMap<>();
+
+        CategoryLookup(List<Category> categories) {
+            for (Category category : categories) {
+                byId.put(category.getId(), category);
+                byName.putIfAbsent(category.getName().trim().toLowerCase(Locale.ROOT), category);
+            }
+        }
+
+        Category resolve(ProductImportRow row) {
+            if (row.getCategoryId() != null) {
+                return byId.get(row.getCategoryId());
+            }
+            return row.getCategory() != null ? byName.get(row.getCategory().trim().toLowerCase(Locale.ROOT)) : null;
+        }
+    }
+
+    private final class ImportJob {
+        final User seller;
+        final long startedAt = System.currentTimeMillis();
+        final List<Product> chunk = new ArrayList<>();
+        final List<Integer> chunkLines = new ArrayList<>();
+        final List<ProductImportResponse.RowError> errors = new ArrayList<>();
+        CategoryLookup categories;
+
+        // Chỉ thread import ghi, endpoint tiến độ đọc
+        volatile boolean running = true;
+        volatile String status = "RUNNING";
+        volatile int queued;
+        volatile int imported;
+        volatile int failed;
+        volatile long finishedAt;
+
+        ImportJob(User seller) {
+            this.seller = seller;
+        }
+
+        void reject(Integer line, String message) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(ProductImportResponse.RowError.builder()
+                        .line(line)
+                        .message(message)
+                        .build());
+            }
+        }
+
+        ProductImportResponse toResponse(boolean includeErrors) {
+            long end = running ? System.currentTimeMillis() : finishedAt;
+            return ProductImportResponse.builder()
+                    .status(status)
+                    .processedRows(queued + failed)
+                    .importedRows(imported)
+                    .failedRows(failed)
+                    .elapsedMs(end - startedAt)
+                    .errors(includeErrors ? List.copyOf(errors) : null)
+                    .errorsTruncated(includeErrors ? failed > errors.size() : null)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package havudong.baocao.service;
+
+import havudong.baocao.dto.ProductResponse;
+import havudong.baocao.entity.Category;
+import havudong.baocao.entity.Product;
+import havudong.baocao.repository.ProductRepository;
+import havudong.baocao.repository.UserBehaviorRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+
+import static havudong.baocao.constant.RecommendationConstants.TRENDING_DAYS;
+import static havudong.baocao.constant.RecommendationConstants.getWeight;
+
+/**
+ * Danh sách top-selling / newest / trending cho trang chủ, tính sẵn trong bộ nhớ
+ *
+ * - Request chỉ đọc snapshot bất biến (volatile), không query database
+ * - Mỗi scope (toàn sàn + từng category) giữ 1 pool ứng viên gấp POOL_FACTOR lần K,
+ *   cập nhật tăng dần khi ProductService thay đổi soldCount / tạo / ẩn sản phẩm
+ * - Mọi thay đổi được xử lý tuần tự trên 1 thread riêng, gom theo lô rồi publish snapshot mới
+ * - Refresh toàn bộ định kỳ (kèm trending) để đồng bộ với thay đổi từ node khác
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductLeaderboard {
+
+    private static final long GLOBAL_SCOPE = 0L;
+    private static final int POOL_FACTOR = 3;
+    private static final int FETCH_BATCH_SIZE = 500;
+
+    private final ProductRepository productRepository;
+    private final CategoryService categoryService;
+    private final UserBehaviorRepository userBehaviorRepository;
+
+    @Value("${app.home.top-k:20}")
+    private int topK;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("product-leaderboard").daemon(true).factory());
+    private final Queue<Change> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // Các field dưới đây chỉ được truy cập từ thread của executor
+    private Map<Long, RankedPool> topSellingPools = new HashMap<>();
+    private Map<Long, RankedPool> newestPools = new HashMap<>();
+    private Map<Long, ProductResponse> responses = new HashMap<>();
+    private Map<Long, Long> memberCategories = new HashMap<>();
+    private List<ProductResponse> trending = List.of();
+
+    private volatile Snapshot snapshot;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        executor.execute(this::reloadAll);
+    }
+
+    @Scheduled(fixedDelayString = "${app.home.refresh-interval-ms:300000}",
+               initialDelayString = "${app.home.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        executor.execute(this::reloadAll);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    /**
+     * Top bán chạy (categoryId null = toàn sàn), null nếu chưa load xong
+     */
+    public List<ProductResponse> getTopSelling(Long categoryId, int limit) {
+        Snapshot current = snapshot;
+        return current != null ? head(current.topSelling, categoryId, limit) : null;
+    }
+
+    /**
+     * Sản phẩm mới nhất (categoryId null = toàn sàn), null nếu chưa load xong
+     */
+    public List<ProductResponse> getNewest(Long categoryId, int limit) {
+        Snapshot current = snapshot;
+        return current != null ? head(current.newest, categoryId, limit) : null;
+    }
+
+    /**
+     * Trending trong TRENDING_DAYS ngày gần nhất, null nếu chưa load xong
+     */
+    public List<ProductResponse> getTrending(int limit) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        return current.trending.subList(0, Math.min(limit, current.trending.size()));
+    }
+
+    /**
+     * Ghi nhận thay đổi của sản phẩm (gọi sau khi transaction commit)
+     */
+    public void productChanged(Change change) {
+        pendingChanges.add(change);
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Top product id theo điểm tương tác (ACTION_WEIGHTS) từ thời điểm since
+     */
+    public List<Long> trendingProductIds(LocalDateTime since, int limit) {
+        Map<Long, Long> scores = new HashMap<>();
+        for (Object[] row : userBehaviorRepository.countActionsByProductSince(since)) {
+            scores.merge((Long) row[0], getWeight((String) row[1]) * (Long) row[2], Long::sum);
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private static List<ProductResponse> head(Map<Long, List<ProductResponse>> lists, Long categoryId, int limit) {
+        List<ProductResponse> list = lists.getOrDefault(categoryId != null ? categoryId : GLOBAL_SCOPE, List.of());
+        return list.subList(0, Math.min(Math.max(limit, 0), list.size()));
+    }
+
+    // ============ XỬ LÝ TRÊN THREAD LEADERBOARD ============
+
+    private void drain() {
+        drainScheduled.set(false);
+        if (snapshot == null) {
+            // Chưa load xong: reloadAll sẽ đọc trạng thái mới nhất từ database
+            pendingChanges.clear();
+            return;
+        }
+
+        try {
+            Set<Long> toFetch = new HashSet<>();
+            Set<Long> touchedScopes = new HashSet<>();
+            Change change;
+            while ((change = pendingChanges.poll()) != null) {
+                apply(change, toFetch, touchedScopes);
+            }
+
+            // Pool bị rút hết ứng viên hợp lệ (do ẩn sản phẩm / giảm soldCount) thì load lại scope đó
+            for (Long scope : touchedScopes) {
+                if (isStarved(topSellingPools.get(scope)) || isStarved(newestPools.get(scope))) {
+                    loadScope(scope, topSellingPools, newestPools, responses, memberCategories);
+                }
+            }
+
+            fetchResponses(toFetch);
+            publish();
+        } catch (Exception e) {
+            log.error("Failed to apply product leaderboard changes: {}", e.getMessage(), e);
+        }
+    }
+
+    private void apply(Change change, Set<Long> toFetch, Set<Long> touchedScopes) {
+        long id = change.productId;
+        Long previousCategory = memberCategories.get(id);
+
+        if (!change.active) {
+            removeFromScope(GLOBAL_SCOPE, id);
+            if (previousCategory != null) {
+                removeFromScope(previousCategory, id);
+                touchedScopes.add(previousCategory);
+            }
+            touchedScopes.add(GLOBAL_SCOPE);
+            memberCategories.remove(id);
+            responses.remove(id);
+            if (trending.stream().anyMatch(r -> r.getId() == id)) {
+                trending = trending.stream().filter(r -> r.getId() != id).toList();
+            }
+            return;
+        }
+
+        if (previousCategory != null && !previousCategory.equals(change.categoryId)) {
+            removeFromScope(previousCategory, id);
+            touchedScopes.add(previousCategory);
+        }
+
+        boolean member = offer(GLOBAL_SCOPE, change);
+        touchedScopes.add(GLOBAL_SCOPE);
+        if (change.categoryId != null) {
+            member |= offer(change.categoryId, change);
+            touchedScopes.add(change.categoryId);
+        }
+
+        if (member) {
+            memberCategories.put(id, change.categoryId);
+            // Load lại response để cập nhật stock / soldCount / rating / tên...
+            toFetch.add(id);
+        } else {
+            memberCategories.remove(id);
+            responses.remove(id);
+        }
+    }
+
+    private boolean offer(long scope, Change change) {
+        RankedPool sold = topSellingPools.computeIfAbsent(scope, k -> new RankedPool(capacity()));
+        RankedPool newest = newestPools.computeIfAbsent(scope, k -> new RankedPool(capacity()));
+
+        boolean member = change.soldCount != null
+                ? sold.offer(change.productId, change.soldCount)
+                : sold.contains(change.productId);
+        member |= change.createdAt != null
+                ? newest.offer(change.productId, toEpochMillis(change.createdAt))
+                : newest.contains(change.productId);
+        return member;
+    }
+
+    private void removeFromScope(long scope, long productId) {
+        RankedPool sold = topSellingPools.get(scope);
+        if (sold != null) {
+            sold.remove(productId);
+        }
+        RankedPool newest = newestPools.get(scope);
+        if (newest != null) {
+            newest.remove(productId);
+        }
+    }
+
+    private boolean isStarved(RankedPool pool) {
+        return pool != null && pool.isStarved(topK);
+    }
+
+    /**
+     * Load lại toàn bộ từ database, build vào map mới rồi mới thay thế
+     */
+    private void reloadAll() {
+        long startTime = System.currentTimeMillis();
+        try {
+            Map<Long, RankedPool> sold = new HashMap<>();
+            Map<Long, RankedPool> newest = new HashMap<>();
+            Map<Long, ProductResponse> loaded = new HashMap<>();
+            Map<Long, Long> categories = new HashMap<>();
+
+            loadScope(GLOBAL_SCOPE, sold, newest, loaded, categories);
+            List<Category> allCategories = categoryService.getAllCategories();
+            for (Category category : allCategories) {
+                loadScope(category.getId(), sold, newest, loaded, categories);
+            }
+
+            List<Long> trendingIds = trendingProductIds(LocalDateTime.now().minusDays(TRENDING_DAYS), topK);
+            Map<Long, ProductResponse> trendingById = new HashMap<>();
+            productRepository.findActiveResponsesByIdIn(trendingIds)
+                    .forEach(r -> trendingById.put(r.getId(), r));
+
+            topSellingPools = sold;
+            newestPools = newest;
+            responses = loaded;
+            memberCategories = categories;
+            trending = trendingIds.stream().map(trendingById::get).filter(Objects::nonNull).toList();
+            publish();
+
+            log.info("Product leaderboard refreshed: {} categories, top-k {} in {}ms",
+                    allCategories.size(), topK, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("Failed to refresh product leaderboard: {}", e.getMessage(), e);
+        }
+    }
+
+    private void loadScope(long scope, Map<Long, RankedPool> sold, Map<Long, RankedPool> newest,
+                           Map<Long, ProductResponse> loaded, Map<Long, Long> categories) {
+        int capacity = capacity();
+        Pageable bySold = PageRequest.of(0, capacity,
+                Sort.by("soldCount").descending().and(Sort.by("id").descending()));
+        Pageable byNewest = PageRequest.of(0, capacity,
+                Sort.by("createdAt").descending().and(Sort.by("id").descending()));
+
+        List<ProductResponse> topSold = scope == GLOBAL_SCOPE
+                ? productRepository.findTopActiveResponses(bySold)
+                : productRepository.findTopActiveResponsesByCategoryId(scope, bySold);
+        List<ProductResponse> latest = scope == GLOBAL_SCOPE
+                ? productRepository.findTopActiveResponses(byNewest)
+                : productRepository.findTopActiveResponsesByCategoryId(scope, byNewest);
+
+        sold.put(scope, RankedPool.of(capacity, topSold, r -> r.getSoldCount() != null ? r.getSoldCount() : 0));
+        newest.put(scope, RankedPool.of(capacity, latest, r -> toEpochMillis(r.getCreatedAt())));
+
+        for (ProductResponse response : topSold) {
+            loaded.put(response.getId(), response);
+            categories.put(response.getId(), response.getCategory().getId());
+        }
+        for (ProductResponse response : latest) {
+            loaded.put(response.getId(), response);
+            categories.put(response.getId(), response.getCategory().getId());
+        }
+    }
+
+    private void fetchResponses(Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Long> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += FETCH_BATCH_SIZE) {
+            List<Long> batch = idList.subList(from, Math.min(from + FETCH_BATCH_SIZE, idList.size()));
+            Set<Long> missing = new HashSet<>(batch);
+            for (ProductResponse response : productRepository.findActiveResponsesByIdIn(batch)) {
+                responses.put(response.getId(), response);
+                missing.remove(response.getId());
+            }
+            // Không còn active (bị ẩn ở node khác) thì gỡ khỏi mọi pool
+            for (Long id : missing) {
+                apply(Change.removed(id), new HashSet<>(), new HashSet<>());
+            }
+        }
+    }
+
+    private void publish() {
+        Map<Long, List<ProductResponse>> topSelling = new HashMap<>();
+        Map<Long, List<ProductResponse>> newest = new HashMap<>();
+        Set<Long> members = new HashSet<>();
+
+        topSellingPools.forEach((scope, pool) -> topSelling.put(scope, toResponses(pool, members)));
+        newestPools.forEach((scope, pool) -> newest.put(scope, toResponses(pool, members)));
+
+        // Dọn response của sản phẩm đã rời khỏi mọi pool
+        responses.keySet().removeIf(id -> !members.contains(id));
+        memberCategories.keySet().removeIf(id -> !members.contains(id));
+
+        List<ProductResponse> trendingList = trending.isEmpty()
+                ? topSelling.getOrDefault(GLOBAL_SCOPE, List.of())
+                : trending;
+        snapshot = new Snapshot(Map.copyOf(topSelling), Map.copyOf(newest), List.copyOf(trendingList));
+    }
+
+    private List<ProductResponse> toResponses(RankedPool pool, Set<Long> members) {
+        members.addAll(pool.ids());
+        List<ProductResponse> result = new ArrayList<>(topK);
+        for (Long id : pool.top(topK)) {
+            ProductResponse response = responses.get(id);
+            if (response != null) {
+                result.add(response);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private int capacity() {
+        return Math.max(topK, 1) * POOL_FACTOR;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+
+    // ============ DATA STRUCTURES ============
+
+    /**
+     * Thay đổi của 1 sản phẩm, chụp lại giá trị ngay trong transaction
+     */
+    public static final class Change {
+        final long productId;
+        final Long categoryId;
+        final Integer soldCount;
+        final LocalDateTime createdAt;
+        final boolean active;
+
+        private Change(long productId, Long categoryId, Integer soldCount, LocalDateTime createdAt, boolean active) {
+            this.productId = productId;
+            this.categoryId = categoryId;
+            this.soldCount = soldCount;
+            this.createdAt = createdAt;
+            this.active = active;
+        }
+
+        public static Change of(Product product) {
+            return new Change(
+                    product.getId(),
+                    product.getCategory() != null ? product.getCategory().getId() : null,
+                    product.getSoldCount(),
+                    product.getCreatedAt(),
+                    Boolean.TRUE.equals(product.getIsActive()));
+        }
+
+        static Change of(long productId, Long categoryId, Integer soldCount, LocalDateTime createdAt, boolean active) {
+            return new Change(productId, categoryId, soldCount, createdAt, active);
+        }
+
+        static Change removed(long productId) {
+            return new Change(productId, null, null, null, false);
+        }
+    }
+
+    /**
+     * Pool ứng viên đã sắp xếp (score giảm dần, id giảm dần)
+     *
+     * floor: mọi sản phẩm nằm ngoài pool đều có score <= floor, nên chỉ phần đầu pool
+     * có score >= floor là chắc chắn đúng thứ hạng.
+     */
+    private static final class RankedPool {
+        private static final Comparator<long[]> ORDER =
+                Comparator.<long[]>comparingLong(e -> e[1]).reversed()
+                        .thenComparing(Comparator.<long[]>comparingLong(e -> e[0]).reversed());
+
+        private final int capacity;
+        private final TreeSet<long[]> entries = new TreeSet<>(ORDER);
+        private final Map<Long, long[]> byId = new HashMap<>();
+        private long floor = Long.MIN_VALUE;
+
+        RankedPool(int capacity) {
+            this.capacity = capacity;
+        }
+
+        static RankedPool of(int capacity, List<ProductResponse> rows, ToLongFunction<ProductResponse> score) {
+            RankedPool pool = new RankedPool(capacity);
+            for (ProductResponse row : rows) {
+                long[] entry = {row.getId(), score.applyAsLong(row)};
+                pool.entries.add(entry);
+                pool.byId.put(row.getId(), entry);
+            }
+            // Load đủ capacity nghĩa là còn sản phẩm khác phía sau
+            if (rows.size() >= capacity) {
+                pool.floor = pool.entries.last()[1];
+            }
+            return pool;
+        }
+
+        /**
+         * Cập nhật score, trả về true nếu sản phẩm (vẫn) nằm trong pool
+         */
+        boolean offer(long id, long score) {
+            remove(id);
+            if (score < floor) {
+                return false;
+            }
+            long[] entry = {id, score};
+            entries.add(entry);
+            byId.put(id, entry);
+            if (entries.size() > capacity) {
+                long[] evicted = entries.pollLast();
+                byId.remove(evicted[0]);
+                floor = Math.max(floor, evicted[1]);
+                return evicted[0] != id;
+            }
+            return true;
+        }
+
+        void remove(long id) {
+            long[] existing = byId.remove(id);
+            if (existing != null) {
+                entries.remove(existing);
+            }
+        }
+
+        boolean contains(long id) {
+            return byId.containsKey(id);
+        }
+
+        Set<Long> ids() {
+            return byId.keySet();
+        }
+
+        List<Long> top(int k) {
+            List<Long> result = new ArrayList<>(k);
+            for (long[] entry : entries) {
+                if (result.size() >= k || entry[1] < floor) {
+                    break;
+                }
+                result.add(entry[0]);
+            }
+            return result;
+        }
+
+        boolean isStarved(int k) {
+            return floor != Long.MIN_VALUE && top(k).size() < k;
+        }
+    }
+
+    private static final class Snapshot {
+        final Map<Long, List<ProductResponse>> topSelling;
+        final Map<Long, List<ProductResponse>> newest;
+        final List<ProductResponse> trending;
+
+        Snapshot(Map<Long, List<ProductResponse>> topSelling, Map<Long, List<ProductResponse>> newest,
+                 List<ProductResponse> trending) {
+            this.topSelling = topSelling;
+            this.newest = newest;
+            this.trending = trending;
+        }
+    }
+}
@@ -0,0 +1,680 @@
+package havudong.baocao.service;
+
+import havudong.baocao.entity.Product;
+import havudong.baocao.repository.ProductRepository;
+import havudong.baocao.util.VietnameseTextUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index trong bộ nhớ cho tìm kiếm sản phẩm theo từ khóa
+ *
+ * - Token hóa name + description (đã bỏ dấu tiếng Việt)
+ * - Các thuộc tính dùng để lọc/sắp xếp lưu dạng mảng nguyên thủy theo ordinal
+ * - Điểm = TF-IDF (name nặng hơn description) + soldCount + rating
+ * - Token cuối của từ khóa được khớp theo tiền tố ("ao kho" → "áo khoác")
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchIndex {
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int LOAD_BATCH_SIZE = 5000;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final Set<String> SORTABLE_FIELDS = Set.of("createdAt", "price", "rating", "soldCount");
+
+    // Cận trên (VND) của các khoảng giá: <100k, 100k-500k, 500k-1tr, 1tr-5tr, >=5tr
+    public static final double[] PRICE_BUCKET_BOUNDS = {100_000, 500_000, 1_000_000, 5_000_000};
+    // Mức rating tối thiểu (đếm cộng dồn: "từ 4 sao trở lên", ...)
+    public static final double[] RATING_THRESHOLDS = {4, 3, 2, 1};
+
+    private final ProductRepository productRepository;
+
+    @Value("${app.search.sold-count-weight:0.5}")
+    private double soldCountWeight;
+
+    @Value("${app.search.rating-weight:0.3}")
+    private double ratingWeight;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Các field dưới đây được bảo vệ bởi lock
+    private IndexState state = new IndexState();
+    private boolean rebuilding;
+    private final Map<Long, Document> pendingChanges = new LinkedHashMap<>();
+    private LocalDateTime lastSyncedAt;
+
+    private volatile boolean ready;
+
+    /**
+     * Nạp index ở background khi ứng dụng khởi động xong
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread.ofVirtual().name("product-search-index-loader").start(this::rebuild);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Dựng lại toàn bộ index từ database
+     *
+     * Các thay đổi xảy ra trong lúc đang nạp được ghi lại và áp dụng sau khi swap.
+     */
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        LocalDateTime startedAt = LocalDateTime.now();
+
+        lock.writeLock().lock();
+        try {
+            rebuilding = true;
+            pendingChanges.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            IndexState fresh = new IndexState();
+            long afterId = 0L;
+            while (true) {
+                List<Object[]> rows = productRepository.findSearchDocuments(afterId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (Object[] row : rows) {
+                    fresh.upsert(Document.fromRow(row));
+                }
+                if (rows.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                afterId = (Long) rows.get(rows.size() - 1)[0];
+            }
+
+            lock.writeLock().lock();
+            try {
+                pendingChanges.values().forEach(fresh::apply);
+                pendingChanges.clear();
+                state = fresh;
+                rebuilding = false;
+                lastSyncedAt = startedAt;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            log.info("Product search index built: {} products, {} terms in {}ms",
+                    fresh.liveCount, fresh.postings.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("Failed to build product search index: {}", e.getMessage(), e);
+            lock.writeLock().lock();
+            try {
+                rebuilding = false;
+                pendingChanges.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Đồng bộ định kỳ các sản phẩm thay đổi ở node khác (theo updatedAt)
+     */
+    @Scheduled(fixedDelayString = "${app.search.sync-interval-ms:60000}", initialDelayString = "${app.search.sync-interval-ms:60000}")
+    public void syncRecentChanges() {
+        LocalDateTime since;
+        lock.readLock().lock();
+        try {
+            if (!ready || rebuilding) {
+                return;
+            }
+            since = lastSyncedAt;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        LocalDateTime startedAt = LocalDateTime.now();
+        // Lùi lại vài giây để không bỏ sót transaction commit trễ
+        List<Object[]> rows = productRepository.findSearchDocumentsUpdatedSince(since.minusSeconds(5));
+
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : rows) {
+                state.apply(Document.fromRow(row));
+            }
+            lastSyncedAt = startedAt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (!rows.isEmpty()) {
+            log.debug("Synced {} changed products into search index", rows.size());
+        }
+    }
+
+    /**
+     * Thêm/cập nhật sản phẩm vào index (sản phẩm inactive sẽ bị gỡ khỏi index)
+     */
+    public void upsert(Product product) {
+        apply(Document.fromProduct(product));
+    }
+
+    /**
+     * Gỡ sản phẩm khỏi index
+     */
+    public void remove(Long productId) {
+        apply(Document.removed(productId));
+    }
+
+    /**
+     * Cập nhật các chỉ số dùng để xếp hạng (không token hóa lại)
+     */
+    public void updateStats(Long productId, Integer soldCount, BigDecimal rating) {
+        lock.writeLock().lock();
+        try {
+            state.updateStats(productId, soldCount, rating);
+            Document pending = pendingChanges.get(productId);
+            if (rebuilding && pending != null && pending.active) {
+                pendingChanges.put(productId, pending.withStats(soldCount, rating));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Document document) {
+        lock.writeLock().lock();
+        try {
+            state.apply(document);
+            if (rebuilding) {
+                pendingChanges.remove(document.id);
+                pendingChanges.put(document.id, document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm kiếm theo từ khóa và filters
+     *
+     * Nếu pageable có sort theo createdAt/price/rating/soldCount thì sắp xếp theo field đó,
+     * ngược lại sắp xếp theo điểm liên quan.
+     */
+    public SearchResult search(String keyword, Long categoryId, BigDecimal minPrice,
+                               BigDecimal maxPrice, Double minRating, Pageable pageable) {
+        List<String> tokens = VietnameseTextUtil.tokenize(keyword);
+        if (tokens.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+
+        double min = minPrice != null ? minPrice.doubleValue() : Double.NEGATIVE_INFINITY;
+        double max = maxPrice != null ? maxPrice.doubleValue() : Double.POSITIVE_INFINITY;
+        double ratingFloor = minRating != null ? minRating : Double.NEGATIVE_INFINITY;
+
+        lock.readLock().lock();
+        try {
+            IndexState s = state;
+            List<Map<Integer, Integer>> termPostings = s.resolvePostings(tokens);
+            if (termPostings == null) {
+                return new SearchResult(List.of(), 0);
+            }
+
+            double[] idf = new double[termPostings.size()];
+            for (int i = 0; i < idf.length; i++) {
+                idf[i] = Math.log(1.0 + (double) s.liveCount / termPostings.get(i).size());
+            }
+
+            int[] hits = new int[termPostings.get(0).size()];
+            double[] scores = new double[hits.length];
+            int count = 0;
+
+            candidates:
+            for (Map.Entry<Integer, Integer> entry : termPostings.get(0).entrySet()) {
+                int ordinal = entry.getKey();
+                if (!s.alive.get(ordinal)) {
+                    continue;
+                }
+                if (categoryId != null && s.categoryIds[ordinal] != categoryId) {
+                    continue;
+                }
+                if (s.prices[ordinal] < min || s.prices[ordinal] > max || s.ratings[ordinal] < ratingFloor) {
+                    continue;
+                }
+
+                double score = entry.getValue() * idf[0];
+                for (int t = 1; t < termPostings.size(); t++) {
+                    Integer tf = termPostings.get(t).get(ordinal);
+                    if (tf == null) {
+                        continue candidates;
+                    }
+                    score += tf * idf[t];
+                }
+                score += soldCountWeight * Math.log1p(s.soldCounts[ordinal]) + ratingWeight * s.ratings[ordinal];
+
+                hits[count] = ordinal;
+                scores[count] = score;
+                count++;
+            }
+
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, comparator(s, hits, scores, pageable.getSort()));
+
+            long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+            int limit = pageable.isPaged() ? pageable.getPageSize() : count;
+            List<Long> ids = new ArrayList<>();
+            for (long i = offset; i < count && ids.size() < limit; i++) {
+                ids.add(s.ids[hits[order[(int) i]]]);
+            }
+            return new SearchResult(ids, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Đếm facet (category, khoảng giá, mức rating) cho từ khóa + filters hiện tại
+     *
+     * Mỗi facet bỏ qua filter của chính nó để client hiển thị được các lựa chọn khác
+     * (vd: đếm theo category không áp dụng categoryId). Keyword rỗng = toàn bộ sản phẩm active.
+     */
+    public FacetCounts facets(String keyword, Long categoryId, BigDecimal minPrice,
+                              BigDecimal maxPrice, Double minRating) {
+        List<String> tokens = VietnameseTextUtil.tokenize(keyword);
+        double min = minPrice != null ? minPrice.doubleValue() : Double.NEGATIVE_INFINITY;
+        double max = maxPrice != null ? maxPrice.doubleValue() : Double.POSITIVE_INFINITY;
+        double ratingFloor = minRating != null ? minRating : Double.NEGATIVE_INFINITY;
+
+        lock.readLock().lock();
+        try {
+            IndexState s = state;
+            int[] categoryCounts = new int[s.categorySlotIds.length];
+            int[] priceCounts = new int[PRICE_BUCKET_BOUNDS.length + 1];
+            int[] ratingCounts = new int[RATING_THRESHOLDS.length];
+            int total = 0;
+
+            int[] candidates = tokens.isEmpty() ? null : s.matchAll(tokens);
+            if (candidates != null && candidates.length == 0) {
+                return toFacetCounts(s, categoryCounts, priceCounts, ratingCounts, 0);
+            }
+            int candidateCount = candidates != null ? candidates.length : s.size;
+
+            for (int i = 0; i < candidateCount; i++) {
+                int ordinal = candidates != null ? candidates[i] : i;
+                if (!s.alive.get(ordinal)) {
+                    continue;
+                }
+                double price = s.prices[ordinal];
+                double rating = s.ratings[ordinal];
+                boolean categoryMatch = categoryId == null || s.categoryIds[ordinal] == categoryId;
+                boolean priceMatch = price >= min && price <= max;
+                boolean ratingMatch = rating >= ratingFloor;
+
+                if (priceMatch && ratingMatch) {
+                    categoryCounts[s.categorySlots[ordinal]]++;
+                }
+                if (categoryMatch && ratingMatch) {
+                    priceCounts[priceBucket(price)]++;
+                }
+                if (categoryMatch && priceMatch) {
+                    for (int r = RATING_THRESHOLDS.length - 1; r >= 0 && rating >= RATING_THRESHOLDS[r]; r--) {
+                        ratingCounts[r]++;
+                    }
+                    if (ratingMatch) {
+                        total++;
+                    }
+                }
+            }
+            return toFacetCounts(s, categoryCounts, priceCounts, ratingCounts, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int priceBucket(double price) {
+        for (int i = 0; i < PRICE_BUCKET_BOUNDS.length; i++) {
+            if (price < PRICE_BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return PRICE_BUCKET_BOUNDS.length;
+    }
+
+    private static FacetCounts toFacetCounts(IndexState s, int[] categoryCounts, int[] priceCounts,
+                                             int[] ratingCounts, long total) {
+        Map<Long, Integer> byCategory = new LinkedHashMap<>();
+        for (int slot = 0; slot < categoryCounts.length; slot++) {
+            if (categoryCounts[slot] > 0) {
+                byCategory.put(s.categorySlotIds[slot], categoryCounts[slot]);
+            }
+        }
+        return new FacetCounts(byCategory, priceCounts, ratingCounts, total);
+    }
+
+    private Comparator<Integer> comparator(IndexState s, int[] hits, double[] scores, Sort sort) {
+        Comparator<Integer> byRelevance = Comparator.<Integer>comparingDouble(i -> scores[i]).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(i -> s.ids[hits[i]]).reversed());
+
+        Sort.Order sortOrder = sort.stream()
+                .filter(o -> SORTABLE_FIELDS.contains(o.getProperty()))
+                .findFirst()
+                .orElse(null);
+        if (sortOrder == null) {
+            return byRelevance;
+        }
+
+        Comparator<Integer> byField = switch (sortOrder.getProperty()) {
+            case "price" -> Comparator.comparingDouble(i -> s.prices[hits[i]]);
+            case "rating" -> Comparator.comparingDouble(i -> s.ratings[hits[i]]);
+            case "soldCount" -> Comparator.comparingInt(i -> s.soldCounts[hits[i]]);
+            default -> Comparator.comparingLong(i -> s.createdAts[hits[i]]);
+        };
+        if (sortOrder.isDescending()) {
+            byField = byField.reversed();
+        }
+        return byField.thenComparing(byRelevance);
+    }
+
+    // ============ DATA STRUCTURES ============
+
+    @Getter
+    @AllArgsConstructor
+    public static class SearchResult {
+        private final List<Long> ids;
+        private final long total;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class FacetCounts {
+        private final Map<Long, Integer> categoryCounts;
+        private final int[] priceCounts;
+        private final int[] ratingCounts;
+        private final long total;
+    }
+
+    /**
+     * Dữ liệu của một sản phẩm cần để index
+     */
+    private static final class Document {
+        final long id;
+        final boolean active;
+        final String name;
+        final String description;
+        final long categoryId;
+        final double price;
+        final double rating;
+        final int soldCount;
+        final long createdAt;
+
+        private Document(long id, boolean active, String name, String description, long categoryId,
+                         double price, double rating, int soldCount, long createdAt) {
+            this.id = id;
+            this.active = active;
+            this.name = name;
+            this.description = description;
+            this.categoryId = categoryId;
+            this.price = price;
+            this.rating = rating;
+            this.soldCount = soldCount;
+            this.createdAt = createdAt;
+        }
+
+        static Document fromProduct(Product product) {
+            return new Document(
+                    product.getId(),
+                    Boolean.TRUE.equals(product.getIsActive()),
+                    product.getName(),
+                    product.getDescription(),
+                    product.getCategory() != null ? product.getCategory().getId() : 0L,
+                    toDouble(product.getPrice()),
+                    toDouble(product.getRating()),
+                    product.getSoldCount() != null ? product.getSoldCount() : 0,
+                    toEpochMillis(product.getCreatedAt()));
+        }
+
+        static Document fromRow(Object[] row) {
+            return new Document(
+                    (Long) row[0],
+                    Boolean.TRUE.equals(row[8]),
+                    (String) row[1],
+                    (String) row[2],
+                    row[3] != null ? (Long) row[3] : 0L,
+                    toDouble((BigDecimal) row[4]),
+                    toDouble((BigDecimal) row[5]),
+                    row[6] != null ? (Integer) row[6] : 0,
+                    toEpochMillis((LocalDateTime) row[7]));
+        }
+
+        static Document removed(long id) {
+            return new Document(id, false, null, null, 0L, 0, 0, 0, 0L);
+        }
+
+        Document withStats(Integer newSoldCount, BigDecimal newRating) {
+            return new Document(id, active, name, description, categoryId, price,
+                    newRating != null ? newRating.doubleValue() : rating,
+                    newSoldCount != null ? newSoldCount : soldCount,
+                    createdAt);
+        }
+
+        private static double toDouble(BigDecimal value) {
+            return value != null ? value.doubleValue() : 0.0;
+        }
+
+        private static long toEpochMillis(LocalDateTime time) {
+            return time != null ? time.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+        }
+    }
+
+    /**
+     * Trạng thái index: postings theo term + các cột thuộc tính theo ordinal
+     */
+    private static final class IndexState {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        final Map<Long, Integer> ordinals = new HashMap<>();
+        final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+        final BitSet alive = new BitSet();
+        // Ordinal của sản phẩm đã xóa, dùng lại khi thêm mới => mảng và bitset không phình mãi
+        final ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+        String[][] terms = new String[INITIAL_CAPACITY][];
+        long[] ids = new long[INITIAL_CAPACITY];
+        long[] categoryIds = new long[INITIAL_CAPACITY];
+        int[] categorySlots = new int[INITIAL_CAPACITY];
+        // Đánh số liên tục cho category để đếm facet bằng mảng thay vì map
+        final Map<Long, Integer> categorySlotById = new HashMap<>();
+        long[] categorySlotIds = new long[0];
+        double[] prices = new double[INITIAL_CAPACITY];
+        double[] ratings = new double[INITIAL_CAPACITY];
+        int[] soldCounts = new int[INITIAL_CAPACITY];
+        long[] createdAts = new long[INITIAL_CAPACITY];
+        int size;
+        int liveCount;
+
+        void apply(Document document) {
+            if (document.active) {
+                upsert(document);
+            } else {
+                remove(document.id);
+            }
+        }
+
+        void upsert(Document document) {
+            Integer ordinal = ordinals.get(document.id);
+            if (ordinal == null) {
+                ordinal = freeOrdinals.poll();
+                if (ordinal == null) {
+                    ordinal = size++;
+                    ensureCapacity(size);
+                }
+                ordinals.put(document.id, ordinal);
+            } else {
+                removePostings(ordinal);
+            }
+
+            ids[ordinal] = document.id;
+            categoryIds[ordinal] = document.categoryId;
+            categorySlots[ordinal] = categorySlot(document.categoryId);
+            prices[ordinal] = document.price;
+            ratings[ordinal] = document.rating;
+            soldCounts[ordinal] = document.soldCount;
+            createdAts[ordinal] = document.createdAt;
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : VietnameseTextUtil.tokenize(document.name)) {
+                frequencies.merge(token, NAME_WEIGHT, Integer::sum);
+            }
+            for (String token : VietnameseTextUtil.tokenize(document.description)) {
+                frequencies.merge(token, DESCRIPTION_WEIGHT, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(ordinal, entry.getValue());
+            }
+            terms[ordinal] = frequencies.keySet().toArray(String[]::new);
+
+            if (!alive.get(ordinal)) {
+                alive.set(ordinal);
+                liveCount++;
+            }
+        }
+
+        void remove(long id) {
+            Integer ordinal = ordinals.remove(id);
+            if (ordinal == null) {
+                return;
+            }
+            removePostings(ordinal);
+            terms[ordinal] = null;
+            alive.clear(ordinal);
+            liveCount--;
+            freeOrdinals.push(ordinal);
+        }
+
+        void updateStats(long id, Integer soldCount, BigDecimal rating) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                return;
+            }
+            if (soldCount != null) {
+                soldCounts[ordinal] = soldCount;
+            }
+            if (rating != null) {
+                ratings[ordinal] = rating.doubleValue();
+            }
+        }
+
+        /**
+         * Postings của từng token (token cuối khớp theo tiền tố), sắp theo độ dài tăng dần.
+         * Trả về null nếu có token không khớp sản phẩm nào.
+         */
+        List<Map<Integer, Integer>> resolvePostings(List<String> tokens) {
+            List<Map<Integer, Integer>> result = new ArrayList<>(tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                boolean prefix = i == tokens.size() - 1 && tokens.get(i).length() >= MIN_PREFIX_LENGTH;
+                Map<Integer, Integer> termPostings = prefix ? prefixPostings(tokens.get(i)) : postings.get(tokens.get(i));
+                if (termPostings == null || termPostings.isEmpty()) {
+                    return null;
+                }
+                result.add(termPostings);
+            }
+            // Duyệt danh sách ngắn nhất trước, kiểm tra các term còn lại (AND)
+            result.sort(Comparator.comparingInt(Map::size));
+            return result;
+        }
+
+        /**
+         * Các ordinal chứa tất cả token
+         */
+        int[] matchAll(List<String> tokens) {
+            List<Map<Integer, Integer>> termPostings = resolvePostings(tokens);
+            if (termPostings == null) {
+                return new int[0];
+            }
+            int[] matches = new int[termPostings.get(0).size()];
+            int count = 0;
+            candidates:
+            for (Integer ordinal : termPostings.get(0).keySet()) {
+                for (int t = 1; t < termPostings.size(); t++) {
+                    if (!termPostings.get(t).containsKey(ordinal)) {
+                        continue candidates;
+                    }
+                }
+                matches[count++] = ordinal;
+            }
+            return Arrays.copyOf(matches, count);
+        }
+
+        Map<Integer, Integer> prefixPostings(String prefix) {
+            SortedMap<String, Map<Integer, Integer>> range = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+            if (range.size() == 1) {
+                return range.values().iterator().next();
+            }
+            Map<Integer, Integer> merged = new HashMap<>();
+            for (Map<Integer, Integer> termPostings : range.values()) {
+                termPostings.forEach((ordinal, tf) -> merged.merge(ordinal, tf, Integer::sum));
+            }
+            return merged;
+        }
+
+        private void removePostings(int ordinal) {
+            String[] ordinalTerms = terms[ordinal];
+            if (ordinalTerms == null) {
+                return;
+            }
+            for (String term : ordinalTerms) {
+                Map<Integer, Integer> termPostings = postings.get(term);
+                if (termPostings != null) {
+                    termPostings.remove(ordinal);
+                    if (termPostings.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+
+        private int categorySlot(long categoryId) {
+            Integer slot = categorySlotById.get(categoryId);
+            if (slot == null) {
+                slot = categorySlotIds.length;
+                categorySlotIds = Arrays.copyOf(categorySlotIds, slot + 1);
+                categorySlotIds[slot] = categoryId;
+                categorySlotById.put(categoryId, slot);
+            }
+            return slot;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required <= ids.length) {
+                return;
+            }
+            int capacity = Math.max(required, ids.length * 2);
+            terms = Arrays.copyOf(terms, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            categorySlots = Arrays.copyOf(categorySlots, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            soldCounts = Arrays.copyOf(soldCounts, capacity);
+            createdAts = Arrays.copyOf(createdAts, capacity);
+        }
+    }
+}
@@ -1,39 +1,103 @@
 package havudong.baocao.service;
 
+import havudong.baocao.dto.ProductResponse;
+import havudong.baocao.dto.ProductSearchResponse;
+import havudong.baocao.dto.SuggestionResponse;
 import havudong.baocao.entity.Category;
 import havudong.baocao.entity.Product;
 import havudong.baocao.entity.User;
+import havudong.baocao.exception.BadRequestException;
 import havudong.baocao.exception.OutOfStockException;
 import havudong.baocao.exception.ResourceNotFoundException;
+import havudong.baocao.mapper.ProductMapper;
 import havudong.baocao.repository.ProductRepository;
+import havudong.baocao.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ProductService {
     
+    // Các cột sort có index (is_active, <cột>, id) dùng được cho keyset pagination
+    private static final Set<String> SCROLL_SORT_FIELDS = Set.of("createdAt", "price", "soldCount");
+    
+    // Trừ stock có điều kiện: không đủ hàng hoặc đã ngừng bán => 0 dòng bị ảnh hưởng
+    private static final String RESERVE_STOCK_SQL = "UPDATE products " +
+            "SET stock = stock - ?, sold_count = sold_count + ?, updated_at = ? " +
+            "WHERE id = ? AND is_active = true AND stock >= ?";
+    
+    private static final String RELEASE_STOCK_SQL = "UPDATE products " +
+            "SET stock = stock + ?, sold_count = GREATEST(sold_count - ?, 0), updated_at = ? " +
+            "WHERE id = ?";
+    
     private final ProductRepository productRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final CategoryService categoryService;
+    private final ProductCache productCache;
+    private final ProductMapper productMapper;
+    private final ProductLeaderboard productLeaderboard;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final JdbcTemplate jdbcTemplate;
+    
+    // Tắt để quay về tìm kiếm bằng SQL LIKE
+    @Value("${app.search.in-memory.enabled:true}")
+    private boolean inMemorySearchEnabled;
     
     @Transactional
     public Product createProduct(Product product) {
         log.info("Creating product: {} for seller: {}", product.getName(), product.getSeller().getId());
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        ProductLeaderboard.Change change = ProductLeaderboard.Change.of(saved);
+        afterCommit(() -> {
+            productSearchIndex.upsert(saved);
+            productSuggestIndex.upsert(saved);
+            productLeaderboard.productChanged(change);
+        });
+        return saved;
     }
     
     public Optional<Product> getProductById(Long id) {
         return productRepository.findById(id);
     }
     
+    /**
+     * Product detail đã map sẵn, đọc qua ProductCache
+     */
+    public Optional<ProductResponse> getProductResponseById(Long id) {
+        return Optional.ofNullable(productCache.get(id, productId -> productRepository.findByIdWithDetails(productId)
+                .map(productMapper::toResponse)
+                .orElse(null)));
+    }
+    
     /**
      * Lấy product với pessimistic lock để update stock an toàn
      */
@@ -43,32 +107,73 @@ public class ProductService {
                 .orElseThrow(() -> new ResourceNotFoundException("Product", "id", id));
     }
     
-    public Page<Product> getAllActiveProducts(Pageable pageable) {
-        return productRepository.findByIsActiveTrue(pageable);
+    public Page<ProductResponse> getAllActiveProducts(Pageable pageable) {
+        return productRepository.findActiveResponses(pageable);
+    }
+    
+    /**
+     * Keyset pagination cho danh sách sản phẩm (không OFFSET, không COUNT)
+     */
+    public Window<Product> scrollActiveProducts(String sortBy, Sort.Direction direction, String cursor, int size) {
+        Sort sort = CursorCodec.keysetSort(sortBy, direction, SCROLL_SORT_FIELDS);
+        return productRepository.findByIsActiveTrue(CursorCodec.decode(cursor, sort), sort, CursorCodec.limit(size));
+    }
+    
+    public Page<ProductResponse> getProductsByCategory(Category category, Pageable pageable) {
+        return productRepository.findActiveResponsesByCategoryId(category.getId(), pageable);
     }
     
-    public Page<Product> getProductsByCategory(Category category, Pageable pageable) {
-        return productRepository.findByCategoryAndIsActiveTrue(category, pageable);
+    public Page<ProductResponse> getProductsBySeller(User seller, Pageable pageable) {
+        return productRepository.findResponsesBySellerId(seller.getId(), pageable);
     }
     
-    public Page<Product> getProductsBySeller(User seller, Pageable pageable) {
-        return productRepository.findBySeller(seller, pageable);
+    public Page<ProductResponse> searchProducts(String keyword, Pageable pageable) {
+        if (useSearchIndex(keyword)) {
+            return toPage(productSearchIndex.search(keyword, null, null, null, null, pageable), pageable);
+        }
+        return productRepository.searchResponsesByKeyword(keyword, pageable);
     }
     
-    public Page<Product> searchProducts(String keyword, Pageable pageable) {
-        return productRepository.searchByKeyword(keyword, pageable);
+    /**
+     * Gợi ý typeahead - chỉ đọc từ bộ nhớ, trả về rỗng khi index chưa build xong
+     */
+    public List<SuggestionResponse> suggest(String q, int limit) {
+        return productSuggestIndex.suggest(q, limit);
     }
     
-    public Page<Product> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable) {
-        return productRepository.findByPriceRange(minPrice, maxPrice, pageable);
+    public Page<ProductResponse> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice, Pageable pageable) {
+        return productRepository.findResponsesByPriceRange(minPrice, maxPrice, pageable);
     }
     
-    public List<Product> getTopSellingProducts() {
-        return productRepository.findTop10ByIsActiveTrueOrderBySoldCountDesc();
+    /**
+     * Top bán chạy (toàn sàn hoặc theo category) - đọc từ ProductLeaderboard,
+     * chỉ query database khi leaderboard chưa load xong lúc khởi động
+     */
+    public List<ProductResponse> getTopSellingProducts(Long categoryId, int limit) {
+        int size = Math.clamp(limit, 1, productLeaderboard.getTopK());
+        List<ProductResponse> cached = productLeaderboard.getTopSelling(categoryId, size);
+        if (cached != null) {
+            return cached;
+        }
+        return findTopActive(categoryId, PageRequest.of(0, size, Sort.by("soldCount").descending()));
     }
     
-    public List<Product> getNewestProducts() {
-        return productRepository.findTop10ByIsActiveTrueOrderByCreatedAtDesc();
+    /**
+     * Sản phẩm mới nhất (toàn sàn hoặc theo category) - đọc từ ProductLeaderboard
+     */
+    public List<ProductResponse> getNewestProducts(Long categoryId, int limit) {
+        int size = Math.clamp(limit, 1, productLeaderboard.getTopK());
+        List<ProductResponse> cached = productLeaderboard.getNewest(categoryId, size);
+        if (cached != null) {
+            return cached;
+        }
+        return findTopActive(categoryId, PageRequest.of(0, size, Sort.by("createdAt").descending()));
+    }
+    
+    private List<ProductResponse> findTopActive(Long categoryId, Pageable pageable) {
+        return categoryId != null
+                ? productRepository.findTopActiveResponsesByCategoryId(categoryId, pageable)
+                : productRepository.findTopActiveResponses(pageable);
     }
     
     @Transactional
@@ -86,7 +191,15 @@ public class ProductService {
         product.setMainImage(productDetails.getMainImage());
         product.setCategory(productDetails.getCategory());
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        ProductLeaderboard.Change change = ProductLeaderboard.Change.of(saved);
+        afterCommit(() -> {
+            productCache.invalidate(id);
+            productSearchIndex.upsert(saved);
+            productSuggestIndex.upsert(saved);
+            productLeaderboard.productChanged(change);
+        });
+        return saved;
     }
     
     /**
@@ -100,46 +213,165 @@ public class ProductService {
         log.info("Deactivating product: {} by seller: {}", id, product.getSeller().getId());
         product.setIsActive(false);
         productRepository.save(product);
+        ProductLeaderboard.Change change = ProductLeaderboard.Change.of(product);
+        afterCommit(() -> {
+            productCache.invalidate(id);
+            productSearchIndex.remove(id);
+            productSuggestIndex.removeProduct(id);
+            productLeaderboard.productChanged(change);
+        });
     }
     
     /**
-     * Giảm stock khi đặt hàng - có lock để tránh race condition
+     * Giảm stock khi đặt hàng (1 sản phẩm)
      */
     @Transactional
     public void decreaseStock(Long productId, int quantity) {
-        Product product = productRepository.findByIdWithLock(productId)
-                .orElseThrow(() -> new ResourceNotFoundException("Product", "id", productId));
-        
-        if (product.getStock() < quantity) {
-            log.warn("Out of stock for product: {}, requested: {}, available: {}", 
-                    productId, quantity, product.getStock());
-            throw new OutOfStockException(product.getName(), quantity, product.getStock());
+        reserveStock(Map.of(productId, quantity));
+        stockChanged(List.of(productId));
+    }
+    
+    /**
+     * Hoàn stock khi hủy đơn hàng (1 sản phẩm)
+     */
+    @Transactional
+    public void restoreStock(Long productId, int quantity) {
+        releaseStock(Map.of(productId, quantity));
+        stockChanged(List.of(productId));
+    }
+    
+    /**
+     * Trừ stock cho nhiều sản phẩm trong 1 JDBC batch (productId -> số lượng)
+     *
+     * - Mỗi dòng là 1 UPDATE có điều kiện stock >= số lượng, không SELECT ... FOR UPDATE trước
+     * - Chạy theo thứ tự productId tăng dần => các checkout đồng thời khóa dòng cùng thứ tự, không deadlock
+     * - 1 dòng không đủ hàng => throw, transaction rollback toàn bộ các dòng đã trừ
+     * - Cache/index sản phẩm không cập nhật ở đây: listener ORDER_CREATED của outbox gọi refreshStockStats
+     */
+    @Transactional
+    public void reserveStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
         }
+        Map<Long, Integer> sorted = new TreeMap<>(quantities);
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> args = new ArrayList<>(sorted.size());
+        sorted.forEach((productId, quantity) -> args.add(new Object[]{quantity, quantity, now, productId, quantity}));
         
-        product.setStock(product.getStock() - quantity);
-        product.setSoldCount(product.getSoldCount() + quantity);
+        int[] counts = jdbcTemplate.batchUpdate(RESERVE_STOCK_SQL, args);
         
-        log.info("Decreased stock for product: {}, quantity: {}, remaining: {}", 
-                productId, quantity, product.getStock());
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : sorted.entrySet()) {
+            if (counts[i++] == 0) {
+                throw stockFailure(entry.getKey(), entry.getValue());
+            }
+        }
         
-        productRepository.save(product);
+        log.info("Reserved stock for {} products: {}", sorted.size(), sorted);
     }
-    
+
     /**
-     * Hoàn stock khi hủy đơn hàng
+     * Như reserveStock nhưng không throw: dòng không đủ hàng thì bỏ qua, các dòng khác vẫn trừ
+     * (dùng cho writer flash sale, mỗi lô chạy trong transaction riêng)
+     *
+     * @return các productId đã trừ được stock
      */
     @Transactional
-    public void restoreStock(Long productId, int quantity) {
-        Product product = productRepository.findByIdWithLock(productId)
-                .orElseThrow(() -> new ResourceNotFoundException("Product", "id", productId));
+    public Set<Long> tryReserveStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return Set.of();
+        }
+        Map<Long, Integer> sorted = new TreeMap<>(quantities);
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> args = new ArrayList<>(sorted.size());
+        sorted.forEach((productId, quantity) -> args.add(new Object[]{quantity, quantity, now, productId, quantity}));
+
+        int[] counts = jdbcTemplate.batchUpdate(RESERVE_STOCK_SQL, args);
+
+        Set<Long> reserved = new HashSet<>();
+        int i = 0;
+        for (Long productId : sorted.keySet()) {
+            if (counts[i++] > 0) {
+                reserved.add(productId);
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * Hoàn stock cho nhiều sản phẩm trong 1 JDBC batch (productId -> số lượng)
+     * Cache/index sản phẩm cập nhật qua listener ORDER_CANCELLED của outbox
+     */
+    @Transactional
+    public void releaseStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> sorted = new TreeMap<>(quantities);
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> args = new ArrayList<>(sorted.size());
+        sorted.forEach((productId, quantity) -> args.add(new Object[]{quantity, quantity, now, productId}));
         
-        product.setStock(product.getStock() + quantity);
-        product.setSoldCount(Math.max(0, product.getSoldCount() - quantity));
+        int[] counts = jdbcTemplate.batchUpdate(RELEASE_STOCK_SQL, args);
         
-        log.info("Restored stock for product: {}, quantity: {}, new stock: {}", 
-                productId, quantity, product.getStock());
+        int i = 0;
+        for (Long productId : sorted.keySet()) {
+            if (counts[i++] == 0) {
+                log.warn("Cannot restore stock, product not found: {}", productId);
+            }
+        }
         
-        productRepository.save(product);
+        log.info("Restored stock for {} products: {}", sorted.size(), sorted);
+    }
+    
+    /**
+     * Đọc stock/soldCount hiện tại và cập nhật cache, search/suggest index, leaderboard
+     * (gọi sau khi transaction trừ/hoàn stock đã commit)
+     */
+    public void refreshStockStats(Collection<Long> productIds) {
+        if (!productIds.isEmpty()) {
+            stockChanged(productIds);
+        }
+    }
+    
+    /**
+     * UPDATE không trừ được dòng nào => đọc lại để báo lỗi cụ thể
+     */
+    private RuntimeException stockFailure(Long productId, int quantity) {
+        List<Object[]> rows = jdbcTemplate.query(
+                "SELECT name, stock, is_active FROM products WHERE id = ?",
+                (rs, rowNum) -> new Object[]{rs.getString(1), rs.getInt(2), rs.getBoolean(3)},
+                productId);
+        if (rows.isEmpty()) {
+            return new ResourceNotFoundException("Product", "id", productId);
+        }
+        String name = (String) rows.get(0)[0];
+        int stock = (Integer) rows.get(0)[1];
+        if (!(Boolean) rows.get(0)[2]) {
+            return new BadRequestException(String.format("Sản phẩm '%s' đã ngừng bán", name));
+        }
+        log.warn("Out of stock for product: {}, requested: {}, available: {}", productId, quantity, stock);
+        return new OutOfStockException(name, quantity, stock);
+    }
+    
+    /**
+     * Stock/soldCount đổi bằng UPDATE trực tiếp: đọc giá trị mới trong transaction,
+     * cập nhật cache + index sau khi commit
+     */
+    private void stockChanged(Collection<Long> productIds) {
+        List<ProductLeaderboard.Change> changes = productRepository.findStockChanges(productIds).stream()
+                .map(row -> ProductLeaderboard.Change.of((Long) row[0], (Long) row[1], (Integer) row[2],
+                        (LocalDateTime) row[3], Boolean.TRUE.equals(row[4])))
+                .toList();
+        afterCommit(() -> {
+            for (ProductLeaderboard.Change change : changes) {
+                Long productId = change.productId;
+                productCache.invalidate(productId);
+                productSearchIndex.updateStats(productId, change.soldCount, null);
+                productSuggestIndex.updateSoldCount(productId, change.soldCount);
+                productLeaderboard.productChanged(change);
+            }
+        });
     }
     
     /**
@@ -152,6 +384,12 @@ public class ProductService {
         
         product.setRating(newRating);
         productRepository.save(product);
+        ProductLeaderboard.Change change = ProductLeaderboard.Change.of(product);
+        afterCommit(() -> {
+            productCache.invalidate(productId);
+            productSearchIndex.updateStats(productId, null, newRating);
+            productLeaderboard.productChanged(change);
+        });
         
         log.info("Updated rating for product: {} to {}", productId, newRating);
     }
@@ -159,7 +397,7 @@ public class ProductService {
     /**
      * Tìm kiếm với filters nâng cao
      */
-    public Page<Product> searchProductsWithFilters(
+    public Page<ProductResponse> searchProductsWithFilters(
             String keyword,
             Long categoryId,
             BigDecimal minPrice,
@@ -170,7 +408,65 @@ public class ProductService {
         log.info("Searching products with filters - keyword: {}, categoryId: {}, price: {}-{}, minRating: {}", 
                 keyword, categoryId, minPrice, maxPrice, minRating);
         
-        return productRepository.searchWithFilters(keyword, categoryId, minPrice, maxPrice, minRating, pageable);
+        if (useSearchIndex(keyword)) {
+            return toPage(productSearchIndex.search(keyword, categoryId, minPrice, maxPrice, minRating, pageable), pageable);
+        }
+        return productRepository.searchResponsesWithFilters(keyword, categoryId, minPrice, maxPrice, minRating, pageable);
+    }
+    
+    /**
+     * Facet counts cho tìm kiếm nâng cao, tính từ search index (không query GROUP BY)
+     * Trả về null nếu index chưa sẵn sàng.
+     */
+    public ProductSearchResponse.SearchFacets getSearchFacets(
+            String keyword,
+            Long categoryId,
+            BigDecimal minPrice,
+            BigDecimal maxPrice,
+            Double minRating) {
+        
+        if (!inMemorySearchEnabled || !productSearchIndex.isReady()) {
+            return null;
+        }
+        
+        ProductSearchIndex.FacetCounts counts = productSearchIndex.facets(keyword, categoryId, minPrice, maxPrice, minRating);
+        
+        Map<Long, String> categoryNames = categoryService.getAllCategories().stream()
+                .collect(Collectors.toMap(Category::getId, Category::getName));
+        List<ProductSearchResponse.CategoryFacet> categories = counts.getCategoryCounts().entrySet().stream()
+                .map(e -> ProductSearchResponse.CategoryFacet.builder()
+                        .categoryId(e.getKey())
+                        .categoryName(categoryNames.get(e.getKey()))
+                        .count(e.getValue())
+                        .build())
+                .sorted(Comparator.comparing(ProductSearchResponse.CategoryFacet::getCount).reversed())
+                .toList();
+        
+        double[] bounds = ProductSearchIndex.PRICE_BUCKET_BOUNDS;
+        List<ProductSearchResponse.PriceFacet> priceRanges = new ArrayList<>();
+        for (int i = 0; i <= bounds.length; i++) {
+            priceRanges.add(ProductSearchResponse.PriceFacet.builder()
+                    .minPrice(i == 0 ? BigDecimal.ZERO : BigDecimal.valueOf((long) bounds[i - 1]))
+                    .maxPrice(i < bounds.length ? BigDecimal.valueOf((long) bounds[i]) : null)
+                    .count(counts.getPriceCounts()[i])
+                    .build());
+        }
+        
+        double[] thresholds = ProductSearchIndex.RATING_THRESHOLDS;
+        List<ProductSearchResponse.RatingFacet> ratings = new ArrayList<>();
+        for (int i = 0; i < thresholds.length; i++) {
+            ratings.add(ProductSearchResponse.RatingFacet.builder()
+                    .minRating(thresholds[i])
+                    .count(counts.getRatingCounts()[i])
+                    .build());
+        }
+        
+        return ProductSearchResponse.SearchFacets.builder()
+                .total(counts.getTotal())
+                .categories(categories)
+                .priceRanges(priceRanges)
+                .ratings(ratings)
+                .build();
     }
     
     /**
@@ -186,6 +482,43 @@ public class ProductService {
         return productRepository.findWithFilters(category, minPrice, maxPrice, minRating, pageable);
     }
     
+    private boolean useSearchIndex(String keyword) {
+        return inMemorySearchEnabled && productSearchIndex.isReady()
+                && keyword != null && !keyword.isBlank();
+    }
+    
+    /**
+     * Nạp các product theo thứ tự id trả về từ search index
+     */
+    private Page<ProductResponse> toPage(ProductSearchIndex.SearchResult result, Pageable pageable) {
+        if (result.getIds().isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, result.getTotal());
+        }
+        Map<Long, ProductResponse> byId = productRepository.findActiveResponsesByIdIn(result.getIds()).stream()
+                .collect(Collectors.toMap(ProductResponse::getId, Function.identity()));
+        List<ProductResponse> products = result.getIds().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return new PageImpl<>(products, pageable, result.getTotal());
+    }
+    
+    /**
+     * Chạy action sau khi transaction commit (chạy ngay nếu không có transaction)
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
     // Giữ lại method cũ để backward compatible nhưng đánh dấu deprecated
     @Deprecated
     @Transactional
@@ -0,0 +1,575 @@
+package havudong.baocao.service;
+
+import havudong.baocao.dto.SuggestionResponse;
+import havudong.baocao.entity.Category;
+import havudong.baocao.entity.Product;
+import havudong.baocao.repository.ProductRepository;
+import havudong.baocao.repository.UserBehaviorRepository;
+import havudong.baocao.util.VietnameseTextUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static havudong.baocao.constant.RecommendationConstants.BEHAVIOR_ANALYSIS_DAYS;
+
+/**
+ * Gợi ý từ khóa (typeahead) cho ô tìm kiếm
+ *
+ * - Nguồn: tên sản phẩm active, tên category, các từ khóa SEARCH phổ biến (UserBehavior)
+ * - Key = văn bản đã bỏ dấu, tính từ đầu chuỗi và từ từ thứ 2, thứ 3 ("khoac" khớp "Áo khoác")
+ * - Base: mảng key đã sắp xếp (lưu dạng entry + offset, không copy chuỗi) + segment tree
+ *   argmax theo trọng số => lấy top-k trong khoảng tiền tố với O(k log n)
+ * - Thay đổi từ ProductService: cập nhật trọng số tại chỗ hoặc ghi vào delta nhỏ,
+ *   định kỳ build lại để gộp delta và làm mới từ khóa phổ biến
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSuggestIndex {
+
+    private static final int LOAD_BATCH_SIZE = 5000;
+    private static final int MAX_KEYS_PER_ENTRY = 3;
+    private static final int POPULAR_QUERY_LIMIT = 5000;
+    private static final int MAX_LIMIT = 20;
+    private static final double CATEGORY_BOOST = 3.0;
+    private static final double QUERY_BOOST = 2.0;
+
+    static final String TYPE_PRODUCT = "PRODUCT";
+    static final String TYPE_CATEGORY = "CATEGORY";
+    static final String TYPE_QUERY = "QUERY";
+
+    private final ProductRepository productRepository;
+    private final CategoryService categoryService;
+    private final UserBehaviorRepository userBehaviorRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Các field dưới đây được bảo vệ bởi lock
+    private SuggestState state = new SuggestState(List.of());
+    private boolean rebuilding;
+    private final Map<Long, ProductChange> pendingChanges = new LinkedHashMap<>();
+
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread.ofVirtual().name("product-suggest-loader").start(this::rebuild);
+    }
+
+    /**
+     * Build lại định kỳ: gộp delta, cập nhật category và từ khóa phổ biến
+     */
+    @Scheduled(fixedDelayString = "${app.suggest.rebuild-interval-ms:600000}",
+               initialDelayString = "${app.suggest.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Gợi ý theo tiền tố q (không phân biệt dấu), sắp xếp theo trọng số giảm dần
+     */
+    public List<SuggestionResponse> suggest(String q, int limit) {
+        String prefix = normalize(q);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        int max = Math.clamp(limit, 1, MAX_LIMIT);
+
+        lock.readLock().lock();
+        try {
+            return state.suggest(prefix, max);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Thêm/cập nhật sản phẩm (inactive = gỡ khỏi gợi ý)
+     */
+    public void upsert(Product product) {
+        apply(new ProductChange(product.getId(), product.getName(), product.getSoldCount(),
+                Boolean.TRUE.equals(product.getIsActive())));
+    }
+
+    public void removeProduct(Long productId) {
+        apply(new ProductChange(productId, null, null, false));
+    }
+
+    /**
+     * Chỉ cập nhật trọng số theo soldCount (không đổi tên)
+     */
+    public void updateSoldCount(Long productId, Integer soldCount) {
+        lock.writeLock().lock();
+        try {
+            state.updateProductWeight(productId, productWeight(soldCount));
+            ProductChange pending = pendingChanges.get(productId);
+            if (rebuilding && pending != null && pending.active) {
+                pendingChanges.put(productId, new ProductChange(productId, pending.name, soldCount, true));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(ProductChange change) {
+        lock.writeLock().lock();
+        try {
+            state.applyProduct(change);
+            if (rebuilding) {
+                pendingChanges.remove(change.productId);
+                pendingChanges.put(change.productId, change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build lại toàn bộ từ database, swap khi xong và áp dụng các thay đổi xảy ra trong lúc build
+     */
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                return;
+            }
+            rebuilding = true;
+            pendingChanges.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            List<Entry> entries = new ArrayList<>();
+
+            long afterId = 0L;
+            while (true) {
+                List<Object[]> rows = productRepository.findSuggestDocuments(afterId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (Object[] row : rows) {
+                    Entry entry = Entry.of(TYPE_PRODUCT, (Long) row[0], (String) row[1], productWeight((Integer) row[2]));
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+                if (rows.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                afterId = (Long) rows.get(rows.size() - 1)[0];
+            }
+
+            Map<Long, Long> productCounts = new HashMap<>();
+            for (Object[] row : productRepository.countActiveByCategory()) {
+                productCounts.put((Long) row[0], (Long) row[1]);
+            }
+            for (Category category : categoryService.getAllCategories()) {
+                double weight = CATEGORY_BOOST + Math.log1p(productCounts.getOrDefault(category.getId(), 0L));
+                Entry entry = Entry.of(TYPE_CATEGORY, category.getId(), category.getName(), weight);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+
+            // Gộp các biến thể của cùng 1 từ khóa (hoa/thường, có dấu/không dấu)
+            LocalDateTime since = LocalDateTime.now().minusDays(BEHAVIOR_ANALYSIS_DAYS);
+            Map<String, Entry> queries = new LinkedHashMap<>();
+            Map<String, Long> queryCounts = new HashMap<>();
+            for (Object[] row : userBehaviorRepository.findPopularSearchQueries(since, PageRequest.of(0, POPULAR_QUERY_LIMIT))) {
+                Entry entry = Entry.of(TYPE_QUERY, null, ((String) row[0]).trim(), 0);
+                if (entry != null) {
+                    queries.putIfAbsent(entry.folded, entry);
+                    queryCounts.merge(entry.folded, (Long) row[1], Long::sum);
+                }
+            }
+            queries.forEach((folded, entry) -> {
+                entry.weight = QUERY_BOOST + 2 * Math.log1p(queryCounts.get(folded));
+                entries.add(entry);
+            });
+
+            SuggestState fresh = new SuggestState(entries);
+
+            lock.writeLock().lock();
+            try {
+                pendingChanges.values().forEach(fresh::applyProduct);
+                pendingChanges.clear();
+                state = fresh;
+                ready = true;
+            } finally {
+                rebuilding = false;
+                lock.writeLock().unlock();
+            }
+
+            log.info("Product suggest index built: {} entries ({} popular queries) in {}ms",
+                    entries.size(), queries.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("Failed to build product suggest index: {}", e.getMessage(), e);
+            lock.writeLock().lock();
+            try {
+                rebuilding = false;
+                pendingChanges.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static double productWeight(Integer soldCount) {
+        return Math.log1p(soldCount != null ? Math.max(soldCount, 0) : 0);
+    }
+
+    /**
+     * Bỏ dấu, chữ thường, gộp khoảng trắng/ký tự đặc biệt thành 1 dấu cách
+     */
+    private static String normalize(String text) {
+        return String.join(" ", VietnameseTextUtil.tokenize(text));
+    }
+
+    // ============ DATA STRUCTURES ============
+
+    private static final class ProductChange {
+        final Long productId;
+        final String name;
+        final Integer soldCount;
+        final boolean active;
+
+        ProductChange(Long productId, String name, Integer soldCount, boolean active) {
+            this.productId = productId;
+            this.name = name;
+            this.soldCount = soldCount;
+            this.active = active;
+        }
+    }
+
+    private static final class Entry {
+        final String type;
+        final Long refId;
+        final String text;
+        final String folded;
+        double weight;
+        boolean deleted;
+
+        private Entry(String type, Long refId, String text, String folded, double weight) {
+            this.type = type;
+            this.refId = refId;
+            this.text = text;
+            this.folded = folded;
+            this.weight = weight;
+        }
+
+        static Entry of(String type, Long refId, String text, double weight) {
+            String folded = normalize(text);
+            return folded.isEmpty() ? null : new Entry(type, refId, text, folded, weight);
+        }
+
+        double effectiveWeight() {
+            return deleted ? Double.NEGATIVE_INFINITY : weight;
+        }
+
+        /**
+         * Vị trí bắt đầu của các key: đầu chuỗi và đầu các từ tiếp theo
+         */
+        int[] keyOffsets() {
+            int[] offsets = new int[MAX_KEYS_PER_ENTRY];
+            int count = 1;
+            for (int i = 0; i < folded.length() && count < MAX_KEYS_PER_ENTRY; i++) {
+                if (folded.charAt(i) == ' ') {
+                    offsets[count++] = i + 1;
+                }
+            }
+            return Arrays.copyOf(offsets, count);
+        }
+
+        SuggestionResponse toResponse() {
+            return SuggestionResponse.builder()
+                    .text(text)
+                    .type(type)
+                    .id(refId)
+                    .build();
+        }
+    }
+
+    /**
+     * Base (mảng key sắp xếp + segment tree) và delta (TreeMap) cho các thay đổi sau khi build
+     */
+    private static final class SuggestState {
+        private final List<Entry> entries;
+        private final int baseEntryCount;
+        private final Map<Long, Integer> productEntries = new HashMap<>();
+
+        // key i = entries[keyEntry[i]].folded từ vị trí keyOffset[i]
+        private final int[] keyEntry;
+        private final int[] keyOffset;
+        // Vị trí các key của từng entry base (-1 = không có), để cập nhật trọng số tại chỗ
+        private final int[] entryKeyPositions;
+        // Segment tree: mỗi node lưu index key có trọng số lớn nhất trong đoạn
+        private final int[] tree;
+        private final int leafBase;
+
+        private final TreeMap<String, List<Integer>> deltaKeys = new TreeMap<>();
+
+        SuggestState(List<Entry> baseEntries) {
+            this.entries = new ArrayList<>(baseEntries);
+            this.baseEntryCount = baseEntries.size();
+
+            int keyCount = 0;
+            int[][] offsets = new int[baseEntryCount][];
+            for (int e = 0; e < baseEntryCount; e++) {
+                Entry entry = entries.get(e);
+                offsets[e] = entry.keyOffsets();
+                keyCount += offsets[e].length;
+                if (TYPE_PRODUCT.equals(entry.type)) {
+                    productEntries.put(entry.refId, e);
+                }
+            }
+
+            Integer[] order = new Integer[keyCount];
+            int[] rawEntry = new int[keyCount];
+            int[] rawOffset = new int[keyCount];
+            int k = 0;
+            for (int e = 0; e < baseEntryCount; e++) {
+                for (int offset : offsets[e]) {
+                    rawEntry[k] = e;
+                    rawOffset[k] = offset;
+                    order[k] = k;
+                    k++;
+                }
+            }
+            Arrays.sort(order, (a, b) -> compareKeys(
+                    entries.get(rawEntry[a]).folded, rawOffset[a], entries.get(rawEntry[b]).folded, rawOffset[b]));
+
+            keyEntry = new int[keyCount];
+            keyOffset = new int[keyCount];
+            entryKeyPositions = new int[baseEntryCount * MAX_KEYS_PER_ENTRY];
+            Arrays.fill(entryKeyPositions, -1);
+            for (int i = 0; i < keyCount; i++) {
+                keyEntry[i] = rawEntry[order[i]];
+                keyOffset[i] = rawOffset[order[i]];
+                int slot = keyEntry[i] * MAX_KEYS_PER_ENTRY;
+                while (entryKeyPositions[slot] != -1) {
+                    slot++;
+                }
+                entryKeyPositions[slot] = i;
+            }
+
+            int size = 1;
+            while (size < Math.max(keyCount, 1)) {
+                size <<= 1;
+            }
+            leafBase = size;
+            tree = new int[size * 2];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < keyCount; i++) {
+                tree[size + i] = i;
+            }
+            for (int node = size - 1; node >= 1; node--) {
+                tree[node] = better(tree[node * 2], tree[node * 2 + 1]);
+            }
+        }
+
+        List<SuggestionResponse> suggest(String prefix, int limit) {
+            List<Entry> candidates = new ArrayList<>();
+            Set<Integer> seen = new HashSet<>();
+
+            // Base: lấy dần key có trọng số lớn nhất trong khoảng [lo, hi)
+            int lo = lowerBound(prefix, false);
+            int hi = lowerBound(prefix, true);
+            PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                    Comparator.<int[]>comparingDouble(r -> keyWeight(r[2])).reversed());
+            pushRange(ranges, lo, hi);
+            while (!ranges.isEmpty() && seen.size() < limit * 2) {
+                int[] range = ranges.poll();
+                int best = range[2];
+                if (seen.add(keyEntry[best])) {
+                    candidates.add(entries.get(keyEntry[best]));
+                }
+                pushRange(ranges, range[0], best);
+                pushRange(ranges, best + 1, range[1]);
+            }
+
+            // Delta: số lượng nhỏ, duyệt trực tiếp
+            for (List<Integer> entryIds : deltaKeys.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                for (Integer entryId : entryIds) {
+                    Entry entry = entries.get(entryId);
+                    if (!entry.deleted && seen.add(entryId)) {
+                        candidates.add(entry);
+                    }
+                }
+            }
+
+            candidates.sort(Comparator.comparingDouble((Entry e) -> e.weight).reversed());
+            Set<String> texts = new HashSet<>();
+            List<SuggestionResponse> result = new ArrayList<>(limit);
+            for (Entry entry : candidates) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (texts.add(entry.folded)) {
+                    result.add(entry.toResponse());
+                }
+            }
+            return result;
+        }
+
+        void applyProduct(ProductChange change) {
+            Integer existing = productEntries.get(change.productId);
+            if (!change.active) {
+                if (existing != null) {
+                    productEntries.remove(change.productId);
+                    markDeleted(existing);
+                }
+                return;
+            }
+
+            Entry entry = Entry.of(TYPE_PRODUCT, change.productId, change.name, productWeight(change.soldCount));
+            if (entry == null) {
+                return;
+            }
+            if (existing != null && entries.get(existing).folded.equals(entry.folded)) {
+                setWeight(existing, entry.weight);
+                return;
+            }
+            if (existing != null) {
+                markDeleted(existing);
+            }
+
+            int entryId = entries.size();
+            entries.add(entry);
+            productEntries.put(change.productId, entryId);
+            for (int offset : entry.keyOffsets()) {
+                deltaKeys.computeIfAbsent(entry.folded.substring(offset), key -> new ArrayList<>(1)).add(entryId);
+            }
+        }
+
+        void updateProductWeight(Long productId, double weight) {
+            Integer entryId = productEntries.get(productId);
+            if (entryId != null) {
+                setWeight(entryId, weight);
+            }
+        }
+
+        private void markDeleted(int entryId) {
+            entries.get(entryId).deleted = true;
+            refreshKeys(entryId);
+        }
+
+        private void setWeight(int entryId, double weight) {
+            entries.get(entryId).weight = weight;
+            refreshKeys(entryId);
+        }
+
+        private void refreshKeys(int entryId) {
+            if (entryId >= baseEntryCount) {
+                return;
+            }
+            for (int slot = entryId * MAX_KEYS_PER_ENTRY; slot < (entryId + 1) * MAX_KEYS_PER_ENTRY; slot++) {
+                int position = entryKeyPositions[slot];
+                if (position < 0) {
+                    break;
+                }
+                for (int node = (leafBase + position) / 2; node >= 1; node /= 2) {
+                    tree[node] = better(tree[node * 2], tree[node * 2 + 1]);
+                }
+            }
+        }
+
+        private void pushRange(PriorityQueue<int[]> ranges, int from, int to) {
+            if (from >= to) {
+                return;
+            }
+            int best = argMax(from, to);
+            if (best >= 0 && keyWeight(best) > Double.NEGATIVE_INFINITY) {
+                ranges.add(new int[]{from, to, best});
+            }
+        }
+
+        /**
+         * Key có trọng số lớn nhất trong [from, to)
+         */
+        private int argMax(int from, int to) {
+            int best = -1;
+            for (int l = from + leafBase, r = to + leafBase; l < r; l /= 2, r /= 2) {
+                if ((l & 1) == 1) {
+                    best = better(best, tree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    best = better(best, tree[--r]);
+                }
+            }
+            return best;
+        }
+
+        private int better(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return keyWeight(b) > keyWeight(a) ? b : a;
+        }
+
+        private double keyWeight(int key) {
+            return entries.get(keyEntry[key]).effectiveWeight();
+        }
+
+        /**
+         * Key đầu tiên >= prefix (afterPrefix = false) hoặc > mọi key bắt đầu bằng prefix
+         */
+        private int lowerBound(String prefix, boolean afterPrefix) {
+            int lo = 0;
+            int hi = keyEntry.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = comparePrefix(entries.get(keyEntry[mid]).folded, keyOffset[mid], prefix);
+                if (cmp < 0 || (afterPrefix && cmp == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * So sánh key với prefix: 0 nếu key bắt đầu bằng prefix
+         */
+        private static int comparePrefix(String text, int offset, String prefix) {
+            int length = Math.min(text.length() - offset, prefix.length());
+            for (int i = 0; i < length; i++) {
+                char a = text.charAt(offset + i);
+                char b = prefix.charAt(i);
+                if (a != b) {
+                    return a < b ? -1 : 1;
+                }
+            }
+            return text.length() - offset >= prefix.length() ? 0 : -1;
+        }
+
+        private static int compareKeys(String a, int offsetA, String b, int offsetB) {
+            int lengthA = a.length() - offsetA;
+            int lengthB = b.length() - offsetB;
+            int length = Math.min(lengthA, lengthB);
+            for (int i = 0; i < length; i++) {
+                char ca = a.charAt(offsetA + i);
+                char cb = b.charAt(offsetB + i);
+                if (ca != cb) {
+                    return ca - cb;
+                }
+            }
+            return lengthA - lengthB;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package havudong.baocao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Render ảnh PNG mã QR trong ứng dụng, cache theo (số tiền, mã giao dịch)
+ *
+ * - Mỗi QR chỉ render 1 lần lúc tạo (PaymentService), các lần tải ảnh sau lấy từ cache
+ * - Giới hạn theo tổng dung lượng ảnh (app.payment.qr.image-cache-mb), hết hạn sau khi QR hết hiệu lực
+ */
+@Service
+@Slf4j
+public class QrImageService {
+
+    private static final Map<EncodeHintType, Object> HINTS = Map.of(
+            EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M,
+            EncodeHintType.CHARACTER_SET, "UTF-8",
+            EncodeHintType.MARGIN, 2);
+
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Value("${app.payment.qr.image-size:360}")
+    private int imageSize;
+
+    @Value("${app.payment.qr.image-cache-mb:64}")
+    private long imageCacheMb;
+
+    private Cache<String, byte[]> images;
+
+    @PostConstruct
+    void init() {
+        images = Caffeine.newBuilder()
+                .maximumWeight(imageCacheMb * 1024 * 1024)
+                .weigher((String key, byte[] png) -> png.length)
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .build();
+    }
+
+    /**
+     * Ảnh đã render (null nếu chưa có trong cache)
+     */
+    public byte[] getCached(long amount, String transactionId) {
+        return images.getIfPresent(key(amount, transactionId));
+    }
+
+    /**
+     * Render payload thành PNG (hoặc lấy từ cache nếu đã có)
+     */
+    public byte[] render(long amount, String transactionId, String payload) {
+        return images.get(key(amount, transactionId), key -> toPng(payload));
+    }
+
+    private byte[] toPng(String payload) {
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, imageSize, imageSize, HINTS);
+        } catch (WriterException e) {
+            throw new IllegalStateException("Lỗi tạo mã QR", e);
+        }
+
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = matrix.get(x, y) ? BLACK : WHITE;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.debug("Rendered QR image {}x{} ({} bytes)", width, height, out.size());
+        return out.toByteArray();
+    }
+
+    private static String key(long amount, String transactionId) {
+        return amount + ":" + transactionId;
+    }
+}
@@ -29,8 +29,11 @@ public class RecommendationService {
     private final OrderRepository orderRepository;
     private final WishlistRepository wishlistRepository;
     private final UserBehaviorRepository userBehaviorRepository;
+    private final UserRepository userRepository;
     private final UserPreferenceRepository userPreferenceRepository;
     private final ProductMapper productMapper;
+    private final ProductLeaderboard productLeaderboard;
+    private final CategoryService categoryService;
     
     /**
      * Gợi ý cá nhân hóa dựa trên hành vi người dùng
@@ -71,8 +74,9 @@ public class RecommendationService {
                 : null;
         
         for (Long categoryId : topCategoryIds) {
-            Category category = new Category();
-            category.setId(categoryId);
+            // Category lấy từ snapshot; bỏ qua category đã bị xóa
+            Category category = categoryService.getCategoryById(categoryId).orElse(null);
+            if (category == null) continue;
             
             List<Product> products;
             
@@ -178,30 +182,21 @@ public class RecommendationService {
     
     /**
      * Sản phẩm trending (nhiều tương tác gần đây)
+     * Mặc định (TRENDING_DAYS, limit <= top-k) đọc từ snapshot của ProductLeaderboard
      */
     @Transactional(readOnly = true)
     public List<ProductResponse> getTrendingProducts(int limit, int days) {
-        LocalDateTime since = LocalDateTime.now().minusDays(days);
-        
-        List<UserBehavior> behaviors = userBehaviorRepository.findByTimestampAfter(since);
-        
-        // Tính trending score dùng ACTION_WEIGHTS chung
-        Map<Long, Integer> trendingScores = new HashMap<>();
-        
-        for (UserBehavior behavior : behaviors) {
-            if (behavior.getProduct() == null) continue;
-            
-            Long productId = behavior.getProduct().getId();
-            int weight = getWeight(behavior.getAction());
-            trendingScores.merge(productId, weight, Integer::sum);
+        if (days == TRENDING_DAYS && limit <= productLeaderboard.getTopK()) {
+            List<ProductResponse> cached = productLeaderboard.getTrending(limit);
+            if (cached != null) {
+                return cached;
+            }
         }
         
-        // Lấy top N
-        List<Long> topProductIds = trendingScores.entrySet().stream()
-                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
-                .limit(limit)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        LocalDateTime since = LocalDateTime.now().minusDays(days);
+        
+        // Tính trending score dùng ACTION_WEIGHTS chung (GROUP BY trong database)
+        List<Long> topProductIds = productLeaderboard.trendingProductIds(since, limit);
         
         if (topProductIds.isEmpty()) {
             // Fallback: lấy sản phẩm bán chạy nhất
@@ -211,9 +206,11 @@ public class RecommendationService {
                     .collect(Collectors.toList());
         }
         
-        return productRepository.findAllById(topProductIds).stream()
-                .filter(Product::getIsActive)
-                .map(productMapper::toResponse)
+        Map<Long, ProductResponse> byId = productRepository.findActiveResponsesByIdIn(topProductIds).stream()
+                .collect(Collectors.toMap(ProductResponse::getId, r -> r));
+        return topProductIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
     
@@ -270,6 +267,36 @@ public class RecommendationService {
         log.debug("Tracked behavior: user={}, action={}, productId={}", user.getId(), action, productId);
     }
     
+    /**
+     * Lưu hành vi PURCHASE cho các sản phẩm của 1 đơn hàng (listener ORDER_CREATED của outbox)
+     * Giao lại cùng sự kiện (cùng occurredAt) => bỏ qua; các INSERT được Hibernate gom batch
+     */
+    @Transactional
+    public void trackPurchases(Long userId, Collection<Long> productIds, LocalDateTime occurredAt) {
+        if (productIds.isEmpty() || userBehaviorRepository.existsByUserIdAndActionAndTimestamp(userId, "PURCHASE", occurredAt)) {
+            return;
+        }
+        User user = userRepository.findById(userId).orElse(null);
+        if (user == null) {
+            return;
+        }
+        
+        String province = extractProvince(user.getAddress());
+        List<UserBehavior> behaviors = new ArrayList<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            UserBehavior behavior = new UserBehavior();
+            behavior.setUser(user);
+            behavior.setAction("PURCHASE");
+            behavior.setProduct(product);
+            behavior.setCategory(product.getCategory());
+            behavior.setProvince(province);
+            behavior.setTimestamp(occurredAt);
+            behaviors.add(behavior);
+        }
+        userBehaviorRepository.saveAll(behaviors);
+        log.debug("Tracked {} purchases for user {}", behaviors.size(), userId);
+    }
+    
     /**
      * Tính điểm yêu thích category dựa trên hành vi
      */
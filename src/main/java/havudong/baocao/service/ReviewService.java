@@ -1,5 +1,6 @@
 package havudong.baocao.service;
 
+import havudong.baocao.dto.CursorPageResponse;
 import havudong.baocao.dto.ReviewRequest;
 import havudong.baocao.dto.ReviewResponse;
 import havudong.baocao.entity.Order;
@@ -13,10 +14,12 @@ import havudong.baocao.exception.ResourceNotFoundException;
 import havudong.baocao.repository.OrderRepository;
 import havudong.baocao.repository.ProductRepository;
 import havudong.baocao.repository.ReviewRepository;
+import havudong.baocao.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,12 +28,16 @@ import java.math.RoundingMode;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ReviewService {
     
+    // Index (product_id, created_at, id) cho keyset pagination
+    private static final Set<String> SCROLL_SORT_FIELDS = Set.of("createdAt");
+    
     private final ReviewRepository reviewRepository;
     private final ProductRepository productRepository;
     private final OrderRepository orderRepository;
@@ -98,6 +105,20 @@ public class ReviewService {
                 .map(this::toResponse);
     }
     
+    /**
+     * Lấy reviews của product theo cursor (mới nhất trước, không COUNT)
+     */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<ReviewResponse> scrollProductReviews(Long productId, String cursor, int size) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new ResourceNotFoundException("Product", "id", productId));
+        
+        Sort sort = CursorCodec.keysetSort("createdAt", Sort.Direction.DESC, SCROLL_SORT_FIELDS);
+        return CursorPageResponse.of(reviewRepository
+                .findByProduct(product, CursorCodec.decode(cursor, sort), sort, CursorCodec.limit(size))
+                .map(this::toResponse));
+    }
+    
     /**
      * Lấy thống kê rating của product
      */
@@ -0,0 +1,250 @@
+package havudong.baocao.service;
+
+import havudong.baocao.dto.VoucherRequest;
+import havudong.baocao.dto.VoucherResponse;
+import havudong.baocao.entity.Voucher;
+import havudong.baocao.entity.enums.DiscountType;
+import havudong.baocao.entity.enums.VoucherStatus;
+import havudong.baocao.exception.BadRequestException;
+import havudong.baocao.exception.DuplicateResourceException;
+import havudong.baocao.exception.ResourceNotFoundException;
+import havudong.baocao.mapper.VoucherMapper;
+import havudong.baocao.repository.VoucherRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Áp dụng voucher khi checkout, chịu tải lúc mở chiến dịch (hàng nghìn checkout cùng 1 mã)
+ *
+ * - Voucher đang/sắp chạy nằm trong 1 index bất biến theo code, đọc không chạm database
+ * - Mỗi voucher có bộ đếm lượt còn lại (atomic): hết lượt => từ chối ngay bằng CAS
+ * - Lượt dùng ghi xuống database bằng 1 UPDATE có điều kiện (used_quantity < total_quantity)
+ *   ở cuối transaction checkout, không SELECT ... FOR UPDATE
+ * - Index được build lại sau khi tạo/tắt voucher và định kỳ (đồng bộ lượt dùng từ node khác)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VoucherService {
+
+    private final VoucherRepository voucherRepository;
+    private final VoucherMapper voucherMapper;
+
+    private volatile Map<String, Entry> index;
+
+    @Transactional
+    public VoucherResponse createVoucher(VoucherRequest request) {
+        if (!request.getEndDate().isAfter(request.getStartDate())) {
+            throw new BadRequestException("Ngày kết thúc phải sau ngày bắt đầu");
+        }
+        if (request.getDiscountType() == DiscountType.PERCENTAGE
+                && request.getDiscountValue().compareTo(BigDecimal.valueOf(100)) > 0) {
+            throw new BadRequestException("Giảm theo % không được vượt quá 100");
+        }
+        Voucher voucher = voucherMapper.toEntity(request);
+        if (voucherRepository.existsByCode(voucher.getCode())) {
+            throw new DuplicateResourceException("Voucher", "code", voucher.getCode());
+        }
+
+        Voucher saved = voucherRepository.save(voucher);
+        afterCommit(this::reload);
+        log.info("Voucher created: {} ({} uses)", saved.getCode(), saved.getTotalQuantity());
+        return voucherMapper.toResponse(saved, saved.getTotalQuantity());
+    }
+
+    /**
+     * Tắt voucher trước hạn (checkout đang chạy với voucher này vẫn bị UPDATE có điều kiện chặn)
+     */
+    @Transactional
+    public void disableVoucher(Long id) {
+        Voucher voucher = voucherRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Voucher", "id", id));
+        voucher.setStatus(VoucherStatus.EXPIRED);
+        afterCommit(this::reload);
+        log.info("Voucher disabled: {}", voucher.getCode());
+    }
+
+    /**
+     * Voucher đang trong thời gian hiệu lực và còn lượt
+     */
+    public List<VoucherResponse> getAvailableVouchers() {
+        LocalDateTime now = LocalDateTime.now();
+        return index().values().stream()
+                .filter(entry -> entry.isOpen(now) && entry.remaining.get() > 0)
+                .sorted(Comparator.comparing(entry -> entry.voucher.getEndDate()))
+                .map(entry -> voucherMapper.toResponse(entry.voucher, entry.remaining.get()))
+                .toList();
+    }
+
+    /**
+     * Giữ 1 lượt dùng voucher cho lần checkout có tổng tiền hàng orderAmount và tính số tiền giảm
+     *
+     * Gọi trong transaction checkout: rollback => trả lượt lại bộ đếm.
+     * Bắt buộc gọi redeem() trước khi commit để ghi lượt dùng xuống database.
+     */
+    public Redemption reserve(String code, BigDecimal orderAmount) {
+        Entry entry = index().get(normalize(code));
+        LocalDateTime now = LocalDateTime.now();
+        if (entry == null || !entry.isOpen(now)) {
+            throw new BadRequestException("Voucher không tồn tại hoặc đã hết hạn");
+        }
+
+        Voucher voucher = entry.voucher;
+        if (voucher.getMinOrderAmount() != null && orderAmount.compareTo(voucher.getMinOrderAmount()) < 0) {
+            throw new BadRequestException(String.format(
+                    "Đơn hàng tối thiểu %s để dùng voucher %s",
+                    voucher.getMinOrderAmount().toPlainString(), voucher.getCode()));
+        }
+        if (!entry.tryAcquire()) {
+            throw new BadRequestException(String.format("Voucher %s đã hết lượt sử dụng", voucher.getCode()));
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // Database báo hết lượt (redeem thất bại) => không trả lượt, giữ bộ đếm = 0 tới lần reload
+                if (status != STATUS_COMMITTED && !entry.exhausted) {
+                    entry.remaining.incrementAndGet();
+                }
+            }
+        });
+
+        return new Redemption(entry, discount(voucher, orderAmount));
+    }
+
+    /**
+     * Ghi lượt dùng xuống database (UPDATE có điều kiện, giữ lock dòng voucher ngắn nhất có thể)
+     * Node khác đã dùng hết lượt / voucher vừa bị tắt => BadRequestException, checkout rollback
+     */
+    public void redeem(Redemption redemption) {
+        Entry entry = redemption.entry;
+        if (voucherRepository.incrementUsage(entry.voucher.getId(), LocalDateTime.now()) == 0) {
+            entry.exhausted = true;
+            entry.remaining.set(0);
+            throw new BadRequestException(String.format("Voucher %s đã hết lượt sử dụng", entry.voucher.getCode()));
+        }
+    }
+
+    /**
+     * Load lại voucher từ database, bộ đếm = total_quantity - used_quantity
+     * (lượt đang giữ trong các checkout chưa commit không tính => UPDATE có điều kiện vẫn chặn vượt)
+     */
+    @Scheduled(fixedDelayString = "${app.voucher.refresh-interval-ms:60000}",
+               initialDelayString = "${app.voucher.refresh-interval-ms:60000}")
+    public synchronized void reload() {
+        List<Voucher> vouchers = voucherRepository.findUsableVouchers(LocalDateTime.now());
+        Map<String, Entry> entries = new HashMap<>();
+        for (Voucher voucher : vouchers) {
+            entries.put(normalize(voucher.getCode()), new Entry(voucher));
+        }
+        index = Map.copyOf(entries);
+        log.debug("Voucher index reloaded: {} vouchers", entries.size());
+    }
+
+    private Map<String, Entry> index() {
+        Map<String, Entry> current = index;
+        if (current == null) {
+            synchronized (this) {
+                if (index == null) {
+                    reload();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Số tiền giảm (làm tròn đồng), không vượt quá maxDiscount và tổng tiền hàng
+     */
+    private static BigDecimal discount(Voucher voucher, BigDecimal orderAmount) {
+        BigDecimal discount = voucher.getDiscountType() == DiscountType.PERCENTAGE
+                ? orderAmount.multiply(voucher.getDiscountValue()).divide(BigDecimal.valueOf(100), 0, RoundingMode.HALF_UP)
+                : voucher.getDiscountValue().setScale(0, RoundingMode.HALF_UP);
+        if (voucher.getMaxDiscount() != null) {
+            discount = discount.min(voucher.getMaxDiscount());
+        }
+        return discount.min(orderAmount);
+    }
+
+    private static String normalize(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 1 lượt dùng voucher đã giữ trong bộ nhớ + số tiền giảm cho cả lần checkout
+     */
+    public static final class Redemption {
+
+        private final Entry entry;
+        @Getter
+        private final BigDecimal discountAmount;
+
+        private Redemption(Entry entry, BigDecimal discountAmount) {
+            this.entry = entry;
+            this.discountAmount = discountAmount;
+        }
+
+        public String getCode() {
+            return entry.voucher.getCode();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Voucher voucher;
+        private final AtomicInteger remaining;
+        // Đã hết lượt trong database: checkout đang giữ lượt rollback không cộng lại bộ đếm
+        private volatile boolean exhausted;
+
+        private Entry(Voucher voucher) {
+            this.voucher = voucher;
+            this.remaining = new AtomicInteger(voucher.getTotalQuantity() - voucher.getUsedQuantity());
+        }
+
+        private boolean isOpen(LocalDateTime now) {
+            return !now.isBefore(voucher.getStartDate()) && !now.isAfter(voucher.getEndDate());
+        }
+
+        private boolean tryAcquire() {
+            while (true) {
+                int current = remaining.get();
+                if (current <= 0 || exhausted) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package havudong.baocao.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Đọc CSV (RFC 4180) theo từng dòng, không load cả file vào bộ nhớ
+ * Hỗ trợ field trong dấu nháy kép (có dấu phẩy, xuống dòng, "" = "), CRLF, BOM đầu file
+ */
+public class CsvReader implements Closeable {
+
+    private final Reader reader;
+    private int peeked = -2;
+    private boolean started;
+    private int lineNumber = 1;
+    private int rowLineNumber;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Dòng kế tiếp (bỏ qua dòng trống), null khi hết file
+     */
+    public List<String> readRow() throws IOException {
+        while (true) {
+            if (peek() == -1) {
+                return null;
+            }
+            rowLineNumber = lineNumber;
+            List<String> row = parseRow();
+            if (row.size() > 1 || !row.get(0).isEmpty()) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Số dòng (trong file) bắt đầu của row vừa đọc - dùng để báo lỗi
+     */
+    public int getRowLineNumber() {
+        return rowLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private List<String> parseRow() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Dấu nháy kép chưa được đóng (dòng " + rowLineNumber + ")");
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        field.append('"');
+                        read();
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+                continue;
+            }
+
+            if (c == -1 || c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+            if (!started) {
+                started = true;
+                if (peeked == '\uFEFF') {
+                    peeked = reader.read();
+                }
+            }
+        }
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        if (c == '\n' || (c == '\r' && peek() != '\n')) {
+            lineNumber++;
+        }
+        return c;
+    }
+}
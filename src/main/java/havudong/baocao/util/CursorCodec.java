@@ -0,0 +1,117 @@
+package havudong.baocao.util;
+
+import havudong.baocao.exception.BadRequestException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Mã hóa/giải mã cursor cho keyset pagination
+ *
+ * Cursor là chuỗi base64url (client không cần hiểu nội dung) chứa giá trị sort key
+ * và id của phần tử cuối trang trước.
+ */
+public final class CursorCodec {
+
+    private static final String ENTRY_SEPARATOR = ";";
+    private static final String KEY_SEPARATOR = "=";
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private CursorCodec() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Sort cho keyset: chỉ cho phép các cột có index, luôn thêm id làm tiebreaker
+     */
+    public static Sort keysetSort(String sortBy, Sort.Direction direction, Set<String> allowedFields) {
+        if (!allowedFields.contains(sortBy)) {
+            throw new BadRequestException("Không hỗ trợ sắp xếp theo '" + sortBy + "'. Cho phép: " + allowedFields);
+        }
+        return Sort.by(direction, sortBy).and(Sort.by(direction, "id"));
+    }
+
+    /**
+     * Giới hạn kích thước trang trong khoảng [1, 100]
+     */
+    public static Limit limit(int size) {
+        return Limit.of(Math.clamp(size, 1, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Tạo cursor từ vị trí keyset của phần tử cuối trang
+     */
+    public static String encode(ScrollPosition position) {
+        if (!(position instanceof KeysetScrollPosition keyset) || keyset.isInitial()) {
+            return null;
+        }
+        String raw = keyset.getKeys().entrySet().stream()
+                .map(e -> e.getKey() + KEY_SEPARATOR + encodeValue(e.getValue()))
+                .collect(Collectors.joining(ENTRY_SEPARATOR));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Giải mã cursor, cursor rỗng = trang đầu tiên
+     * Cursor phải chứa đúng các field của sort (tránh dùng cursor của sortBy khác)
+     */
+    public static KeysetScrollPosition decode(String cursor, Sort sort) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            for (String entry : raw.split(ENTRY_SEPARATOR)) {
+                int separator = entry.indexOf(KEY_SEPARATOR);
+                keys.put(entry.substring(0, separator), decodeValue(entry.substring(separator + 1)));
+            }
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Cursor không hợp lệ");
+        }
+
+        Set<String> expected = sort.stream().map(Sort.Order::getProperty).collect(Collectors.toSet());
+        if (!keys.keySet().equals(expected)) {
+            throw new BadRequestException("Cursor không khớp với kiểu sắp xếp hiện tại");
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    private static String encodeValue(Object value) {
+        if (value instanceof LocalDateTime time) {
+            return "T" + time;
+        }
+        if (value instanceof BigDecimal decimal) {
+            return "D" + decimal.toPlainString();
+        }
+        if (value instanceof Integer number) {
+            return "I" + number;
+        }
+        if (value instanceof Long number) {
+            return "L" + number;
+        }
+        throw new IllegalStateException("Unsupported cursor value type: " + value);
+    }
+
+    private static Object decodeValue(String value) {
+        String body = value.substring(1);
+        return switch (value.charAt(0)) {
+            case 'T' -> LocalDateTime.parse(body);
+            case 'D' -> new BigDecimal(body);
+            case 'I' -> Integer.valueOf(body);
+            case 'L' -> Long.valueOf(body);
+            default -> throw new IllegalArgumentException("Unknown cursor value type: " + value);
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package havudong.baocao.util;
+
+import havudong.baocao.exception.BadRequestException;
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Định dạng file dùng cho import/export dữ liệu hàng loạt
+ */
+public enum DataFormat {
+    
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+    
+    private final String contentType;
+    private final String extension;
+    
+    DataFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+    
+    public MediaType getMediaType() {
+        return MediaType.parseMediaType(contentType + ";charset=UTF-8");
+    }
+    
+    public String getExtension() {
+        return extension;
+    }
+    
+    /**
+     * Ưu tiên tham số format, sau đó tới Content-Type
+     */
+    public static DataFormat resolve(String format, String contentType) {
+        String value = (format != null ? format : Objects.toString(contentType, "")).toLowerCase(Locale.ROOT);
+        if (value.contains("csv")) {
+            return CSV;
+        }
+        if (value.contains("ndjson") || value.contains("jsonl") || value.contains("json-seq")) {
+            return NDJSON;
+        }
+        throw new BadRequestException("Định dạng không hỗ trợ, dùng csv (text/csv) hoặc ndjson (application/x-ndjson)");
+    }
+}
@@ -0,0 +1,106 @@
+package havudong.baocao.util;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Conditional GET (ETag / Last-Modified) cho các API đọc catalog
+ *
+ * Controller trả ResponseEntity có ETag/Last-Modified, Spring MVC tự so với
+ * If-None-Match / If-Modified-Since và trả 304 trước khi serialize body
+ */
+public final class HttpCacheUtil {
+
+    // FNV-1a 64-bit offset basis
+    private static final long SEED = 0xcbf29ce484222325L;
+
+    private HttpCacheUtil() {
+    }
+
+    /**
+     * Response 200 kèm validator; lastModified = null với danh sách
+     * (max updatedAt không tăng khi có phần tử bị xóa khỏi danh sách nên chỉ dùng ETag)
+     */
+    public static <T> ResponseEntity<T> conditional(T body, String etag, LocalDateTime lastModified, int maxAgeSeconds) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic().mustRevalidate());
+        if (lastModified != null) {
+            builder.lastModified(lastModified.atZone(ZoneId.systemDefault()));
+        }
+        return builder.body(body);
+    }
+
+    /**
+     * ETag yếu cho 1 entity: id + updatedAt + các giá trị bổ sung
+     * (vd contentHash của dữ liệu nhúng từ entity khác, vì updatedAt của entity không đổi khi chúng đổi)
+     */
+    public static String entityEtag(Long id, LocalDateTime updatedAt, long... extras) {
+        long hash = mix(mixId(SEED, id), millis(updatedAt));
+        for (long extra : extras) {
+            hash = mix(hash, extra);
+        }
+        return weak(hash);
+    }
+
+    /**
+     * ETag yếu cho danh sách: hash (id, updatedAt) của từng phần tử theo thứ tự + các giá trị bổ sung
+     * (tổng số phần tử, số trang...) => đổi thứ tự, thêm/bớt hoặc sửa 1 phần tử đều đổi ETag
+     */
+    public static <T> String collectionEtag(Collection<T> items, Function<T, Long> id,
+                                            Function<T, LocalDateTime> updatedAt, long... extras) {
+        return collectionEtag(items, id, updatedAt, item -> 0L, extras);
+    }
+
+    /**
+     * Như trên, thêm itemExtra cho từng phần tử (vd contentHash dữ liệu nhúng của phần tử)
+     */
+    public static <T> String collectionEtag(Collection<T> items, Function<T, Long> id,
+                                            Function<T, LocalDateTime> updatedAt, Function<T, Long> itemExtra,
+                                            long... extras) {
+        long hash = SEED;
+        for (long extra : extras) {
+            hash = mix(hash, extra);
+        }
+        hash = mix(hash, items.size());
+        for (T item : items) {
+            hash = mix(mix(mixId(hash, id.apply(item)), millis(updatedAt.apply(item))), itemExtra.apply(item));
+        }
+        return weak(hash);
+    }
+
+    /**
+     * Hash nội dung các giá trị theo thứ tự (null => 0), dùng làm giá trị bổ sung cho ETag
+     */
+    public static long contentHash(Object... values) {
+        long hash = SEED;
+        for (Object value : values) {
+            hash = mix(hash, value != null ? value.hashCode() : 0L);
+        }
+        return hash;
+    }
+
+    private static long mixId(long hash, Long id) {
+        return mix(hash, id != null ? id : 0L);
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+
+    private static String weak(long hash) {
+        return "W/\"" + Long.toHexString(hash) + "\"";
+    }
+}
@@ -0,0 +1,71 @@
+package havudong.baocao.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tạo chuỗi payload VietQR (chuẩn EMVCo QR thanh toán của NAPAS) - app ngân hàng đọc được trực tiếp,
+ * không cần gọi img.vietqr.io
+ *
+ * Mỗi trường dạng TLV: ID (2 số) + độ dài (2 số) + giá trị, trường cuối 63 là CRC16-CCITT của toàn chuỗi
+ */
+public final class VietQrPayload {
+
+    // Định danh NAPAS cho chuyển khoản nhanh 24/7 qua QR
+    private static final String NAPAS_GUID = "A000000727";
+    private static final String SERVICE_TRANSFER_TO_ACCOUNT = "QRIBFTTA";
+    private static final String CURRENCY_VND = "704";
+    private static final String COUNTRY_VN = "VN";
+
+    private VietQrPayload() {
+        // Prevent instantiation
+    }
+
+    /**
+     * QR động (có số tiền) chuyển khoản tới tài khoản
+     *
+     * @param bankBin mã BIN ngân hàng (MB Bank: 970422)
+     * @param accountNumber số tài khoản nhận
+     * @param amount số tiền VND
+     * @param addInfo nội dung chuyển khoản (mã giao dịch)
+     */
+    public static String build(String bankBin, String accountNumber, long amount, String addInfo) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Số tiền phải lớn hơn 0");
+        }
+        String beneficiary = field("00", bankBin) + field("01", accountNumber);
+        String merchantAccount = field("00", NAPAS_GUID) + field("01", beneficiary)
+                + field("02", SERVICE_TRANSFER_TO_ACCOUNT);
+
+        StringBuilder payload = new StringBuilder(160)
+                .append(field("00", "01"))                 // Payload format version
+                .append(field("01", "12"))                 // QR động, dùng 1 lần
+                .append(field("38", merchantAccount))
+                .append(field("53", CURRENCY_VND))
+                .append(field("54", Long.toString(amount)))
+                .append(field("58", COUNTRY_VN))
+                .append(field("62", field("08", addInfo))) // Nội dung chuyển khoản
+                .append("6304");
+        return payload.append(crc16(payload.toString())).toString();
+    }
+
+    /**
+     * CRC16-CCITT (poly 0x1021, init 0xFFFF), 4 ký tự hex in hoa
+     */
+    static String crc16(String data) {
+        int crc = 0xFFFF;
+        for (byte b : data.getBytes(StandardCharsets.UTF_8)) {
+            crc ^= (b & 0xFF) << 8;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+        return String.format("%04X", crc & 0xFFFF);
+    }
+
+    private static String field(String id, String value) {
+        if (value == null || value.isEmpty() || value.length() > 99) {
+            throw new IllegalArgumentException("Giá trị trường " + id + " không hợp lệ");
+        }
+        return id + String.format("%02d", value.length()) + value;
+    }
+}
@@ -0,0 +1,51 @@
+package havudong.baocao.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa văn bản tiếng Việt cho tìm kiếm
+ *
+ * Bỏ dấu để "ao khoac" khớp với "áo khoác" (kể cả đ/Đ → d).
+ */
+public final class VietnameseTextUtil {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private VietnameseTextUtil() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Bỏ dấu và chuyển về chữ thường
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String replaced = text.replace('đ', 'd').replace('Đ', 'D');
+        String decomposed = Normalizer.normalize(replaced, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Tách văn bản thành các token đã bỏ dấu
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        if (folded.isEmpty()) {
+            return tokens;
+        }
+        for (String token : TOKEN_SEPARATOR.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,72 @@
+package havudong.baocao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvReaderTest {
+
+	@Test
+	void skipsBlankLines() throws IOException {
+		List<List<String>> rows = readAll("a,b\n\n\r\nc,d\n\n");
+
+		assertEquals(List.of(List.of("a", "b"), List.of("c", "d")), rows);
+	}
+
+	@Test
+	void keepsTrailingEmptyField() throws IOException {
+		List<List<String>> rows = readAll("a,b,\r\n,x,\n");
+
+		assertEquals(List.of(List.of("a", "b", ""), List.of("", "x", "")), rows);
+	}
+
+	@Test
+	void readsLastRowWithoutLineBreak() throws IOException {
+		assertEquals(List.of(List.of("a", "b"), List.of("c", "d")), readAll("a,b\r\nc,d"));
+	}
+
+	@Test
+	void readsQuotedFieldsAndTracksStartLine() throws IOException {
+		try (CsvReader reader = new CsvReader(new StringReader("\uFEFFid,note\n1,\"dòng 1\ndòng 2, \"\"trích\"\"\"\n2,ok\n"))) {
+			assertEquals(List.of("id", "note"), reader.readRow());
+			assertEquals(1, reader.getRowLineNumber());
+
+			assertEquals(List.of("1", "dòng 1\ndòng 2, \"trích\""), reader.readRow());
+			assertEquals(2, reader.getRowLineNumber());
+
+			assertEquals(List.of("2", "ok"), reader.readRow());
+			assertEquals(4, reader.getRowLineNumber());
+
+			assertNull(reader.readRow());
+		}
+	}
+
+	@Test
+	void rejectsUnterminatedQuote() throws IOException {
+		try (CsvReader reader = new CsvReader(new StringReader("a,b\n1,\"chưa đóng\n2,x\n"))) {
+			assertEquals(List.of("a", "b"), reader.readRow());
+
+			IOException error = assertThrows(IOException.class, reader::readRow);
+			assertTrue(error.getMessage().contains("dòng 2"), error.getMessage());
+		}
+	}
+
+	private static List<List<String>> readAll(String csv) throws IOException {
+		List<List<String>> rows = new ArrayList<>();
+		try (CsvReader reader = new CsvReader(new StringReader(csv))) {
+			List<String> row;
+			while ((row = reader.readRow()) != null) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,55 @@
+package havudong.baocao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvWriterTest {
+
+	@Test
+	void quotesOnlyFieldsThatNeedIt() throws IOException {
+		StringWriter out = new StringWriter();
+		CsvWriter writer = new CsvWriter(out);
+		writer.writeRow("Áo khoác", "a,b", "nói \"hay\"", null, new BigDecimal("1E+3"), 42);
+		writer.flush();
+
+		assertEquals("Áo khoác,\"a,b\",\"nói \"\"hay\"\"\",,1000,42\r\n", out.toString());
+	}
+
+	@Test
+	void roundTripsThroughCsvReader() throws IOException {
+		Object[][] rows = {
+				{"id", "name", "description", "price"},
+				{1, "Áo khoác, mùa đông", "dòng 1\ndòng 2\r\ndòng 3", new BigDecimal("199000.50")},
+				{2, "\"Hàng hot\"", "", null},
+				{3, " khoảng trắng ", "cuối,", "0"},
+		};
+
+		StringWriter out = new StringWriter();
+		CsvWriter writer = new CsvWriter(out);
+		writer.writeBom();
+		for (Object[] row : rows) {
+			writer.writeRow(row);
+		}
+		writer.flush();
+
+		try (CsvReader reader = new CsvReader(new StringReader(out.toString()))) {
+			for (Object[] row : rows) {
+				List<String> expected = Arrays.stream(row)
+						.map(value -> value == null ? ""
+								: value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString())
+						.toList();
+				assertEquals(expected, reader.readRow());
+			}
+			assertNull(reader.readRow());
+		}
+	}
+}
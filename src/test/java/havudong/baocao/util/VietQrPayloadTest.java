@@ -0,0 +1,51 @@
+package havudong.baocao.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VietQrPayloadTest {
+
+	@Test
+	void crc16MatchesCcittFalseCheckValue() {
+		// Giá trị kiểm tra chuẩn của CRC-16/CCITT-FALSE
+		assertEquals("29B1", VietQrPayload.crc16("123456789"));
+	}
+
+	@Test
+	void buildsNapasTransferPayload() {
+		// Payload dựng tay theo từng trường TLV của NAPAS, CRC tính độc lập bằng binascii.crc_hqx(data, 0xFFFF) của Python
+		String expected = "000201"
+				+ "010212"
+				+ "3853" + "0010A000000727" + "0123" + "0006970422" + "0109037189928" + "0208QRIBFTTA"
+				+ "5303704"
+				+ "540530000"
+				+ "5802VN"
+				+ "6221" + "0817DH1_1792313988443"
+				+ "6304" + "6B7F";
+
+		assertEquals(expected, VietQrPayload.build("970422", "037189928", 30000, "DH1_1792313988443"));
+	}
+
+	@Test
+	void crcCoversWholePayloadIncludingCrcTag() {
+		String payload = VietQrPayload.build("970422", "037189928", 125000, "DH42_1792313988443");
+		String data = payload.substring(0, payload.length() - 4);
+
+		assertEquals("6304", data.substring(data.length() - 4));
+		assertEquals(VietQrPayload.crc16(data), payload.substring(payload.length() - 4));
+	}
+
+	@Test
+	void rejectsNonPositiveAmount() {
+		assertThrows(IllegalArgumentException.class,
+				() -> VietQrPayload.build("970422", "037189928", 0, "DH1_1792313988443"));
+	}
+
+	@Test
+	void rejectsFieldLongerThan99Characters() {
+		assertThrows(IllegalArgumentException.class,
+				() -> VietQrPayload.build("970422", "037189928", 30000, "X".repeat(100)));
+	}
+}